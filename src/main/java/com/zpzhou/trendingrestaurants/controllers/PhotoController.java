@@ -1,21 +1,25 @@
 package com.zpzhou.trendingrestaurants.controllers;
 
-import com.google.maps.ImageResult;
 import com.zpzhou.trendingrestaurants.handlers.PhotoHandler;
+import com.zpzhou.trendingrestaurants.search.places.CachedPhoto;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/photo")
@@ -25,21 +29,42 @@ public class PhotoController {
     private static final Logger logger = LogManager.getLogger();
 
     private final PhotoHandler photoHandler;
+    private final long maxAgeSeconds;
 
-    @GetMapping(produces = MediaType.IMAGE_JPEG_VALUE)
-    public @ResponseBody byte[] getPhoto(
+    /**
+     * Photos are immutable for a given reference and size, so they're served
+     * with a strong ETag derived from those and may be cached publicly for
+     * maxAgeSeconds. A request revalidating with If-None-Match gets an empty
+     * 304 without the photo being loaded.
+     */
+    @GetMapping
+    public ResponseEntity<Resource> getPhoto(
             final @RequestParam("photoreference") String photoReference,
             final @RequestParam(value = "maxwidth", required = false) String maxWidth,
-            final @RequestParam(value = "maxheight", required = false) String maxHeight
+            final @RequestParam(value = "maxheight", required = false) String maxHeight,
+            final WebRequest webRequest
     ) {
         final Optional<Integer> maxWidthIntValue = parseAndValidateIntegerValue(maxWidth);
         final Optional<Integer> maxHeightIntValue = parseAndValidateIntegerValue(maxHeight);
 
-        final ImageResult result = photoHandler.getPhoto(photoReference, maxWidthIntValue, maxHeightIntValue)
+        final String etag = photoHandler.getEtag(photoReference, maxWidthIntValue, maxHeightIntValue);
+        final CacheControl cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        final CachedPhoto photo = photoHandler.getPhoto(photoReference, maxWidthIntValue, maxHeightIntValue)
                 .orElseThrow(() -> new HttpServerErrorException(
                         HttpStatus.INTERNAL_SERVER_ERROR, "Something went wrong, please try again."));
-
-        return result.imageData;
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.parseMediaType(photo.getContentType()))
+                .contentLength(photo.getContentLength())
+                .body(photo.getResource());
     }
 
     private Optional<Integer> parseAndValidateIntegerValue(final String value) {
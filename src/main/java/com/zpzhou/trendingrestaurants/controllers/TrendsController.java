@@ -1,23 +1,47 @@
 package com.zpzhou.trendingrestaurants.controllers;
 
-import com.zpzhou.trendingrestaurants.controllers.cache.TumblingCache;
+import com.zpzhou.trendingrestaurants.controllers.cache.CacheStats;
+import com.zpzhou.trendingrestaurants.controllers.cache.ExpiringCache;
+import com.zpzhou.trendingrestaurants.controllers.cache.SingleFlight;
+import com.zpzhou.trendingrestaurants.controllers.cache.TrendsPrewarmer;
 import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
 import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.Trend;
 import com.zpzhou.trendingrestaurants.model.TrendsList;
+import com.zpzhou.trendingrestaurants.model.TrendsQuery;
+import com.zpzhou.trendingrestaurants.model.TrendsResult;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -28,41 +52,356 @@ public class TrendsController {
 
     private static final Logger logger = LogManager.getLogger();
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final long STREAM_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final Map<String, TimeFrame> TIME_FRAMES = Arrays.stream(TimeFrame.values())
+            .collect(Collectors.toMap(TimeFrame::toString, Function.identity()));
+    private static final String FAILED = "Something went wrong, please try again.";
+    private static final String BUSY = "Too many trends are being found, please try again later.";
+
     private final TrendsHandler trendsHandler;
-    private final TumblingCache<String, TrendsList> cache;
+    private final ExpiringCache<String, TrendsList> cache;
+    private final SingleFlight<String, TrendsList> singleFlight;
+    private final TrendsPrewarmer prewarmer;
+    private final ExecutorService batchExecutorService;
+    private final int maxBatchQueries;
+    private final int maxPlacesPerSearch;
 
     @GetMapping()
     public TrendsList getTrends(final @RequestParam("place") String place,
-                                final @RequestParam("timeframe") String timeFrame) {
-        // Validate client input
-        final Map<String, TimeFrame> validTimeFrames = Arrays.stream(TimeFrame.values())
-                .collect(Collectors.toMap(TimeFrame::toString, Function.identity()));
+                                final @RequestParam("timeframe") String timeFrame,
+                                final @RequestParam(value = "limit", required = false) Integer limit,
+                                final @RequestParam(value = "deadline", required = false) Long deadline) {
+        validateLimit(limit);
+        final TrendsList trends = findTrends(place, parseTimeFrame(timeFrame), timeoutMillis(deadline));
+        return limit == null ? trends : limitTrends(trends, limit);
+    }
 
-        if (!validTimeFrames.containsKey(timeFrame)) {
+    /**
+     * As getTrends, but as a stream of server-sent events: a "snapshot" of the
+     * trends found so far whenever their ranking changes, starting with those
+     * already known for the place, then the final "trends". Cached trends are
+     * sent as the final trends straight away. Searches are queued as those of
+     * getTrendsBatch are, so a request is turned away with a 503 when too many
+     * are queued, and its stream fails if its deadline passes while queued.
+     */
+    @GetMapping("/stream")
+    public SseEmitter streamTrends(final @RequestParam("place") String place,
+                                   final @RequestParam("timeframe") String timeFrame,
+                                   final @RequestParam(value = "limit", required = false) Integer limit,
+                                   final @RequestParam(value = "deadline", required = false) Long deadline) {
+        validateLimit(limit);
+        final TimeFrame validTimeFrame = parseTimeFrame(timeFrame);
+        final long timeoutMillis = timeoutMillis(deadline);
+        final long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        final SseEmitter emitter = new SseEmitter(timeoutMillis + STREAM_GRACE_MILLIS);
+        final Function<TrendsList, TrendsList> limited = trends -> limit == null ? trends : limitTrends(trends, limit);
+
+        final String cacheKey = buildCacheKey(place, timeFrame);
+        logger.info("Received streaming request for: {}", cacheKey);
+        prewarmer.recordRequest(cacheKey, place, validTimeFrame);
+        final Optional<TrendsList> cachedResponse = cache.get(cacheKey, () -> singleFlight.execute(
+                cacheKey, () -> trendsHandler.handleGet(place, validTimeFrame)));
+        if (cachedResponse.isPresent()) {
+            send(emitter, "trends", limited.apply(cachedResponse.get()));
+            emitter.complete();
+            return emitter;
+        }
+        // Unlike getTrends, this doesn't join a concurrent computation of the same trends,
+        // as that wouldn't send any snapshots
+        try {
+            batchExecutorService.execute(() -> {
+                try {
+                    // A search queued until its deadline passed would find nothing, so isn't run
+                    final long remainingMillis = deadlineMillis - System.currentTimeMillis();
+                    if (remainingMillis <= 0) {
+                        logger.warn("Deadline passed before searching for {}", cacheKey);
+                        emitter.completeWithError(new TimeoutException(
+                                "The deadline passed before the trends could be found."));
+                        return;
+                    }
+                    final TrendsList trends = trendsHandler.handleStream(place, validTimeFrame, remainingMillis,
+                            snapshot -> send(emitter, "snapshot", limited.apply(snapshot)));
+                    cacheTrends(cacheKey, trends, timeoutMillis);
+                    send(emitter, "trends", limited.apply(trends));
+                    emitter.complete();
+                }
+                catch (final InterruptedException ex) {
+                    logger.warn("Thread was interrupted {}", ex);
+                    Thread.currentThread().interrupt();
+                    emitter.completeWithError(ex);
+                }
+                catch (final RuntimeException ex) {
+                    logger.warn("Failed to compute trends for {}: {}", cacheKey, ex);
+                    emitter.completeWithError(ex);
+                }
+            });
+        }
+        catch (final RejectedExecutionException ex) {
+            logger.warn("Too many searches queued to stream trends for {}", cacheKey);
+            throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE, BUSY);
+        }
+        return emitter;
+    }
+
+    /**
+     * Finds the trends for each place and timeframe in @param queries, writing
+     * each as a line of JSON as soon as it's found: cached trends straight
+     * away, then the rest as their searches complete. Places missing from the
+     * cache are searched for up to maxPlacesPerSearch at a time, with a
+     * single query per search. Trends still being found after @param deadline
+     * milliseconds are cut short as by getTrends, and searches still queued
+     * by then aren't run. When too many searches are queued, the request is
+     * turned away with a 503 if none of its searches were, and otherwise
+     * the queries of those that couldn't be queued fail.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<ResponseBodyEmitter> getTrendsBatch(
+            final @RequestBody List<TrendsQuery> queries,
+            final @RequestParam(value = "deadline", required = false) Long deadline) {
+        if (queries.isEmpty() || queries.size() > maxBatchQueries) {
             throw new HttpClientErrorException(HttpStatus.BAD_REQUEST,
-                    "Invalid timeframe" + timeFrame);
+                    String.format("Between 1 and %d queries must be given.", maxBatchQueries));
         }
-        // Return a cached result if available
-        final String cacheKey = buildCacheKey(place, timeFrame);
-        logger.info("Received request for: {}", cacheKey); // can use for metrics later
+        final List<TimeFrame> timeFrames = new ArrayList<>(queries.size());
+        for (final TrendsQuery query : queries) {
+            if (query.getPlace() == null || query.getPlace().isBlank()) {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Every query must have a place.");
+            }
+            timeFrames.add(parseTimeFrame(query.getTimeframe()));
+        }
+        final long timeoutMillis = timeoutMillis(deadline);
+        final long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        // Leaves time for the searches cut short by the deadline to write what they found
+        final ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMillis + STREAM_GRACE_MILLIS);
+
+        // Answer cache hits first, grouping the misses by place
+        final Map<String, Set<TimeFrame>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            final TrendsQuery query = queries.get(i);
+            final TimeFrame timeFrame = timeFrames.get(i);
+            final String cacheKey = buildCacheKey(query.getPlace(), query.getTimeframe());
+            prewarmer.recordRequest(cacheKey, query.getPlace(), timeFrame);
+            final Optional<TrendsList> cachedResponse = cache.get(cacheKey, () -> singleFlight.execute(
+                    cacheKey, () -> trendsHandler.handleGet(query.getPlace(), timeFrame)));
+            if (cachedResponse.isPresent()) {
+                send(emitter, TrendsResult.of(query.getPlace(), cachedResponse.get()));
+            }
+            else {
+                misses.computeIfAbsent(query.getPlace(), place -> EnumSet.noneOf(TimeFrame.class)).add(timeFrame);
+            }
+        }
+        if (misses.isEmpty()) {
+            emitter.complete();
+            return ndjson(emitter);
+        }
+
+        // Then search for the misses, several places to a search. Unlike getTrends, these
+        // searches don't join concurrent computations of the same trends.
+        final List<String> places = new ArrayList<>(misses.keySet());
+        final AtomicInteger remaining = new AtomicInteger((places.size() + maxPlacesPerSearch - 1) / maxPlacesPerSearch);
+        for (int start = 0; start < places.size(); start += maxPlacesPerSearch) {
+            final Map<String, Set<TimeFrame>> search = new LinkedHashMap<>();
+            places.subList(start, Math.min(start + maxPlacesPerSearch, places.size()))
+                    .forEach(place -> search.put(place, misses.get(place)));
+            try {
+                batchExecutorService.execute(() -> {
+                    try {
+                        // A search queued until its deadline passed would find nothing, so isn't run
+                        final long remainingMillis = deadlineMillis - System.currentTimeMillis();
+                        if (remainingMillis <= 0) {
+                            logger.warn("Deadline passed before searching for {}", search.keySet());
+                            sendFailures(emitter, search, "The deadline passed before the trends could be found.");
+                            return;
+                        }
+                        trendsHandler.handleGetAll(search, remainingMillis,
+                                (place, trends) -> {
+                                    cacheTrends(buildCacheKey(place, trends.getTimeFrame().toString()), trends,
+                                            timeoutMillis);
+                                    send(emitter, TrendsResult.of(place, trends));
+                                });
+                    }
+                    catch (final InterruptedException ex) {
+                        logger.warn("Thread was interrupted {}", ex);
+                        Thread.currentThread().interrupt();
+                        sendFailures(emitter, search, FAILED);
+                    }
+                    catch (final RuntimeException ex) {
+                        logger.warn("Failed to compute trends for {}: {}", search.keySet(), ex);
+                        sendFailures(emitter, search, FAILED);
+                    }
+                    finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            emitter.complete();
+                        }
+                    }
+                });
+            }
+            catch (final RejectedExecutionException ex) {
+                // Nothing is under way yet, so the whole request can be turned away
+                if (start == 0) {
+                    throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE, BUSY);
+                }
+                logger.warn("Too many searches queued to search for {}", search.keySet());
+                sendFailures(emitter, search, BUSY);
+                if (remaining.decrementAndGet() == 0) {
+                    emitter.complete();
+                }
+            }
+        }
+        return ndjson(emitter);
+    }
+
+    /**
+     * Trends computed on a miss are cut short after @param timeoutMillis. Concurrent
+     * misses share a single computation under the handler's own deadline, so a client
+     * that shortens the deadline has its trends computed on its own instead.
+     */
+    private TrendsList findTrends(final String place, final TimeFrame timeFrame, final long timeoutMillis) {
+        // Return a cached result if available, refreshing it in the background if stale
+        final String cacheKey = buildCacheKey(place, timeFrame.toString());
+        logger.info("Received request for: {}", cacheKey);
+        prewarmer.recordRequest(cacheKey, place, timeFrame);
 
-        final Optional<TrendsList> cachedResponse = cache.get(cacheKey);
+        final Optional<TrendsList> cachedResponse = cache.get(cacheKey, () -> singleFlight.execute(
+                cacheKey, () -> trendsHandler.handleGet(place, timeFrame)));
         if (cachedResponse.isPresent()) {
             return cachedResponse.get();
         }
-        // Otherwise, process the request and cache the result
+        // Otherwise, process the request and cache the result. Concurrent misses
+        // for the same key share a single computation.
         try {
-            final TrendsList trends = trendsHandler.handleGet(place, validTimeFrames.get(timeFrame));
-            cache.put(cacheKey, trends);
-            return trends;
+            if (timeoutMillis < trendsHandler.getRequestTimeoutMillis()) {
+                return computeTrends(cacheKey, place, timeFrame, timeoutMillis);
+            }
+            return singleFlight.execute(cacheKey, () -> {
+                // a previous flight may have populated the cache since we checked
+                final Optional<TrendsList> recent = cache.get(cacheKey);
+                if (recent.isPresent()) {
+                    return recent.get();
+                }
+                return computeTrends(cacheKey, place, timeFrame, trendsHandler.getRequestTimeoutMillis());
+            });
         }
         catch (final InterruptedException ex) {
             logger.warn("Thread was interrupted {}", ex);
+            Thread.currentThread().interrupt();
             throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
         }
+        catch (final ExecutionException ex) {
+            logger.warn("Failed to compute trends for {}: {}", cacheKey, ex.getCause());
+            throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR, FAILED);
+        }
+        catch (final RuntimeException ex) {
+            logger.warn("Failed to compute trends for {}: {}", cacheKey, ex);
+            throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR, FAILED);
+        }
+    }
+
+    private TrendsList computeTrends(final String cacheKey,
+                                     final String place,
+                                     final TimeFrame timeFrame,
+                                     final long timeoutMillis) throws InterruptedException {
+        final TrendsList trends = trendsHandler.handleGet(place, timeFrame, timeoutMillis);
+        cacheTrends(cacheKey, trends, timeoutMillis);
+        return trends;
+    }
+
+    /**
+     * Incomplete trends are cached for a shorter time, see AppConfig.trendsCache,
+     * except those cut short by a deadline the client shortened, which would
+     * otherwise be served to clients that didn't.
+     */
+    private void cacheTrends(final String cacheKey, final TrendsList trends, final long timeoutMillis) {
+        if (trends.isComplete() || timeoutMillis >= trendsHandler.getRequestTimeoutMillis()) {
+            cache.put(cacheKey, trends);
+        }
+    }
+
+    private static void validateLimit(final Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST,
+                    "limit must be a positive integer.");
+        }
+    }
+
+    private static TimeFrame parseTimeFrame(final String timeFrame) {
+        final TimeFrame validTimeFrame = TIME_FRAMES.get(timeFrame);
+        if (validTimeFrame == null) {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST,
+                    "Invalid timeframe" + timeFrame);
+        }
+        return validTimeFrame;
+    }
+
+    /**
+     * The time a request may take to find trends: @param deadline milliseconds
+     * if given, but no more than the handler's own request timeout.
+     */
+    private long timeoutMillis(final Long deadline) {
+        if (deadline != null && deadline < 1) {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST,
+                    "deadline must be a positive number of milliseconds.");
+        }
+        return Math.min(Optional.ofNullable(deadline).orElse(Long.MAX_VALUE),
+                trendsHandler.getRequestTimeoutMillis());
+    }
+
+    private TrendsList limitTrends(final TrendsList trendsList, final int limit) {
+        if (trendsList.getTrends().size() <= limit) {
+            return trendsList;
+        }
+        final List<Trend> trends = trendsList.getTrends().subList(0, limit);
+        return new TrendsList(trends.size(), trendsList.getDateTime(), trendsList.getTimeFrame(), trends,
+                trendsList.getTweetsFetched(), trendsList.getTweetsProcessed(), trendsList.isComplete());
+    }
+
+    private static ResponseEntity<ResponseBodyEmitter> ndjson(final ResponseBodyEmitter emitter) {
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(emitter);
+    }
+
+    private void sendFailures(final ResponseBodyEmitter emitter,
+                              final Map<String, Set<TimeFrame>> search,
+                              final String error) {
+        search.forEach((place, timeFrames) -> timeFrames.forEach(timeFrame -> send(emitter,
+                TrendsResult.failed(place, timeFrame.toString(), error))));
+    }
+
+    private void send(final SseEmitter emitter, final String name, final TrendsList trends) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(name)
+                    .data(trends, MediaType.APPLICATION_JSON));
+        }
+        catch (final IOException | IllegalStateException ex) {
+            logger.debug("Failed to send {} event: {}", name, ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes @param result as a line of JSON, keeping the trends computed
+     * for the cache if the client has gone.
+     */
+    private void send(final ResponseBodyEmitter emitter, final TrendsResult result) {
+        synchronized (emitter) {
+            try {
+                emitter.send(result, MediaType.APPLICATION_JSON);
+                emitter.send("\n", MediaType.TEXT_PLAIN);
+            }
+            catch (final IOException | IllegalStateException ex) {
+                logger.debug("Failed to send trends for {}: {}", result.getPlace(), ex.getMessage());
+            }
+        }
+    }
+
+    @GetMapping("/cache")
+    public CacheStats getCacheStats() {
+        return cache.getStats();
     }
 
-    private String buildCacheKey(final String place, final String timeFrame) {
+    public static String buildCacheKey(final String place, final String timeFrame) {
         return String.format("%s-%s", place, timeFrame);
     }
 }
@@ -0,0 +1,14 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import lombok.Data;
+
+@Data
+public class CacheStats {
+    private final long hits;
+    private final long staleHits;
+    private final long misses;
+    private final long evictions;
+    private final long refreshes;
+    private final long refreshFailures;
+    private final long size;
+}
@@ -0,0 +1,233 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * A size-bounded cache with per-entry expiry.
+ *
+ * Keys are spread over a fixed number of segments, each guarded by its own
+ * lock and evicting its least recently used entry once full. An entry that
+ * has expired but is still within the stale window is served as-is while a
+ * background refresh recomputes it.
+ */
+public class ExpiringCache<K, V> {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Executor refreshExecutor;
+    private final ToLongFunction<V> ttlMillis;
+    private final long staleMillis;
+    private final List<Segment> segments;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    public ExpiringCache(final ScheduledExecutorService scheduler,
+                         final Executor refreshExecutor,
+                         final long capacity,
+                         final long ttlMillis,
+                         final long staleMillis) {
+        this(scheduler, refreshExecutor, capacity, ttlMillis, value -> ttlMillis, staleMillis);
+    }
+
+    /**
+     * Values are put with the time to live @param ttlMillis returns for them,
+     * and not at all if that's zero, and expired entries are purged every
+     * @param purgeIntervalMillis.
+     */
+    public ExpiringCache(final ScheduledExecutorService scheduler,
+                         final Executor refreshExecutor,
+                         final long capacity,
+                         final long purgeIntervalMillis,
+                         final ToLongFunction<V> ttlMillis,
+                         final long staleMillis) {
+
+        this.refreshExecutor = refreshExecutor;
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+
+        final long segmentCapacity = Math.max(1, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        this.segments = new ArrayList<>(SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments.add(new Segment(segmentCapacity));
+        }
+        scheduler.scheduleAtFixedRate(this::purgeExpired,
+                purgeIntervalMillis, purgeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the value for @param key only if it has not expired.
+     */
+    public Optional<V> get(final K key) {
+        return get(key, null);
+    }
+
+    /**
+     * Returns the value for @param key if it has not expired. If it has expired
+     * but is still within the stale window, the stale value is returned and
+     * @param refresher is run in the background to replace it.
+     */
+    public Optional<V> get(final K key, final Callable<V> refresher) {
+        final Segment segment = segmentFor(key);
+        final Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        final long now = System.currentTimeMillis();
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        if (now < entry.expiresAt) {
+            hits.increment();
+            return Optional.of(entry.value);
+        }
+        if (refresher != null && now < entry.expiresAt + staleMillis) {
+            staleHits.increment();
+            scheduleRefresh(key, refresher);
+            return Optional.of(entry.value);
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(final K key, final V value) {
+        put(key, value, ttlMillis.applyAsLong(value));
+    }
+
+    public void put(final K key, final V value, final long entryTtlMillis) {
+        if (entryTtlMillis <= 0) {
+            return;
+        }
+        final Segment segment = segmentFor(key);
+        final Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + entryTtlMillis);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds until @param key expires, which is
+     * negative if it already has.
+     */
+    public Optional<Long> timeToExpiry(final K key) {
+        final Segment segment = segmentFor(key);
+        final Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.getOrDefault(key, null);
+        }
+        return Optional.ofNullable(entry)
+                .map(e -> e.expiresAt - System.currentTimeMillis());
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), staleHits.sum(), misses.sum(),
+                evictions.sum(), refreshes.sum(), refreshFailures.sum(), size());
+    }
+
+    public long size() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private void scheduleRefresh(final K key, final Callable<V> refresher) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(key, refresher.call());
+                    refreshes.increment();
+                }
+                catch (final Exception ex) {
+                    refreshFailures.increment();
+                    logger.warn("Failed to refresh cache entry {}: {}", key, ex);
+                }
+                finally {
+                    refreshing.remove(key);
+                }
+            });
+        }
+        catch (final RejectedExecutionException ex) {
+            refreshing.remove(key);
+            logger.warn("Refresh of {} rejected: {}", key, ex.getMessage());
+        }
+    }
+
+    private void purgeExpired() {
+        final long now = System.currentTimeMillis();
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.values().removeIf(entry -> now >= entry.expiresAt + staleMillis);
+            }
+        }
+    }
+
+    private Segment segmentFor(final K key) {
+        final int hash = key.hashCode();
+        return segments.get((hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1));
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * An access-ordered map which evicts its least recently used entry once
+     * it holds more than its capacity. Callers must hold its monitor. It is
+     * never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class Segment extends LinkedHashMap<K, Entry<V>> {
+        private final long capacity;
+
+        Segment(final long capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
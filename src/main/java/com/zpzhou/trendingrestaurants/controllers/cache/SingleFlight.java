@@ -0,0 +1,55 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent computations of the same key so that only one
+ * of them runs at a time. Callers arriving while a computation is in
+ * flight wait for, and share, its result (or its failure).
+ */
+public class SingleFlight<K, V> {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V execute(final K key, final Callable<V> loader) throws InterruptedException, ExecutionException {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            logger.debug("Joining in-flight computation for: {}", key);
+            return existing.get();
+        }
+        try {
+            final V value = loader.call();
+            future.complete(value);
+            return value;
+        }
+        catch (final InterruptedException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        }
+        catch (final Exception ex) {
+            future.completeExceptionally(ex);
+            throw new ExecutionException(ex);
+        }
+        catch (final Error err) {
+            future.completeExceptionally(err);
+            throw err;
+        }
+        finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
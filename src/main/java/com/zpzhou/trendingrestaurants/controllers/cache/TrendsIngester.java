@@ -0,0 +1,116 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import com.zpzhou.trendingrestaurants.controllers.TrendsController;
+import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.TrendsList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the timelines of a fixed set of @param places up to date in the
+ * background, so that their trends are served from local data.
+ *
+ * Every interval, each place's timeline searches for the tweets created
+ * since its watermark (or over the longest TimeFrame, for a new place) and
+ * stores them, then the trends of every TimeFrame are cached. A run still
+ * going when the next is due delays it rather than overlapping it.
+ */
+public class TrendsIngester {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final Executor executor;
+    private final TrendsHandler trendsHandler;
+    private final ExpiringCache<String, TrendsList> cache;
+    private final List<String> places;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public TrendsIngester(final ScheduledExecutorService scheduler,
+                          final Executor executor,
+                          final TrendsHandler trendsHandler,
+                          final ExpiringCache<String, TrendsList> cache,
+                          final List<String> places,
+                          final long intervalMillis) {
+
+        this.executor = executor;
+        this.trendsHandler = trendsHandler;
+        this.cache = cache;
+        this.places = places;
+
+        if (places.isEmpty()) {
+            logger.info("No places configured for background ingestion");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::scheduleIngestion, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleIngestion() {
+        if (!running.compareAndSet(false, true)) {
+            logger.debug("Skipping ingestion, the previous run is still going");
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    for (final String place : places) {
+                        if (!ingest(place)) {
+                            break;
+                        }
+                    }
+                }
+                finally {
+                    running.set(false);
+                }
+            });
+        }
+        catch (final RejectedExecutionException ex) {
+            running.set(false);
+            logger.warn("Ingestion rejected: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Ingests the tweets of @param place, returning false if interrupted so the run ends.
+     */
+    private boolean ingest(final String place) {
+        final long startMillis = System.currentTimeMillis();
+        try {
+            trendsHandler.handleGetAll(Map.of(place, EnumSet.allOf(TimeFrame.class)), Long.MAX_VALUE,
+                    (p, trends) -> cache.put(TrendsController.buildCacheKey(p, trends.getTimeFrame().toString()),
+                            trends));
+            logger.info("Ingested tweets for {} in {}ms", place, System.currentTimeMillis() - startMillis);
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.info("Ingestion interrupted at {}", place);
+            return false;
+        }
+        catch (final Exception ex) {
+            // an exception would end the run, so only log it
+            logger.warn("Failed to ingest tweets for {}: {}", place, ex);
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Parses a list of places separated by semicolons, as place names may hold commas.
+     */
+    public static List<String> parsePlaces(final String places) {
+        return Arrays.stream(places.split(";"))
+                .map(String::trim)
+                .filter(place -> !place.isEmpty())
+                .collect(Collectors.toList());
+    }
+}
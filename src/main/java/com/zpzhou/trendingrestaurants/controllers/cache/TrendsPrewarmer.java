@@ -0,0 +1,226 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.TrendsList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks how often each place/timeframe pair is requested and recomputes
+ * the most requested ones before their cached trends expire.
+ *
+ * Every interval, request counts are halved so that the hot set follows
+ * recent traffic. Refreshes due within the next interval are staggered
+ * across it, hottest first, and at most maxConcurrentRefreshes run at any
+ * one time. Refreshes beyond that wait their turn rather than being dropped,
+ * unless the key has been refreshed by then.
+ */
+public class TrendsPrewarmer {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor refreshExecutor;
+    private final TrendsHandler trendsHandler;
+    private final ExpiringCache<String, TrendsList> cache;
+    private final SingleFlight<String, TrendsList> singleFlight;
+    private final int hotSetSize;
+    private final long intervalMillis;
+    private final Semaphore refreshPermits;
+    private final ConcurrentMap<String, HotKey> requestCounts = new ConcurrentHashMap<>();
+    // Refreshes waiting for a permit, in the order they fell due
+    private final Set<HotKey> pending = new LinkedHashSet<>();
+
+    public TrendsPrewarmer(final ScheduledExecutorService scheduler,
+                           final Executor refreshExecutor,
+                           final TrendsHandler trendsHandler,
+                           final ExpiringCache<String, TrendsList> cache,
+                           final SingleFlight<String, TrendsList> singleFlight,
+                           final int hotSetSize,
+                           final int maxConcurrentRefreshes,
+                           final long intervalMillis) {
+
+        this.scheduler = scheduler;
+        this.refreshExecutor = refreshExecutor;
+        this.trendsHandler = trendsHandler;
+        this.cache = cache;
+        this.singleFlight = singleFlight;
+        this.hotSetSize = hotSetSize;
+        this.intervalMillis = intervalMillis;
+        this.refreshPermits = new Semaphore(maxConcurrentRefreshes);
+
+        scheduler.scheduleAtFixedRate(this::scheduleRefreshes, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordRequest(final String cacheKey, final String place, final TimeFrame timeFrame) {
+        // Counted within compute() so that a key can't be removed between being looked up and counted
+        requestCounts.compute(cacheKey, (key, hotKey) -> {
+            final HotKey counted = hotKey == null ? new HotKey(key, place, timeFrame) : hotKey;
+            counted.count.increment();
+            return counted;
+        });
+    }
+
+    private void scheduleRefreshes() {
+        try {
+            final List<HotKey> hotKeys = decayAndSelectHotKeys();
+
+            // Only refresh keys that are uncached or will expire before the next run
+            final List<HotKey> dueKeys = hotKeys.stream()
+                    .filter(this::isDue)
+                    .collect(Collectors.toList());
+            if (dueKeys.isEmpty()) {
+                return;
+            }
+            // Stagger refreshes over the interval, uncached or not. Entries expiring before their
+            // refresh are served stale in the meantime, see ExpiringCache.
+            final long spacing = intervalMillis / dueKeys.size();
+            for (int i = 0; i < dueKeys.size(); i++) {
+                final HotKey hotKey = dueKeys.get(i);
+                scheduler.schedule(() -> refresh(hotKey), i * spacing, TimeUnit.MILLISECONDS);
+            }
+            logger.info("Scheduled {} pre-warm refreshes for {} hot keys", dueKeys.size(), hotKeys.size());
+        }
+        catch (final Exception ex) {
+            // an exception would cancel the periodic task, so only log it
+            logger.warn("Failed to schedule pre-warm refreshes {}", ex);
+        }
+    }
+
+    private List<HotKey> decayAndSelectHotKeys() {
+        final List<HotKey> ranked = requestCounts.values().stream()
+                .peek(HotKey::decay)
+                .filter(hotKey -> hotKey.lastCount > 0)
+                .sorted(Comparator.comparingLong((HotKey hotKey) -> hotKey.lastCount).reversed())
+                .collect(Collectors.toList());
+
+        // Keys requested since their decay are kept, see recordRequest
+        for (final String cacheKey : requestCounts.keySet()) {
+            requestCounts.computeIfPresent(cacheKey,
+                    (key, hotKey) -> hotKey.lastCount == 0 && hotKey.count.sum() == 0 ? null : hotKey);
+        }
+        return ranked.subList(0, Math.min(hotSetSize, ranked.size()));
+    }
+
+    private boolean isDue(final HotKey hotKey) {
+        return cache.timeToExpiry(hotKey.cacheKey)
+                .map(remaining -> remaining < intervalMillis)
+                .orElse(true);
+    }
+
+    private void refresh(final HotKey hotKey) {
+        synchronized (pending) {
+            pending.add(hotKey);
+        }
+        startPending();
+    }
+
+    /**
+     * Starts pending refreshes while there are permits for them. Called
+     * whenever a refresh is queued or finishes, and checks for pending
+     * refreshes again after handing a permit back, so one queued while the
+     * permits were taken can't be left behind.
+     */
+    private void startPending() {
+        while (hasPending() && refreshPermits.tryAcquire()) {
+            final Optional<HotKey> next = pollPending();
+            if (next.isEmpty()) {
+                refreshPermits.release();
+            }
+            else if (!isDue(next.get())) {
+                logger.debug("Skipping pre-warm of {}, refreshed while it waited", next.get().cacheKey);
+                refreshPermits.release();
+            }
+            else {
+                start(next.get());
+            }
+        }
+    }
+
+    private boolean hasPending() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    private Optional<HotKey> pollPending() {
+        synchronized (pending) {
+            final Iterator<HotKey> iterator = pending.iterator();
+            if (!iterator.hasNext()) {
+                return Optional.empty();
+            }
+            final HotKey next = iterator.next();
+            iterator.remove();
+            return Optional.of(next);
+        }
+    }
+
+    /**
+     * Refreshes @param hotKey on the refresh executor, holding a permit
+     * already acquired for it.
+     */
+    private void start(final HotKey hotKey) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    final TrendsList trends = singleFlight.execute(hotKey.cacheKey,
+                            () -> trendsHandler.handleGet(hotKey.place, hotKey.timeFrame));
+                    cache.put(hotKey.cacheKey, trends);
+                }
+                catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                catch (final Exception ex) {
+                    logger.warn("Failed to pre-warm {}: {}", hotKey.cacheKey, ex);
+                }
+                finally {
+                    refreshPermits.release();
+                    startPending();
+                }
+            });
+        }
+        catch (final RejectedExecutionException ex) {
+            refreshPermits.release();
+            logger.warn("Pre-warm of {} rejected: {}", hotKey.cacheKey, ex.getMessage());
+        }
+    }
+
+    private static class HotKey {
+        private final String cacheKey;
+        private final String place;
+        private final TimeFrame timeFrame;
+        private final LongAdder count = new LongAdder();
+        private volatile long lastCount;
+
+        HotKey(final String cacheKey, final String place, final TimeFrame timeFrame) {
+            this.cacheKey = cacheKey;
+            this.place = place;
+            this.timeFrame = timeFrame;
+        }
+
+        /**
+         * Folds the requests since the last run into the running count,
+         * halving the previous total.
+         */
+        void decay() {
+            lastCount = lastCount / 2 + count.sumThenReset();
+        }
+    }
+}
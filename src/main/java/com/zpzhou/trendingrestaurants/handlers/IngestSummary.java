@@ -0,0 +1,22 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import lombok.Data;
+
+/**
+ * How many of the tweets fetched for a timeline were resolved and ingested
+ * before the request's deadline, and whether the whole interval was covered.
+ */
+@Data
+public class IngestSummary {
+    public static final IngestSummary EMPTY = new IngestSummary(0, 0, true);
+
+    private final int tweetsFetched;
+    private final int tweetsProcessed;
+    private final boolean complete;
+
+    public IngestSummary plus(final IngestSummary other) {
+        return new IngestSummary(tweetsFetched + other.tweetsFetched,
+                tweetsProcessed + other.tweetsProcessed,
+                complete && other.complete);
+    }
+}
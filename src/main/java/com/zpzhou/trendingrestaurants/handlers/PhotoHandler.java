@@ -1,24 +1,163 @@
 package com.zpzhou.trendingrestaurants.handlers;
 
 import com.google.maps.ImageResult;
+import com.zpzhou.trendingrestaurants.controllers.cache.SingleFlight;
+import com.zpzhou.trendingrestaurants.search.places.CachedPhoto;
 import com.zpzhou.trendingrestaurants.search.places.GoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.PhotoCache;
+import com.zpzhou.trendingrestaurants.search.places.PhotoResizer;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.ByteArrayResource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Serves place photos at the sizes in @param sizes, ascending.
+ *
+ * Each photo is fetched from Google once, at the largest size, and scaled
+ * down locally to every smaller size requested. Requested dimensions are
+ * rounded up to the nearest size so that only a few variants of each photo
+ * are ever made.
+ */
 @RequiredArgsConstructor
 public class PhotoHandler {
 
     private static final Logger logger = LogManager.getLogger();
 
+    // Google requires at least one of max width or max height
+    private static final int DEFAULT_MAX_WIDTH = 400;
+
     private final GoogleMapsAPIWrapper mapsAPIWrapper;
+    private final PhotoCache photoCache;
+    private final PhotoResizer photoResizer;
+    private final SingleFlight<String, CachedPhoto> singleFlight;
+    private final int[] sizes;
 
-    public Optional<ImageResult> getPhoto(final String photoReference,
+    /**
+     * Serves a photo from the cache, making it on a miss. Concurrent misses
+     * for the same photo and size share a single fetch and resize.
+     */
+    public Optional<CachedPhoto> getPhoto(final String photoReference,
                                           final Optional<Integer> maxWidth,
                                           final Optional<Integer> maxHeight) {
 
-        return mapsAPIWrapper.getPlacePhoto(photoReference, maxWidth, maxHeight);
+        final int width = width(maxWidth, maxHeight);
+        final int height = maxHeight.map(this::snap).orElse(0);
+        final String cacheKey = cacheKey(photoReference, maxWidth, maxHeight);
+        try {
+            // The original already fits the largest size, so isn't stored again as a variant
+            if (isLargest(width) && isLargest(height)) {
+                return Optional.of(getOriginal(photoReference));
+            }
+            return Optional.of(getOrLoad(cacheKey, () -> {
+                final PhotoResizer.ResizedPhoto resized = photoResizer.resize(
+                        getOriginal(photoReference), width, height).get();
+                return photoCache.put(cacheKey, resized.getData(), resized.getContentType());
+            }));
+        }
+        catch (final InterruptedException ex) {
+            logger.warn("Thread was interrupted {}", ex);
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        catch (final ExecutionException ex) {
+            logger.warn("Failed to make photo {}: {}", cacheKey, ex.getCause().getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The photo at the largest size, which every other size is scaled from.
+     */
+    private CachedPhoto getOriginal(final String photoReference) throws InterruptedException, ExecutionException {
+        final int largest = sizes[sizes.length - 1];
+        // also serves requests for the largest size, as Google already scaled it to fit
+        final String cacheKey = photoReference + ":original";
+        return getOrLoad(cacheKey, () -> {
+            final ImageResult image = mapsAPIWrapper.getPlacePhoto(
+                    photoReference, Optional.of(largest), Optional.of(largest))
+                    .orElseThrow(() -> new IllegalStateException("No photo returned for " + photoReference));
+            return photoCache.put(cacheKey, image.imageData, image.contentType);
+        });
+    }
+
+    /**
+     * The ETag of the photo served for these arguments. A photo never changes
+     * for a given reference and size, so it's derived from those alone, and
+     * a request can be revalidated without loading the photo.
+     */
+    public String getEtag(final String photoReference,
+                          final Optional<Integer> maxWidth,
+                          final Optional<Integer> maxHeight) {
+        final UUID hash = UUID.nameUUIDFromBytes(
+                cacheKey(photoReference, maxWidth, maxHeight).getBytes(StandardCharsets.UTF_8));
+        return "\"" + hash.toString().replace("-", "") + "\"";
+    }
+
+    private String cacheKey(final String photoReference,
+                            final Optional<Integer> maxWidth,
+                            final Optional<Integer> maxHeight) {
+        return String.format("%s:%d:%d", photoReference,
+                width(maxWidth, maxHeight), maxHeight.map(this::snap).orElse(0));
+    }
+
+    private int width(final Optional<Integer> maxWidth, final Optional<Integer> maxHeight) {
+        return maxWidth.isEmpty() && maxHeight.isEmpty()
+                ? snap(DEFAULT_MAX_WIDTH)
+                : maxWidth.map(this::snap).orElse(0);
+    }
+
+    /**
+     * A photo read from the disk tier can only be read once, so a flight only
+     * returns photos held in memory, which every caller joining it can read.
+     */
+    private CachedPhoto getOrLoad(final String cacheKey,
+                                  final Callable<CachedPhoto> loader) throws InterruptedException, ExecutionException {
+        final Optional<CachedPhoto> cached = photoCache.get(cacheKey);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        return singleFlight.execute(cacheKey, () -> {
+            // a previous flight may have populated the cache since we checked
+            final Optional<CachedPhoto> recent = photoCache.get(cacheKey);
+            if (recent.isPresent()) {
+                return readFully(recent.get());
+            }
+            return loader.call();
+        });
+    }
+
+    private static CachedPhoto readFully(final CachedPhoto photo) throws IOException {
+        try (final InputStream inputStream = photo.getResource().getInputStream()) {
+            final byte[] data = inputStream.readAllBytes();
+            return new CachedPhoto(new ByteArrayResource(data), photo.getContentType(), data.length, photo.getEtag());
+        }
+    }
+
+    /**
+     * Whether a snapped @param dimension is at most the largest size, 0 being unbounded.
+     */
+    private boolean isLargest(final int dimension) {
+        return dimension == 0 || dimension == sizes[sizes.length - 1];
+    }
+
+    /**
+     * Rounds @param dimension up to the nearest size, or down to the largest.
+     */
+    private int snap(final int dimension) {
+        for (final int size : sizes) {
+            if (size >= dimension) {
+                return size;
+            }
+        }
+        return sizes[sizes.length - 1];
     }
 }
@@ -0,0 +1,208 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.model.Trend;
+import com.zpzhou.trendingrestaurants.model.TweetRecord;
+import com.zpzhou.trendingrestaurants.store.PlaceSegments;
+import com.zpzhou.trendingrestaurants.store.StoredTweet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Trend counters for the tweets searched from a single place, bucketed by
+ * the hour they were created in and keyed by the placeId they mention.
+ *
+ * The timeline has ingested every tweet created in [coveredFrom, watermark),
+ * so a request only needs to search for tweets outside of that interval, and
+ * every TimeFrame is derived by summing the buckets it spans. A TimeFrame
+ * is therefore rounded out to the start of the hour it starts in, counting
+ * up to an hour's tweets from before it. Callers must hold the lock of a
+ * timeline shared between requests.
+ *
+ * A timeline restored from PlaceSegments writes the tweets committed to it
+ * back to them, so that it can be restored again after a restart.
+ */
+public class PlaceTimeline {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final NavigableMap<Long, TrendAggregator> buckets = new TreeMap<>();
+    private final Map<String, PlaceDetails> placesById = new HashMap<>();
+    private long coveredFrom = Long.MAX_VALUE;
+    private long watermark = Long.MIN_VALUE;
+    private Optional<PlaceSegments> segments = Optional.empty();
+
+    /**
+     * Returns whether the lock was taken within @param timeoutMillis.
+     */
+    public boolean tryLock(final long timeoutMillis) throws InterruptedException {
+        return lock.tryLock(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    public boolean isEmpty() {
+        return watermark == Long.MIN_VALUE;
+    }
+
+    public long getCoveredFrom() {
+        return coveredFrom;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Records that every tweet created in [@param from, @param to) has been ingested.
+     */
+    public void extendCoverage(final long from, final long to) {
+        coveredFrom = Math.min(coveredFrom, from);
+        watermark = Math.max(watermark, to);
+    }
+
+    public void ingest(final TweetRecord tweet, final PlaceDetails details) {
+        ingest(tweet.getCreatedAtMillis(), tweet.getRetweetCount(), tweet.getFavoriteCount(), details);
+    }
+
+    public void ingest(final StoredTweet tweet) {
+        ingest(tweet.getCreatedAtMillis(), tweet.getRetweetCount(), tweet.getFavoriteCount(), tweet.getDetails());
+    }
+
+    /**
+     * Loads the tweets held by @param placeSegments, which this timeline then
+     * writes the tweets committed to it to. Anything unreadable is discarded.
+     */
+    public void restore(final PlaceSegments placeSegments) {
+        segments = Optional.of(placeSegments);
+        try {
+            if (placeSegments.isEmpty()) {
+                return;
+            }
+            placeSegments.replay(this::ingest);
+            extendCoverage(placeSegments.getCoveredFrom(), placeSegments.getWatermark());
+        }
+        catch (final IOException ex) {
+            logger.warn("Discarding unreadable stored tweets: {}", ex.getMessage());
+            clear();
+        }
+    }
+
+    /**
+     * Writes @param tweets, which have been added to this timeline, to its
+     * segments along with its coverage.
+     */
+    public void commit(final List<StoredTweet> tweets) {
+        segments.ifPresent(placeSegments -> {
+            try {
+                placeSegments.append(tweets, coveredFrom, watermark);
+            }
+            catch (final IOException ex) {
+                logger.warn("Failed to store {} tweets: {}", tweets.size(), ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Adds the buckets of @param other, which must not overlap this timeline's coverage.
+     */
+    public void addAll(final PlaceTimeline other) {
+        placesById.putAll(other.placesById);
+        other.buckets.forEach((bucket, counts) -> buckets
+                .computeIfAbsent(bucket, b -> new TrendAggregator())
+                .addAll(counts));
+    }
+
+    public void clear() {
+        buckets.clear();
+        placesById.clear();
+        coveredFrom = Long.MAX_VALUE;
+        watermark = Long.MIN_VALUE;
+        segments.ifPresent(placeSegments -> {
+            try {
+                placeSegments.reset();
+            }
+            catch (final IOException ex) {
+                logger.warn("Failed to delete stored tweets: {}", ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Drops buckets holding only tweets created before @param cutoff.
+     */
+    public void evictBefore(final long cutoff) {
+        final Map<Long, TrendAggregator> expired = buckets.headMap(bucketStart(cutoff), false);
+        if (expired.isEmpty()) {
+            return;
+        }
+        expired.clear();
+        final Set<String> referencedPlaceIds = new HashSet<>();
+        buckets.values().forEach(bucket -> bucket.forEachPlaceId(referencedPlaceIds::add));
+        placesById.keySet().retainAll(referencedPlaceIds);
+
+        coveredFrom = Math.max(coveredFrom, cutoff);
+        segments.ifPresent(placeSegments -> {
+            try {
+                placeSegments.evictBefore(cutoff);
+            }
+            catch (final IOException ex) {
+                logger.warn("Failed to evict stored tweets: {}", ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Sums the buckets from the one @param from falls in onwards into at most
+     * @param limit trends, in the order defined by Trend.compareTo.
+     */
+    public List<Trend> getTrends(final long from, final int limit) {
+        return getTrends(from, limit, new PlaceTimeline());
+    }
+
+    /**
+     * As getTrends(from, limit), but also counting the tweets in @param overlay,
+     * which were resolved for a single request without being ingested.
+     */
+    public List<Trend> getTrends(final long from, final int limit, final PlaceTimeline overlay) {
+        final TrendAggregator totals = new TrendAggregator();
+        for (final TrendAggregator bucket : buckets.tailMap(bucketStart(from), true).values()) {
+            totals.addAll(bucket);
+        }
+        for (final TrendAggregator bucket : overlay.buckets.tailMap(bucketStart(from), true).values()) {
+            totals.addAll(bucket);
+        }
+        return totals.getTopTrends(limit, placeId -> placesById.getOrDefault(
+                placeId, overlay.placesById.get(placeId)));
+    }
+
+    private void ingest(final long createdAtMillis,
+                        final int retweetCount,
+                        final int favoriteCount,
+                        final PlaceDetails details) {
+        placesById.put(details.placeId, details);
+        buckets.computeIfAbsent(bucketStart(createdAtMillis), bucket -> new TrendAggregator())
+                .add(details.placeId, 1, retweetCount, favoriteCount);
+    }
+
+    private static long bucketStart(final long millis) {
+        return millis - Math.floorMod(millis, BUCKET_MILLIS);
+    }
+}
@@ -0,0 +1,96 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.zpzhou.trendingrestaurants.store.TweetStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The timelines of the most recently requested places, holding at most
+ * maxPlaces of them besides those in use. With a @param store, a place's
+ * timeline is restored from it whenever the place isn't held, and written
+ * back to it as it grows.
+ *
+ * A timeline is in use from acquire until the matching release, and is
+ * never evicted meanwhile, so every request for a place shares the single
+ * timeline appending to its segments.
+ */
+public class PlaceTimelines {
+
+    private final int maxPlaces;
+    private final Optional<TweetStore> store;
+    // In access order, guarded by this
+    private final Map<String, Entry> timelines = new LinkedHashMap<>(16, 0.75f, true);
+
+    public PlaceTimelines(final int maxPlaces, final Optional<TweetStore> store) {
+        this.maxPlaces = maxPlaces;
+        this.store = store;
+    }
+
+    /**
+     * The timeline of @param place, which must be released once done with.
+     * Restoring it from the store blocks only the requests for the same place.
+     */
+    public PlaceTimeline acquire(final String place) {
+        final Entry entry;
+        final boolean restore;
+        synchronized (this) {
+            final Entry held = timelines.get(place);
+            restore = held == null;
+            entry = restore ? new Entry() : held;
+            entry.users++;
+            if (restore) {
+                timelines.put(place, entry);
+                evict();
+            }
+        }
+        if (restore) {
+            final PlaceTimeline timeline = new PlaceTimeline();
+            try {
+                store.ifPresent(tweetStore -> timeline.restore(tweetStore.open(place)));
+                entry.timeline.complete(timeline);
+            }
+            catch (final RuntimeException ex) {
+                entry.timeline.completeExceptionally(ex);
+                synchronized (this) {
+                    timelines.remove(place, entry);
+                }
+                throw ex;
+            }
+        }
+        return entry.timeline.join();
+    }
+
+    /**
+     * Releases the timeline of @param place acquired by the caller.
+     */
+    public synchronized void release(final String place) {
+        final Entry entry = timelines.get(place);
+        if (entry != null) {
+            entry.users--;
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the least recently requested timelines not in use while more than maxPlaces are held.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> eldest = timelines.entrySet().iterator();
+        while (timelines.size() > maxPlaces && eldest.hasNext()) {
+            final Map.Entry<String, Entry> entry = eldest.next();
+            if (entry.getValue().users == 0) {
+                eldest.remove();
+                store.ifPresent(tweetStore -> tweetStore.evict(entry.getKey()));
+            }
+        }
+    }
+
+    private static class Entry {
+        private final CompletableFuture<PlaceTimeline> timeline = new CompletableFuture<>();
+        private int users;
+    }
+}
@@ -0,0 +1,193 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.model.Trend;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sums tweet, retweet and favourite counts per placeId.
+ *
+ * Counts live in primitive arrays indexed by an open-addressed table of
+ * placeIds, so adding a tweet allocates nothing once a place has been seen,
+ * and the top trends are selected with a bounded heap of slot indices so
+ * only the returned Trends are ever created.
+ */
+public class TrendAggregator {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] placeIds;
+    private int[] tweets;
+    private int[] retweets;
+    private int[] favorites;
+    private int size;
+
+    public TrendAggregator() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public void add(final String placeId, final int tweetCount, final int retweetCount, final int favoriteCount) {
+        int slot = slotFor(placeIds, placeId);
+        if (placeIds[slot] == null) {
+            if ((size + 1) * 4 > placeIds.length * 3) {
+                resize();
+                slot = slotFor(placeIds, placeId);
+            }
+            placeIds[slot] = placeId;
+            size++;
+        }
+        tweets[slot] += tweetCount;
+        retweets[slot] += retweetCount;
+        favorites[slot] += favoriteCount;
+    }
+
+    public void addAll(final TrendAggregator other) {
+        for (int slot = 0; slot < other.placeIds.length; slot++) {
+            if (other.placeIds[slot] != null) {
+                add(other.placeIds[slot], other.tweets[slot], other.retweets[slot], other.favorites[slot]);
+            }
+        }
+    }
+
+    public void forEachPlaceId(final Consumer<String> consumer) {
+        for (final String placeId : placeIds) {
+            if (placeId != null) {
+                consumer.accept(placeId);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns at most @param limit trends in the order defined by Trend.compareTo.
+     */
+    public List<Trend> getTopTrends(final int limit, final Function<String, PlaceDetails> placeDetails) {
+        final int k = Math.min(limit, size);
+        if (k <= 0) {
+            return List.of();
+        }
+        // Min-heap, with respect to rank, of the best k slots seen so far
+        final int[] heap = new int[k];
+        int heapSize = 0;
+        for (int slot = 0; slot < placeIds.length; slot++) {
+            if (placeIds[slot] == null) {
+                continue;
+            }
+            if (heapSize < k) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            }
+            else if (rank(slot, heap[0]) < 0) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+        // Popping the heap yields the lowest ranked first, so fill from the back
+        final Trend[] trends = new Trend[heapSize];
+        while (heapSize > 0) {
+            final int slot = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+            trends[heapSize] = new Trend(placeDetails.apply(placeIds[slot]),
+                    tweets[slot], retweets[slot], favorites[slot]);
+        }
+        return Arrays.asList(trends);
+    }
+
+    /**
+     * Negative if slot @param a ranks ahead of slot @param b, comparing
+     *  1. Tweets
+     *  2. Favourites
+     *  3. Retweets
+     */
+    private int rank(final int a, final int b) {
+        if (tweets[a] != tweets[b]) {
+            return Integer.compare(tweets[b], tweets[a]);
+        }
+        if (favorites[a] != favorites[b]) {
+            return Integer.compare(favorites[b], favorites[a]);
+        }
+        return Integer.compare(retweets[b], retweets[a]);
+    }
+
+    private void siftUp(final int[] heap, int index) {
+        while (index > 0) {
+            final int parent = (index - 1) / 2;
+            if (rank(heap[index], heap[parent]) <= 0) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(final int[] heap, final int heapSize) {
+        int index = 0;
+        while (true) {
+            final int left = 2 * index + 1;
+            final int right = left + 1;
+            int lowest = index;
+            if (left < heapSize && rank(heap[left], heap[lowest]) > 0) {
+                lowest = left;
+            }
+            if (right < heapSize && rank(heap[right], heap[lowest]) > 0) {
+                lowest = right;
+            }
+            if (lowest == index) {
+                return;
+            }
+            swap(heap, index, lowest);
+            index = lowest;
+        }
+    }
+
+    private static void swap(final int[] heap, final int i, final int j) {
+        final int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    private void resize() {
+        final String[] oldPlaceIds = placeIds;
+        final int[] oldTweets = tweets;
+        final int[] oldRetweets = retweets;
+        final int[] oldFavorites = favorites;
+        allocate(oldPlaceIds.length * 2);
+        for (int oldSlot = 0; oldSlot < oldPlaceIds.length; oldSlot++) {
+            if (oldPlaceIds[oldSlot] != null) {
+                final int slot = slotFor(placeIds, oldPlaceIds[oldSlot]);
+                placeIds[slot] = oldPlaceIds[oldSlot];
+                tweets[slot] = oldTweets[oldSlot];
+                retweets[slot] = oldRetweets[oldSlot];
+                favorites[slot] = oldFavorites[oldSlot];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        placeIds = new String[capacity];
+        tweets = new int[capacity];
+        retweets = new int[capacity];
+        favorites = new int[capacity];
+    }
+
+    /**
+     * Linearly probes for @param placeId, returning its slot or the empty slot it belongs in.
+     */
+    private static int slotFor(final String[] table, final String placeId) {
+        final int mask = table.length - 1;
+        final int hash = placeId.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != null && !table[slot].equals(placeId)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -1,30 +1,52 @@
 package com.zpzhou.trendingrestaurants.handlers;
 
 import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.metrics.PipelineMetrics;
 import com.zpzhou.trendingrestaurants.model.TimeFrame;
 import com.zpzhou.trendingrestaurants.model.Trend;
 import com.zpzhou.trendingrestaurants.model.TrendsList;
+import com.zpzhou.trendingrestaurants.model.StringDictionary;
 import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.zpzhou.trendingrestaurants.model.TweetRecord;
 import com.zpzhou.trendingrestaurants.search.places.BusinessNameFinderTask;
+import com.zpzhou.trendingrestaurants.search.places.BusinessNameRecognizer;
 import com.zpzhou.trendingrestaurants.search.places.GoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.NegativeLookupCache;
+import com.zpzhou.trendingrestaurants.search.places.PlaceLookups;
+import com.zpzhou.trendingrestaurants.search.tweets.FoodKeywords;
+import com.zpzhou.trendingrestaurants.search.tweets.KeywordMatcher;
+import com.zpzhou.trendingrestaurants.search.tweets.SearchBudget;
+import com.zpzhou.trendingrestaurants.search.tweets.SearchSummary;
 import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchQueryBuilder;
 import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchAPIClient;
+import com.zpzhou.trendingrestaurants.store.StoredTweet;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
-import opennlp.tools.namefind.TokenNameFinderModel;
-import opennlp.tools.tokenize.SimpleTokenizer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.function.Function;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
@@ -32,96 +54,657 @@ public class TrendsHandler {
 
     private static final Logger logger = LogManager.getLogger();
 
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Long enough to derive the longest TimeFrame, plus the partial bucket at its start
+    private static final long RETENTION_MILLIS = Arrays.stream(TimeFrame.values())
+            .mapToLong(timeFrame -> TimeUnit.DAYS.toMillis(timeFrame.getDurationDays()))
+            .max()
+            .getAsLong() + PlaceTimeline.BUCKET_MILLIS;
+
     private final TwitterSearchAPIClient twitterSearchAPIClient;
     private final GoogleMapsAPIWrapper mapsAPIWrapper;
+    private final NegativeLookupCache negativeLookups;
     private final ExecutorService executorService;
-    private final TokenNameFinderModel nameFinderModel;
-    private final Collection<String> foodKeywords;
+    private final BusinessNameRecognizer businessNameRecognizer;
+    private final FoodKeywords foodKeywords;
+    private final int recognitionBatchSize;
+    private final int maxTweetsInFlight;
+    private final SearchBudget searchBudget;
+    private final PlaceTimelines timelines;
+    private final int maxTrends;
+    private final long requestTimeoutMillis;
+    private final int coordinatePrecision;
+    private final int minKeywordScore;
+    private final long snapshotIntervalMillis;
+    private final PipelineMetrics metrics;
+
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
 
     public TrendsList handleGet(final String place, final TimeFrame timeFrame) throws InterruptedException {
-        // Query for tweets
+        return handleGet(place, timeFrame, requestTimeoutMillis);
+    }
+
+    /**
+     * Returns the trends for @param place within @param timeFrame, from the
+     * tweets resolved within @param timeoutMillis (capped at the configured
+     * request timeout). Past the deadline, the trends aggregated so far are
+     * returned and marked incomplete.
+     */
+    public TrendsList handleGet(final String place,
+                                final TimeFrame timeFrame,
+                                final long timeoutMillis) throws InterruptedException {
+        final List<TrendsList> trends = new ArrayList<>(1);
+        findTrends(Map.of(place, Set.of(timeFrame)), timeoutMillis,
+                (p, trendsList) -> trends.add(trendsList), Optional.empty());
+        return trends.get(0);
+    }
+
+    /**
+     * As handleGet, also handing @param onSnapshot the trends found so far:
+     * those already in the place's timeline straight away, then whenever the
+     * ranking changes as places are resolved, at most every
+     * snapshotIntervalMillis. Snapshots are handed over one at a time, in
+     * order, and never after the returned trends.
+     */
+    public TrendsList handleStream(final String place,
+                                   final TimeFrame timeFrame,
+                                   final long timeoutMillis,
+                                   final Consumer<TrendsList> onSnapshot) throws InterruptedException {
+        final List<TrendsList> trends = new ArrayList<>(1);
+        findTrends(Map.of(place, Set.of(timeFrame)), timeoutMillis,
+                (p, trendsList) -> trends.add(trendsList), Optional.of(onSnapshot));
+        return trends.get(0);
+    }
+
+    /**
+     * As handleGet, for each place in @param timeFramesByPlace and each of its
+     * TimeFrames, handing every TrendsList to @param onTrends along with its
+     * place. The places share a single search, with a place: clause for each,
+     * and the tweets it returns are partitioned back by the place they're
+     * tagged with. Their lookups share the same places and in flight limit.
+     */
+    public void handleGetAll(final Map<String, Set<TimeFrame>> timeFramesByPlace,
+                             final long timeoutMillis,
+                             final BiConsumer<String, TrendsList> onTrends) throws InterruptedException {
+        findTrends(timeFramesByPlace, timeoutMillis, onTrends, Optional.empty());
+    }
+
+    /**
+     * Implements handleGetAll, handing @param onSnapshot the trends found so
+     * far when there's a single place and TimeFrame.
+     */
+    private void findTrends(final Map<String, Set<TimeFrame>> timeFramesByPlace,
+                            final long timeoutMillis,
+                            final BiConsumer<String, TrendsList> onTrends,
+                            final Optional<Consumer<TrendsList>> onSnapshot) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + Math.min(timeoutMillis, requestTimeoutMillis);
+        final Timer.Sample sample = Timer.start();
+
+        // Query for tweets, reading the keywords once so that a reload can't change them mid-request
+        final List<String> places = new ArrayList<>(new TreeSet<>(timeFramesByPlace.keySet()));
+        final KeywordMatcher keywordMatcher = foodKeywords.getMatcher();
         final String query = new TwitterSearchQueryBuilder()
-                .withAnyKeywords(foodKeywords)
-                .withPlace(place)
+                .withAnyKeywords(keywordMatcher.getKeywords())
+                .withAnyPlace(places)
                 .build();
-        final List<Tweet> tweets = twitterSearchAPIClient.doSearch(query, timeFrame);
 
-        // Search for places mentioned in returned tweets
-        final List<Callable<Optional<PlaceDetails>>> findPlaceTasks = tweets.stream()
-                .map(this::createFindPlaceTask)
+        // Twitter's search is precise to the minute, so align the intervals we search to it
+        final long to = truncateToMinute(TwitterSearchAPIClient.getLatestSearchableTime().getMillis());
+
+        // Timelines are locked in the order of their places, so that requests sharing some can't deadlock
+        final List<String> acquired = new ArrayList<>(places.size());
+        final List<PlaceIngest> targets = new ArrayList<>(places.size());
+        PipelineMetrics.Outcome outcome = PipelineMetrics.Outcome.FAILED;
+        try {
+            for (final String place : places) {
+                final String key = timelineKey(place, keywordMatcher);
+                final PlaceTimeline timeline = timelines.acquire(key);
+                acquired.add(key);
+                // Another search ingesting into the timeline may hold it past this request's deadline
+                if (!timeline.tryLock(deadline - System.currentTimeMillis())) {
+                    logger.warn("Deadline passed waiting for the timeline of {}, held by another search", place);
+                    timeFramesByPlace.forEach((p, timeFrames) -> timeFrames.forEach(timeFrame -> onTrends.accept(
+                            p, new TrendsList(0, DateTime.now(), timeFrame, List.of(), 0, 0, false))));
+                    outcome = PipelineMetrics.Outcome.PARTIAL;
+                    return;
+                }
+                final long from = timeFramesByPlace.get(place).stream()
+                        .mapToLong(timeFrame -> truncateToMinute(timeFrame.getUTCDateTime().getMillis()))
+                        .min()
+                        .getAsLong();
+                targets.add(new PlaceIngest(place, timeline, from));
+
+                timeline.evictBefore(to - RETENTION_MILLIS);
+                // Catching up from a stale watermark would search more than the requested TimeFrame
+                if (!timeline.isEmpty() && timeline.getWatermark() < from) {
+                    timeline.clear();
+                }
+            }
+            // Tweets mentioning the same coordinates or business share a single lookup
+            final PlaceLookups lookups = new PlaceLookups(mapsAPIWrapper, negativeLookups, coordinatePrecision,
+                    Priority.current());
+            if (onSnapshot.isPresent()) {
+                final PlaceIngest target = targets.get(0);
+                target.progress = Optional.of(new Progress(
+                        timeFramesByPlace.get(target.place).iterator().next(), onSnapshot.get()));
+                target.snapshot();
+            }
+
+            // Only search for the tweets each place's timeline hasn't ingested yet,
+            // newer tweets first so a deadline leaves the oldest ones out
+            final List<Gap> newer = new ArrayList<>();
+            for (final PlaceIngest target : targets) {
+                if (target.timeline.isEmpty()) {
+                    newer.add(new Gap(target, target.from, to));
+                    target.cold = true;
+                }
+                else if (target.timeline.getWatermark() < to) {
+                    newer.add(new Gap(target, target.timeline.getWatermark(), to));
+                }
+            }
+            ingest(query, keywordMatcher, newer, lookups, deadline);
+
+            final List<Gap> older = new ArrayList<>();
+            for (final PlaceIngest target : targets) {
+                if (!target.cold && target.from < target.timeline.getCoveredFrom()) {
+                    older.add(new Gap(target, target.from, target.timeline.getCoveredFrom()));
+                }
+            }
+            ingest(query, keywordMatcher, older, lookups, deadline);
+
+            logger.info("Resolved {} tweets for {} with {} distinct place lookups",
+                    targets.stream().mapToInt(target -> target.summary.getTweetsProcessed()).sum(),
+                    places, lookups.size());
+            metrics.getTweetsPerRequest().record(
+                    targets.stream().mapToInt(target -> target.summary.getTweetsFetched()).sum());
+            metrics.getPlacesPerRequest().record(lookups.size());
+
+            // Aggregate each timeline's buckets to find trends
+            for (final PlaceIngest target : targets) {
+                target.closeProgress();
+                for (final TimeFrame timeFrame : timeFramesByPlace.get(target.place)) {
+                    final long from = truncateToMinute(timeFrame.getUTCDateTime().getMillis());
+                    final List<Trend> trends = metrics.getAggregation().record(
+                            () -> target.timeline.getTrends(from, maxTrends, target.overlay));
+                    onTrends.accept(target.place, new TrendsList(trends.size(), DateTime.now(), timeFrame, trends,
+                            target.summary.getTweetsFetched(), target.summary.getTweetsProcessed(),
+                            target.summary.isComplete()));
+                }
+            }
+            outcome = targets.stream().allMatch(target -> target.summary.isComplete())
+                    ? PipelineMetrics.Outcome.COMPLETE
+                    : PipelineMetrics.Outcome.PARTIAL;
+        }
+        finally {
+            targets.forEach(target -> target.timeline.unlock());
+            acquired.forEach(timelines::release);
+            sample.stop(metrics.getRequest(outcome));
+        }
+    }
+
+    /**
+     * Searches once for the tweets created within every gap in @param gaps,
+     * and resolves the places mentioned by each tweet falling in the gap of
+     * the place it's tagged with. Tweets not resolved by @param deadline are
+     * dropped. The rest are added to their place's timeline if its coverage
+     * can be extended over them without a gap, or to its overlay otherwise.
+     */
+    private void ingest(final String query,
+                        final KeywordMatcher keywordMatcher,
+                        final List<Gap> gaps,
+                        final PlaceLookups lookups,
+                        final long deadline) throws InterruptedException {
+        if (gaps.isEmpty()) {
+            return;
+        }
+        if (System.currentTimeMillis() >= deadline) {
+            gaps.forEach(gap -> gap.target.add(new IngestSummary(0, 0, false)));
+            return;
+        }
+        final long from = gaps.stream().mapToLong(gap -> gap.from).min().getAsLong();
+        final long to = gaps.stream().mapToLong(gap -> gap.to).max().getAsLong();
+
+        // Search for places mentioned in each page of tweets while the next page is fetched.
+        // At most maxTweetsInFlight tweets are being resolved at once; beyond that paging waits.
+        // Tweets are held as compact records, their text only until business names are recognized
+        final StringDictionary dictionary = new StringDictionary();
+        final List<TweetRecord> tweets = new ArrayList<>();
+        final List<Gap> tweetGaps = new ArrayList<>();
+        final List<CompletableFuture<Optional<PlaceDetails>>> placeFutures = new ArrayList<>();
+        // Tweets matched by the search without really being about food skip recognition and lookups
+        final Map<Gap, Integer> irrelevant = new HashMap<>();
+        final AtomicInteger untagged = new AtomicInteger();
+        final Semaphore inFlight = new Semaphore(Math.max(maxTweetsInFlight, recognitionBatchSize));
+        final SearchBudget budget = new SearchBudget(searchBudget.getMaxTweets() * gaps.size(),
+                Math.min(searchBudget.getMaxDurationMillis(), Math.max(0, deadline - System.currentTimeMillis())));
+        final SearchSummary summary = twitterSearchAPIClient.search(query,
+                new DateTime(from, DateTimeZone.UTC), new DateTime(to, DateTimeZone.UTC), budget, page -> {
+                    // Once a page has been cut short by the deadline, later (older) pages are ignored
+                    if (placeFutures.size() == tweets.size()) {
+                        final List<TweetRecord> records = new ArrayList<>(page.size());
+                        final List<Gap> recordGaps = new ArrayList<>(page.size());
+                        final List<String> texts = new ArrayList<>(page.size());
+                        for (final Tweet tweet : page) {
+                            final List<Gap> matching = findGaps(tweet, gaps);
+                            if (matching.isEmpty()) {
+                                untagged.incrementAndGet();
+                                continue;
+                            }
+                            if (keywordMatcher.score(tweet.getText(), tweet.getHashTags()) < minKeywordScore) {
+                                matching.forEach(gap -> irrelevant.merge(gap, 1, Integer::sum));
+                                continue;
+                            }
+                            toRecord(tweet, dictionary).ifPresent(record -> {
+                                for (final Gap gap : matching) {
+                                    // already ingested by its timeline, when searching another's gap
+                                    if (record.getCreatedAtMillis() < gap.from
+                                            || record.getCreatedAtMillis() >= gap.to) {
+                                        irrelevant.merge(gap, 1, Integer::sum);
+                                        continue;
+                                    }
+                                    records.add(record);
+                                    recordGaps.add(gap);
+                                    texts.add(tweet.getText());
+                                }
+                            });
+                        }
+                        tweets.addAll(records);
+                        tweetGaps.addAll(recordGaps);
+                        final List<CompletableFuture<Optional<PlaceDetails>>> futures =
+                                submitFindPlaceTasks(records, texts, lookups, inFlight, deadline);
+                        for (int i = 0; i < futures.size(); i++) {
+                            recordGaps.get(i).target.watch(records.get(i), futures.get(i));
+                        }
+                        placeFutures.addAll(futures);
+                    }
+                });
+        if (untagged.get() > 0) {
+            logger.debug("Skipped {} tweets not tagged with any of the places searched", untagged.get());
+        }
+
+        final Map<Gap, List<StoredTweet>> resolved = new HashMap<>();
+        final Map<Gap, Integer> fetched = new HashMap<>();
+        final Map<Gap, Integer> processed = new HashMap<>();
+        tweetGaps.forEach(gap -> fetched.merge(gap, 1, Integer::sum));
+        long oldest = to;
+        // A search stopped by its budget rather than the deadline is as complete as it gets
+        boolean complete = placeFutures.size() == tweets.size()
+                && (summary.isExhausted() || System.currentTimeMillis() < deadline);
+        int failed = 0;
+        for (int i = 0; i < placeFutures.size(); i++) {
+            final TweetRecord tweet = tweets.get(i);
+            final Gap gap = tweetGaps.get(i);
+            Optional<PlaceDetails> details = Optional.empty();
+            try {
+                details = getPlaceDetails(placeFutures.get(i), deadline);
+            }
+            catch (final TimeoutException ex) {
+                logger.warn("Deadline passed with {} of {} tweets resolved", i, tweets.size());
+                placeFutures.subList(i, placeFutures.size()).forEach(future -> future.cancel(true));
+                complete = false;
+                break;
+            }
+            catch (final ExecutionException | CancellationException ex) {
+                // Unlike a lookup that found no place, a failed one may have missed the tweet's
+                logger.debug("Failed to fetch place details {}", ex.getMessage());
+                gap.fail(tweet.getCreatedAtMillis());
+                failed++;
+            }
+            processed.merge(gap, 1, Integer::sum);
+            oldest = Math.min(oldest, tweet.getCreatedAtMillis());
+            details.ifPresent(placeDetails -> resolved.computeIfAbsent(gap, g -> new ArrayList<>()).add(
+                    new StoredTweet(tweet.getCreatedAtMillis(), tweet.getRetweetCount(), tweet.getFavoriteCount(),
+                            placeDetails)));
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (failed > 0) {
+            logger.warn("Place lookups failed for {} tweets, leaving trends for {} incomplete", failed,
+                    gaps.stream()
+                            .filter(Gap::hasFailures)
+                            .map(gap -> gap.target.place)
+                            .collect(Collectors.toList()));
+        }
+        for (final Gap gap : gaps) {
+            // Snapshots read the timeline from the threads resolving places
+            synchronized (gap.target) {
+                gap.merge(resolved.getOrDefault(gap, List.of()), oldest, summary.isExhausted(), complete);
+                gap.target.resetProgress();
+            }
+            final int skipped = irrelevant.getOrDefault(gap, 0);
+            gap.target.add(new IngestSummary(fetched.getOrDefault(gap, 0) + skipped,
+                    processed.getOrDefault(gap, 0) + skipped, complete && !gap.hasFailures()));
+        }
+    }
+
+    /**
+     * The gaps of the places @param tweet was found in: every gap when
+     * searching a single place, or those of the places it's tagged with.
+     */
+    private static List<Gap> findGaps(final Tweet tweet, final List<Gap> gaps) {
+        if (gaps.size() == 1) {
+            return gaps;
+        }
+        if (tweet.getPlace() == null || tweet.getPlace().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return gaps.stream()
+                .filter(gap -> tweet.getPlace().get().matches(gap.target.place))
                 .collect(Collectors.toList());
-        @SuppressWarnings("unchecked")
-        final List<Optional<PlaceDetails>> places = executorService.invokeAll(findPlaceTasks)
-                .stream()
-                .map(future -> {
-                    try {
-                        return future.get();
+    }
+
+    private Optional<PlaceDetails> getPlaceDetails(final CompletableFuture<Optional<PlaceDetails>> future,
+                                                   final long deadline)
+            throws TimeoutException, ExecutionException {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Recognizes business names in the @param texts of @param tweets in
+     * batches, so that each batch borrows a single name finder and each
+     * distinct text (retweets repeat theirs) is only run through it once, then
+     * searches for the place mentioned in each tweet through @param lookups.
+     * Returns one future per tweet, in order, stopping short of the end if
+     * @param deadline passes while waiting for room.
+     */
+    private List<CompletableFuture<Optional<PlaceDetails>>> submitFindPlaceTasks(
+            final List<TweetRecord> tweets,
+            final List<String> texts,
+            final PlaceLookups lookups,
+            final Semaphore inFlight,
+            final long deadline) throws InterruptedException {
+
+        final List<CompletableFuture<Optional<PlaceDetails>>> futures = new ArrayList<>(tweets.size());
+        for (int start = 0; start < tweets.size(); start += recognitionBatchSize) {
+            final int end = Math.min(start + recognitionBatchSize, tweets.size());
+            if (!inFlight.tryAcquire(end - start,
+                    Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                break;
+            }
+
+            // Only the recognition task refers to the texts, so they can be collected once it has run
+            final List<String> batchTexts = new ArrayList<>(texts.subList(start, end));
+            final CompletableFuture<List<Optional<String>>> businessNames = CompletableFuture.supplyAsync(
+                    () -> findMostProbableBusinesses(batchTexts), executorService);
+
+            final long submittedAt = System.nanoTime();
+            for (int i = start; i < end; i++) {
+                final TweetRecord tweet = tweets.get(i);
+                final int index = i - start;
+                futures.add(businessNames
+                        .thenCompose(names -> new BusinessNameFinderTask(
+                                lookups, tweet, names.get(index)).call())
+                        .whenComplete((details, ex) -> {
+                            inFlight.release();
+                            metrics.getResolution().record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                        }));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Returns the most probable business in each of @param texts, in order,
+     * running each distinct text through the recognizer once.
+     */
+    private List<Optional<String>> findMostProbableBusinesses(final List<String> texts) {
+        final List<String> distinctTexts = texts.stream()
+                .distinct()
+                .collect(Collectors.toList());
+        final Map<String, Optional<String>> businessesByText = zip(distinctTexts, metrics.getRecognition()
+                .record(() -> businessNameRecognizer.findMostProbableBusinesses(distinctTexts)));
+        metrics.getRecognitionBatchSize().record(distinctTexts.size());
+        return texts.stream()
+                .map(businessesByText::get)
+                .collect(Collectors.toList());
+    }
+
+    private static Optional<TweetRecord> toRecord(final Tweet tweet, final StringDictionary dictionary) {
+        try {
+            return Optional.of(TweetRecord.of(tweet, dictionary));
+        }
+        catch (final IllegalArgumentException ex) {
+            logger.warn("Skipping tweet with unparseable creation time {}", tweet.getCreatedAt());
+            return Optional.empty();
+        }
+    }
+
+    private static Map<String, Optional<String>> zip(final List<String> texts,
+                                                     final List<Optional<String>> businesses) {
+        final Map<String, Optional<String>> businessesByText = new HashMap<>(texts.size() * 2);
+        for (int i = 0; i < texts.size(); i++) {
+            businessesByText.put(texts.get(i), businesses.get(i));
+        }
+        return businessesByText;
+    }
+
+    private static long truncateToMinute(final long millis) {
+        return millis - Math.floorMod(millis, MINUTE_MILLIS);
+    }
+
+    /**
+     * A timeline only holds the tweets its searches' keywords matched, so each set
+     * of @param keywordMatcher keywords, and minimum score, keeps timelines of its own.
+     */
+    String timelineKey(final String place, final KeywordMatcher keywordMatcher) {
+        return String.format("%s#%s-%d", place, keywordMatcher.getVersion(), minKeywordScore);
+    }
+
+    /**
+     * A place whose trends are being found, and what has been ingested for it so far.
+     */
+    private class PlaceIngest {
+        private final String place;
+        private final PlaceTimeline timeline;
+        // Start of the longest TimeFrame requested for the place
+        private final long from;
+        // Tweets resolved for this request that can't be ingested without leaving a gap in coverage
+        private final PlaceTimeline overlay = new PlaceTimeline();
+        private IngestSummary summary = IngestSummary.EMPTY;
+        // Whether the timeline was empty, so only needed a single search
+        private boolean cold;
+        private Optional<Progress> progress = Optional.empty();
+
+        PlaceIngest(final String place, final PlaceTimeline timeline, final long from) {
+            this.place = place;
+            this.timeline = timeline;
+            this.from = from;
+        }
+
+        void add(final IngestSummary ingested) {
+            summary = summary.plus(ingested);
+        }
+
+        /**
+         * Adds the place @param tweet mentions to the snapshots once @param
+         * future resolves it, unless its search has been merged by then.
+         */
+        void watch(final TweetRecord tweet, final CompletableFuture<Optional<PlaceDetails>> future) {
+            if (progress.isEmpty()) {
+                return;
+            }
+            final Progress watched = progress.get();
+            final int generation;
+            synchronized (this) {
+                generation = watched.generation;
+            }
+            future.thenAccept(details -> {
+                synchronized (this) {
+                    if (watched.closed || generation != watched.generation) {
+                        return;
                     }
-                    catch (final Exception ex) {
-                        logger.warn("Failed to fetch place details {}", ex.getMessage());
-                        return Optional.empty();
+                    watched.resolved++;
+                    details.ifPresent(placeDetails -> watched.live.ingest(tweet, placeDetails));
+                    if (System.currentTimeMillis() - watched.sentAt >= snapshotIntervalMillis) {
+                        snapshot();
                     }
-                })
-                .map(optional -> (Optional<PlaceDetails>) optional)
-                .collect(Collectors.toList());
+                }
+            });
+        }
+
+        /**
+         * Hands over the trends in the timeline and those resolved since,
+         * if their ranking has changed since the last snapshot.
+         */
+        synchronized void snapshot() {
+            if (progress.isEmpty()) {
+                return;
+            }
+            final Progress current = progress.get();
+            final long from = truncateToMinute(current.timeFrame.getUTCDateTime().getMillis());
+            final List<Trend> trends = timeline.getTrends(from, maxTrends, current.live);
+            final List<String> ranking = trends.stream()
+                    .map(trend -> trend.getDetails().placeId + ":" + trend.getTotalTweets())
+                    .collect(Collectors.toList());
+            if (trends.isEmpty() || ranking.equals(current.ranking)) {
+                return;
+            }
+            current.ranking = ranking;
+            current.sentAt = System.currentTimeMillis();
+            current.onSnapshot.accept(new TrendsList(trends.size(), DateTime.now(), current.timeFrame, trends,
+                    summary.getTweetsFetched(), summary.getTweetsProcessed() + current.resolved, false));
+        }
 
-        // Aggregate tweets and places to find trends
-        final List<Trend> trends = aggregateIntoTrends(tweets, places);
+        /**
+         * Replaces the tweets resolved since the last merge with the overlay,
+         * as the rest are now in the timeline.
+         */
+        synchronized void resetProgress() {
+            progress.ifPresent(current -> {
+                current.generation++;
+                current.resolved = 0;
+                current.live.clear();
+                current.live.addAll(overlay);
+            });
+        }
 
-        return new TrendsList(trends.size(), DateTime.now(), timeFrame, trends);
+        synchronized void closeProgress() {
+            progress.ifPresent(current -> current.closed = true);
+        }
     }
 
-    private Callable<Optional<PlaceDetails>> createFindPlaceTask(final Tweet tweet) {
-        return new BusinessNameFinderTask(
-                SimpleTokenizer.INSTANCE, nameFinderModel, mapsAPIWrapper, tweet);
+    /**
+     * The trends handed over as snapshots for a single place and TimeFrame,
+     * and the tweets resolved since its timeline was last merged into.
+     */
+    private static class Progress {
+        private final TimeFrame timeFrame;
+        private final Consumer<TrendsList> onSnapshot;
+        private final PlaceTimeline live = new PlaceTimeline();
+        // Incremented on every merge, so resolutions from merged searches are ignored
+        private int generation;
+        private int resolved;
+        private List<String> ranking = Collections.emptyList();
+        private long sentAt;
+        private boolean closed;
+
+        Progress(final TimeFrame timeFrame, final Consumer<TrendsList> onSnapshot) {
+            this.timeFrame = timeFrame;
+            this.onSnapshot = onSnapshot;
+        }
     }
 
-    private List<Trend> aggregateIntoTrends(final List<Tweet> tweets,
-                                            final List<Optional<PlaceDetails>> mentionedPlaces) {
+    /**
+     * An interval [from, to) of tweets a place's timeline needs ingested.
+     */
+    private static class Gap {
+        private final PlaceIngest target;
+        private final long from;
+        private final long to;
+        // Creation times of the newest and oldest tweets whose place lookups failed
+        private long newestFailed = Long.MIN_VALUE;
+        private long oldestFailed = Long.MAX_VALUE;
+
+        Gap(final PlaceIngest target, final long from, final long to) {
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
 
-        assert tweets.size() == mentionedPlaces.size();
+        /**
+         * Records that the place lookups of a tweet created at @param createdAtMillis failed.
+         */
+        void fail(final long createdAtMillis) {
+            newestFailed = Math.max(newestFailed, createdAtMillis);
+            oldestFailed = Math.min(oldestFailed, createdAtMillis);
+        }
 
-        // Aggregate tweets by mentioned places
-        final Map<String, List<Tweet>> tweetsByPlaces = new HashMap<>();
-        for (int i = 0; i < tweets.size(); i++) {
-            final Tweet tweet = tweets.get(i);
-            final Optional<PlaceDetails> placeDetails = mentionedPlaces.get(i);
-            placeDetails.ifPresent(details -> {
-                if (!tweetsByPlaces.containsKey(details.placeId)) {
-                    tweetsByPlaces.put(details.placeId, new ArrayList<>() {{
-                        add(tweet);
-                    }});
+        boolean hasFailures() {
+            return newestFailed != Long.MIN_VALUE;
+        }
+
+        /**
+         * Adds the tweets @param resolved within this gap to its timeline, given
+         * that the search resolved every tweet back to @param oldest, and whether
+         * it was @param exhausted and @param complete. Tweets outside of the
+         * interval the timeline's coverage can be extended over are only added
+         * to the overlay.
+         */
+        void merge(final List<StoredTweet> resolved,
+                   final long oldest,
+                   final boolean exhausted,
+                   final boolean complete) {
+            final PlaceTimeline timeline = target.timeline;
+            // Results come newest first, so a search cut short by its budget or the deadline
+            // covers only back to the oldest tweet resolved
+            final long coveredFrom = Math.min(Math.max(oldest, from), to);
+            // A tweet whose lookups failed may have missed its place, so the minutes up to the newest
+            // such tweet, or from the oldest, are left uncovered to be searched again next time
+            final long afterFailures = hasFailures()
+                    ? Math.max(coveredFrom, Math.min(truncateToMinute(newestFailed) + MINUTE_MILLIS, to))
+                    : coveredFrom;
+            final long beforeFailures = hasFailures() ? Math.max(from, truncateToMinute(oldestFailed)) : to;
+            if (exhausted && complete && !hasFailures()) {
+                cover(resolved, from, to);
+            }
+            // That still adjoins the timeline's coverage when searching before it
+            else if (timeline.isEmpty() || to == timeline.getCoveredFrom()) {
+                cover(resolved, afterFailures, to);
+            }
+            // as does everything older than the failures when searching after it
+            else if (exhausted && complete && from == timeline.getWatermark()) {
+                cover(resolved, from, beforeFailures);
+            }
+            // Searching after it, paging stopped by the search budget leaves a gap that later
+            // searches won't fill either, so restart the timeline from the newest tweets
+            else if (complete) {
+                timeline.clear();
+                cover(resolved, afterFailures, to);
+            }
+            // whereas the deadline only cut this request short, so search the interval again next time
+            else {
+                resolved.forEach(target.overlay::ingest);
+            }
+        }
+
+        /**
+         * Adds the tweets in @param resolved created in [@param coverFrom, @param coverTo)
+         * to the timeline, committing them along with the extended coverage, and the rest
+         * to the overlay.
+         */
+        private void cover(final List<StoredTweet> resolved, final long coverFrom, final long coverTo) {
+            final List<StoredTweet> covered = new ArrayList<>(resolved.size());
+            for (final StoredTweet tweet : resolved) {
+                if (tweet.getCreatedAtMillis() >= coverFrom && tweet.getCreatedAtMillis() < coverTo) {
+                    target.timeline.ingest(tweet);
+                    covered.add(tweet);
                 }
                 else {
-                    tweetsByPlaces.get(details.placeId).add(tweet);
+                    target.overlay.ingest(tweet);
                 }
-            });
+            }
+            target.timeline.extendCoverage(coverFrom, coverTo);
+            target.timeline.commit(covered);
         }
-        // Reference places by placeId
-        final Map<String, PlaceDetails> placesById = mentionedPlaces.stream()
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toMap(
-                        placeDetail -> placeDetail.placeId, Function.identity(), (curr, next) -> curr));
-
-        // Reduce aggregated tweets into trends in sorted order with respect to
-        //  1. Tweets
-        //  2. Favourites
-        //  3. Retweets
-        return tweetsByPlaces.keySet().stream()
-                .map(placeId -> {
-                    final List<Tweet> tweetsWithPlaceId = tweetsByPlaces.get(placeId);
-                    final int totalTweets = tweetsWithPlaceId.size();
-                    final int totalRetweets = tweetsWithPlaceId.stream()
-                            .map(Tweet::getRetweetCount)
-                            .reduce(0, Math::addExact);
-                    final int totalFavourites = tweetsWithPlaceId.stream()
-                            .map(Tweet::getRetweetCount)
-                            .reduce(0, Math::addExact);
-
-                    return new Trend(placesById.get(placeId), totalTweets, totalRetweets, totalFavourites);
-                })
-                .sorted()
-                .collect(Collectors.toList());
     }
 }
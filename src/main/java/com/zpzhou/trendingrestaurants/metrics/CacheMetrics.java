@@ -0,0 +1,51 @@
+package com.zpzhou.trendingrestaurants.metrics;
+
+import com.zpzhou.trendingrestaurants.controllers.cache.CacheStats;
+import com.zpzhou.trendingrestaurants.controllers.cache.ExpiringCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the stats of an ExpiringCache, tagged with its @param name.
+ */
+@RequiredArgsConstructor
+public class CacheMetrics implements MeterBinder {
+
+    private final String name;
+    private final ExpiringCache<?, ?> cache;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        counter(registry, "hit", CacheStats::getHits);
+        counter(registry, "stale", CacheStats::getStaleHits);
+        counter(registry, "miss", CacheStats::getMisses);
+        FunctionCounter.builder("cache.evictions", cache, value -> value.getStats().getEvictions())
+                .tag("cache", name)
+                .description("Entries evicted to make room")
+                .register(registry);
+        FunctionCounter.builder("cache.refreshes", cache, value -> value.getStats().getRefreshes())
+                .tag("cache", name)
+                .tag("result", "success")
+                .register(registry);
+        FunctionCounter.builder("cache.refreshes", cache, value -> value.getStats().getRefreshFailures())
+                .tag("cache", name)
+                .tag("result", "failure")
+                .register(registry);
+        Gauge.builder("cache.size", cache, ExpiringCache::size)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private void counter(final MeterRegistry registry, final String result, final ToDoubleFunction<CacheStats> count) {
+        FunctionCounter.builder("cache.gets", cache, value -> count.applyAsDouble(value.getStats()))
+                .tag("cache", name)
+                .tag("result", result)
+                .description("Lookups, by whether they found a fresh, stale or no entry")
+                .register(registry);
+    }
+}
@@ -0,0 +1,91 @@
+package com.zpzhou.trendingrestaurants.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The meters timing each stage of finding trends, and sizing each request.
+ * Upstream calls, including each page of search results, are timed by
+ * their AsyncLimiter.
+ *
+ * Timers publish a histogram, for percentiles to be aggregated across
+ * instances, along with percentiles of their own. Requests are timed
+ * whatever their Outcome, and tagged with it.
+ */
+@Getter
+public class PipelineMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    public enum Outcome {
+        // Trends found over the whole of every TimeFrame requested
+        COMPLETE,
+        // Trends found, but missing tweets cut short by the deadline or whose lookups failed
+        PARTIAL,
+        // No trends found, the request having thrown
+        FAILED
+    }
+
+    // Reading a page of search results as it streams in
+    private final Timer searchParse;
+    // Recognizing the businesses named in a batch of tweets
+    private final Timer recognition;
+    // Distinct texts recognized per batch
+    private final DistributionSummary recognitionBatchSize;
+    // Resolving the place a tweet mentions, from being queued for recognition to its lookups completing
+    private final Timer resolution;
+    // Ranking a timeline's places into trends
+    private final Timer aggregation;
+    // Finding trends for a request's places, end to end, by outcome
+    @Getter(AccessLevel.NONE)
+    private final Map<Outcome, Timer> requests = new EnumMap<>(Outcome.class);
+    private final DistributionSummary tweetsPerRequest;
+    private final DistributionSummary placesPerRequest;
+
+    public PipelineMetrics(final MeterRegistry registry) {
+        searchParse = timer(registry, "trends.search.parse", "Time to read a page of search results");
+        recognition = timer(registry, "trends.recognition",
+                "Time to recognize the businesses named in a batch of tweets");
+        recognitionBatchSize = DistributionSummary.builder("trends.recognition.batch")
+                .description("Distinct tweet texts recognized per batch")
+                .publishPercentileHistogram()
+                .register(registry);
+        resolution = timer(registry, "trends.resolution", "Time to resolve the place a tweet mentions");
+        aggregation = timer(registry, "trends.aggregation", "Time to rank a place's trends");
+        for (final Outcome outcome : Outcome.values()) {
+            requests.put(outcome, timerBuilder("trends.request", "Time to find trends for a request's places")
+                    .tag("outcome", outcome.toString().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        tweetsPerRequest = DistributionSummary.builder("trends.request.tweets")
+                .description("Tweets fetched per request")
+                .publishPercentileHistogram()
+                .register(registry);
+        placesPerRequest = DistributionSummary.builder("trends.request.places")
+                .description("Distinct coordinates and business names looked up per request")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public Timer getRequest(final Outcome outcome) {
+        return requests.get(outcome);
+    }
+
+    public static Timer.Builder timerBuilder(final String name, final String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram();
+    }
+
+    private static Timer timer(final MeterRegistry registry, final String name, final String description) {
+        return timerBuilder(name, description).register(registry);
+    }
+}
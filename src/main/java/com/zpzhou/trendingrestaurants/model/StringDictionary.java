@@ -0,0 +1,35 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes repeated strings, such as handles and hashtags, as dense int ids
+ * so that each distinct value is held once however many tweets mention it.
+ * Not thread safe.
+ */
+public class StringDictionary {
+
+    private final Map<String, Integer> idsByValue = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public int encode(final String value) {
+        final Integer id = idsByValue.get(value);
+        if (id != null) {
+            return id;
+        }
+        values.add(value);
+        idsByValue.put(value, values.size() - 1);
+        return values.size() - 1;
+    }
+
+    public String decode(final int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
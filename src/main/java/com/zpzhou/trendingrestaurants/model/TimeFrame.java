@@ -22,6 +22,10 @@ public enum TimeFrame {
                 .minusDays(durationDays);
     }
 
+    public int getDurationDays() {
+        return durationDays;
+    }
+
     @Override
     public String toString() {
         return stringValue;
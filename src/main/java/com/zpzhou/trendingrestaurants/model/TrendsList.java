@@ -11,4 +11,9 @@ public class TrendsList {
     private final DateTime dateTime;
     private final TimeFrame timeFrame;
     private final List<Trend> trends;
+    // Tweets newly fetched for this request, and how many were resolved before its deadline
+    private final int tweetsFetched;
+    private final int tweetsProcessed;
+    // False if the deadline cut the request short, so the trends may be missing tweets
+    private final boolean complete;
 }
@@ -0,0 +1,16 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A place and timeframe to find trends for, as requested in a batch.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrendsQuery {
+    private String place;
+    private String timeframe;
+}
@@ -0,0 +1,23 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import lombok.Data;
+
+/**
+ * A line of a batch response: the trends found for a place and timeframe,
+ * or why they couldn't be.
+ */
+@Data
+public class TrendsResult {
+    private final String place;
+    private final String timeframe;
+    private final TrendsList trends;
+    private final String error;
+
+    public static TrendsResult of(final String place, final TrendsList trends) {
+        return new TrendsResult(place, trends.getTimeFrame().toString(), trends, null);
+    }
+
+    public static TrendsResult failed(final String place, final String timeframe, final String error) {
+        return new TrendsResult(place, timeframe, null, error);
+    }
+}
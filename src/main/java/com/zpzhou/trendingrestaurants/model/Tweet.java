@@ -2,13 +2,20 @@ package com.zpzhou.trendingrestaurants.model;
 
 import lombok.Builder;
 import lombok.Data;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Data
 @Builder
 public class Tweet {
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormat
+            .forPattern("EEE MMM dd HH:mm:ss Z yyyy")
+            .withLocale(Locale.ENGLISH);
+
     private final String text;
     private final List<String> hashTags;
     private final int retweetCount;
@@ -16,4 +23,12 @@ public class Tweet {
     private final String createdAt;
     private final String twitterHandle;
     private final Optional<LatLng> latLng;
+    private final Optional<TwitterPlace> place;
+
+    /**
+     * Parses Twitter's created_at format, eg. "Wed Oct 10 20:19:24 +0000 2018".
+     */
+    public long getCreatedAtMillis() {
+        return CREATED_AT_FORMAT.parseMillis(createdAt);
+    }
 }
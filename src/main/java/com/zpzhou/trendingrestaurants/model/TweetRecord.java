@@ -0,0 +1,48 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The parts of a Tweet the trends pipeline needs once business names have
+ * been recognized in its text, held as primitives. Handles and hashtags are
+ * ids in the StringDictionary of the request that searched for the tweet.
+ */
+@Data
+public class TweetRecord {
+    private final long createdAtMillis;
+    private final int retweetCount;
+    private final int favoriteCount;
+    private final int handleId;
+    private final int[] hashTagIds;
+    // NaN unless the tweet is geotagged
+    private final double lat;
+    private final double lng;
+
+    /**
+     * Throws IllegalArgumentException if @param tweet has no parseable creation time.
+     */
+    public static TweetRecord of(final Tweet tweet, final StringDictionary dictionary) {
+        if (tweet.getCreatedAt() == null) {
+            throw new IllegalArgumentException("Tweet has no creation time");
+        }
+        final List<String> hashTags = tweet.getHashTags();
+        final int[] hashTagIds = new int[hashTags == null ? 0 : hashTags.size()];
+        for (int i = 0; i < hashTagIds.length; i++) {
+            hashTagIds[i] = dictionary.encode(hashTags.get(i));
+        }
+        return new TweetRecord(
+                tweet.getCreatedAtMillis(),
+                tweet.getRetweetCount(),
+                tweet.getFavoriteCount(),
+                dictionary.encode(tweet.getTwitterHandle()),
+                hashTagIds,
+                tweet.getLatLng().map(latLng -> latLng.getLat().doubleValue()).orElse(Double.NaN),
+                tweet.getLatLng().map(latLng -> latLng.getLng().doubleValue()).orElse(Double.NaN));
+    }
+
+    public boolean hasLatLng() {
+        return !Double.isNaN(lat) && !Double.isNaN(lng);
+    }
+}
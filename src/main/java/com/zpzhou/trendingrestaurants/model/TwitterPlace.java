@@ -0,0 +1,28 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import lombok.Data;
+
+import java.util.Locale;
+
+/**
+ * The Twitter place a tweet is tagged with, eg. id "3797791ff9c0e4c6",
+ * name "Toronto" and full name "Toronto, Ontario".
+ */
+@Data
+public class TwitterPlace {
+    private final String id;
+    private final String name;
+    private final String fullName;
+
+    /**
+     * Whether this is the place a place: search operator for @param place
+     * refers to, by its id, name, full name, or the start of its full name.
+     */
+    public boolean matches(final String place) {
+        final String normalized = place.trim().toLowerCase(Locale.ROOT);
+        return normalized.equals(id)
+                || normalized.equalsIgnoreCase(name)
+                || (fullName != null && (normalized.equalsIgnoreCase(fullName)
+                        || fullName.toLowerCase(Locale.ROOT).startsWith(normalized + ",")));
+    }
+}
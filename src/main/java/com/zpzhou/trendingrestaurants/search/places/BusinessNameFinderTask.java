@@ -1,89 +1,50 @@
 package com.zpzhou.trendingrestaurants.search.places;
 
-import com.google.maps.model.AddressType;
 import com.google.maps.model.PlaceDetails;
-import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.zpzhou.trendingrestaurants.model.TweetRecord;
 import lombok.RequiredArgsConstructor;
-import opennlp.tools.namefind.NameFinderME;
-import opennlp.tools.namefind.TokenNameFinderModel;
-import opennlp.tools.tokenize.SimpleTokenizer;
-import opennlp.tools.util.Span;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
-import java.util.Arrays;
-import java.util.EnumSet;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 @RequiredArgsConstructor
-public class BusinessNameFinderTask implements Callable<Optional<PlaceDetails>> {
-
-    private static final Logger logger = LogManager.getLogger();
-
-    private static Set<AddressType> BUSINESS_TYPES = EnumSet.of(
-            AddressType.CAFE,
-            AddressType.BAKERY,
-            AddressType.RESTAURANT,
-            AddressType.BAR,
-            AddressType.FOOD,
-            AddressType.GROCERY_OR_SUPERMARKET);
-
-    private final SimpleTokenizer tokenizer;
-    private final TokenNameFinderModel nameFinderModel;
-    private final GoogleMapsAPIWrapper mapsAPIWrapper;
-    private final Tweet tweet;
-
-    public Optional<PlaceDetails> call() {
+public class BusinessNameFinderTask implements Callable<CompletableFuture<Optional<PlaceDetails>>> {
+
+    private final PlaceLookups lookups;
+    private final TweetRecord tweet;
+    private final Optional<String> mostProbableBusiness;
+
+    /**
+     * Returns a future of the business the tweet mentions, which completes
+     * without blocking a thread on any of the lookups it chains. It completes
+     * exceptionally if no business was found and a lookup failed, as the
+     * tweet may then have missed its place.
+     */
+    public CompletableFuture<Optional<PlaceDetails>> call() {
         // Attempt to find business from LatLng if available
-        return tweet.getLatLng().flatMap(latLng -> mapsAPIWrapper
-                .getReverseGeoCoding(latLng.getLat(), latLng.getLng())
-                .stream()
-                .findFirst()
-                .flatMap(result -> mapsAPIWrapper.getPlaceDetails(result.placeId)))
-                .filter(this::isPlaceOfDesiredType)
-        // If we can't find a business from the LatLng, tokenize the tweet
-        // and attempt to search for businesses by text
-                .or(() -> findMostProbableBusiness()
-                        .flatMap(business -> mapsAPIWrapper.findPlacesByText(business)
-                                .stream()
-                                .findFirst()
-                                .flatMap(result -> mapsAPIWrapper.getPlaceDetails(result.placeId)))
-                                .filter(this::isPlaceOfDesiredType));
-
-    }
-
-    private Optional<String> findMostProbableBusiness() {
-        final NameFinderME nameFinder = new NameFinderME(nameFinderModel);
-        final String[] tokens = tokenizer.tokenize(tweet.getText());
-        final Span[] spans = nameFinder.find(tokens);
-        nameFinder.clearAdaptiveData();
-
-        int maxProbableBusinessIdx = -1;
-        double maxProb = 0.0;
-        for (int i = 0; i < spans.length; i++) {
-            if (spans[i].getProb() > maxProb) {
-                maxProb = spans[i].getProb();
-                maxProbableBusinessIdx = i;
-            }
-        }
-        if (maxProbableBusinessIdx == -1) {
-            return Optional.empty();
-        }
-        else {
-            final Span mostProbableSpan = spans[maxProbableBusinessIdx];
-            final String[] tokenizedBusinessName = new String[mostProbableSpan.getEnd() - mostProbableSpan.getStart()];
-            for (int i = mostProbableSpan.getStart(); i < mostProbableSpan.getEnd(); i++) {
-                tokenizedBusinessName[i - mostProbableSpan.getStart()] = tokens[i];
-            }
-            return Optional.of(
-                    String.join(" ", tokenizedBusinessName));
-        }
-    }
-
-    private boolean isPlaceOfDesiredType(final PlaceDetails details) {
-        return Arrays.asList(details.types).stream()
-                .anyMatch(BUSINESS_TYPES::contains);
+        final CompletableFuture<Optional<PlaceDetails>> fromLatLng = tweet.hasLatLng()
+                ? lookups.findByLatLng(tweet.getLat(), tweet.getLng())
+                : CompletableFuture.completedFuture(Optional.empty());
+
+        // If we can't find a business from the LatLng, search for the
+        // business name recognized in the tweet's text
+        return fromLatLng
+                .handle((details, ex) -> details != null && details.isPresent()
+                        ? CompletableFuture.completedFuture(details)
+                        : mostProbableBusiness
+                                .map(lookups::findByBusinessName)
+                                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()))
+                                .thenApply(byName -> {
+                                    if (byName.isEmpty() && ex != null) {
+                                        throw ex instanceof CompletionException
+                                                ? (CompletionException) ex
+                                                : new CompletionException(ex);
+                                    }
+                                    return byName;
+                                }))
+                .thenCompose(Function.identity());
     }
 }
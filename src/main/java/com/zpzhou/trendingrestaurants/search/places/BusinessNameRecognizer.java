@@ -0,0 +1,111 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Finds the most probable business name mentioned in a piece of text.
+ *
+ * NameFinderME is not thread safe and is expensive to construct, so
+ * instances are pooled and each caller borrows one for a whole batch of
+ * texts. Adaptive data is cleared after every text, as each tweet is an
+ * independent document. Recognition is CPU bound, so at most
+ * maxConcurrentNameFinders batches run at once and further callers wait for
+ * a name finder to be returned; this bounds both CPU use and the number of
+ * name finders ever constructed, whatever executor callers run on.
+ */
+public class BusinessNameRecognizer {
+
+    private final Tokenizer tokenizer;
+    private final TokenNameFinderModel nameFinderModel;
+    private final Semaphore nameFinderPermits;
+    private final Queue<NameFinderME> idleNameFinders = new ConcurrentLinkedQueue<>();
+
+    public BusinessNameRecognizer(final Tokenizer tokenizer,
+                                  final TokenNameFinderModel nameFinderModel,
+                                  final int maxConcurrentNameFinders) {
+        this.tokenizer = tokenizer;
+        this.nameFinderModel = nameFinderModel;
+        this.nameFinderPermits = new Semaphore(maxConcurrentNameFinders);
+    }
+
+    public Optional<String> findMostProbableBusiness(final String text) {
+        final NameFinderME nameFinder = borrow();
+        try {
+            return findMostProbableBusiness(nameFinder, text);
+        }
+        finally {
+            release(nameFinder);
+        }
+    }
+
+    /**
+     * Returns the most probable business in each of @param texts, in order.
+     */
+    public List<Optional<String>> findMostProbableBusinesses(final List<String> texts) {
+        final List<Optional<String>> businesses = new ArrayList<>(texts.size());
+        final NameFinderME nameFinder = borrow();
+        try {
+            for (final String text : texts) {
+                businesses.add(findMostProbableBusiness(nameFinder, text));
+            }
+            return businesses;
+        }
+        finally {
+            release(nameFinder);
+        }
+    }
+
+    private Optional<String> findMostProbableBusiness(final NameFinderME nameFinder, final String text) {
+        final String[] tokens = tokenizer.tokenize(text);
+        final Span[] spans;
+        try {
+            spans = nameFinder.find(tokens);
+        }
+        finally {
+            nameFinder.clearAdaptiveData();
+        }
+
+        int maxProbableBusinessIdx = -1;
+        double maxProb = 0.0;
+        for (int i = 0; i < spans.length; i++) {
+            if (spans[i].getProb() > maxProb) {
+                maxProb = spans[i].getProb();
+                maxProbableBusinessIdx = i;
+            }
+        }
+        if (maxProbableBusinessIdx == -1) {
+            return Optional.empty();
+        }
+        else {
+            final Span mostProbableSpan = spans[maxProbableBusinessIdx];
+            final String[] tokenizedBusinessName = new String[mostProbableSpan.getEnd() - mostProbableSpan.getStart()];
+            for (int i = mostProbableSpan.getStart(); i < mostProbableSpan.getEnd(); i++) {
+                tokenizedBusinessName[i - mostProbableSpan.getStart()] = tokens[i];
+            }
+            return Optional.of(
+                    String.join(" ", tokenizedBusinessName));
+        }
+    }
+
+    private NameFinderME borrow() {
+        nameFinderPermits.acquireUninterruptibly();
+        // Holding a permit, so there are never more name finders than permits
+        final NameFinderME nameFinder = idleNameFinders.poll();
+        return nameFinder != null ? nameFinder : new NameFinderME(nameFinderModel);
+    }
+
+    private void release(final NameFinderME nameFinder) {
+        idleNameFinders.offer(nameFinder);
+        nameFinderPermits.release();
+    }
+}
@@ -0,0 +1,18 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import lombok.Data;
+import org.springframework.core.io.Resource;
+
+/**
+ * A photo served from PhotoCache. The resource reads straight from the disk
+ * tier when the photo isn't held in memory, in which case it can only be
+ * read once, and must be.
+ */
+@Data
+public class CachedPhoto {
+    private final Resource resource;
+    private final String contentType;
+    private final long contentLength;
+    // Quoted strong validator derived from the image bytes
+    private final String etag;
+}
@@ -0,0 +1,150 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import com.google.gson.Gson;
+import com.google.maps.GeoApiContext;
+import com.google.maps.model.AddressType;
+import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.Photo;
+import com.google.maps.model.PlaceDetails;
+import com.google.maps.model.PlacesSearchResult;
+import com.zpzhou.trendingrestaurants.upstream.AsyncLimiter;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Memoizes the lookups made while resolving tweets to places:
+ *  1. text -> placeId
+ *  2. rounded coordinates -> placeId
+ *  3. placeId -> PlaceDetails
+ *
+ * Only the place id of a search or geocoding result is kept, which is all
+ * that callers resolving a business make use of. Empty results are not cached.
+ */
+public class CachingGoogleMapsAPIWrapper extends GoogleMapsAPIWrapper implements Closeable {
+
+    private final DiskBackedCache<String> placeIdsByText;
+    private final DiskBackedCache<String> placeIdsByCoordinates;
+    private final DiskBackedCache<PlaceDetails> placeDetailsById;
+    private final int coordinatePrecision;
+
+    public CachingGoogleMapsAPIWrapper(final GeoApiContext context,
+                                       final AsyncLimiter findPlaceLimiter,
+                                       final AsyncLimiter placeDetailsLimiter,
+                                       final AsyncLimiter geocodingLimiter,
+                                       final AsyncLimiter photoLimiter,
+                                       final DiskBackedCache<String> placeIdsByText,
+                                       final DiskBackedCache<String> placeIdsByCoordinates,
+                                       final DiskBackedCache<PlaceDetails> placeDetailsById,
+                                       final int coordinatePrecision) {
+        super(context, findPlaceLimiter, placeDetailsLimiter, geocodingLimiter, photoLimiter);
+        this.placeIdsByText = placeIdsByText;
+        this.placeIdsByCoordinates = placeIdsByCoordinates;
+        this.placeDetailsById = placeDetailsById;
+        this.coordinatePrecision = coordinatePrecision;
+    }
+
+    @Override
+    public CompletableFuture<List<PlacesSearchResult>> findPlacesByText(final String text, final Priority priority) {
+        final String key = text.trim().toLowerCase(Locale.ROOT);
+        final Optional<String> cachedPlaceId = placeIdsByText.get(key);
+        if (cachedPlaceId.isPresent()) {
+            final PlacesSearchResult result = new PlacesSearchResult();
+            result.placeId = cachedPlaceId.get();
+            return CompletableFuture.completedFuture(Collections.singletonList(result));
+        }
+        return super.findPlacesByText(text, priority).thenApply(results -> {
+            results.stream()
+                    .findFirst()
+                    .ifPresent(result -> placeIdsByText.put(key, result.placeId));
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<GeocodingResult>> getReverseGeoCoding(final BigDecimal lat,
+                                                                        final BigDecimal lng,
+                                                                        final Priority priority) {
+        final String key = String.format("%s,%s", round(lat), round(lng));
+        final Optional<String> cachedPlaceId = placeIdsByCoordinates.get(key);
+        if (cachedPlaceId.isPresent()) {
+            final GeocodingResult result = new GeocodingResult();
+            result.placeId = cachedPlaceId.get();
+            return CompletableFuture.completedFuture(Collections.singletonList(result));
+        }
+        return super.getReverseGeoCoding(lat, lng, priority).thenApply(results -> {
+            results.stream()
+                    .findFirst()
+                    .ifPresent(result -> placeIdsByCoordinates.put(key, result.placeId));
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlaceDetails>> getPlaceDetails(final String placeId,
+                                                                    final Priority priority) {
+        final Optional<PlaceDetails> cachedDetails = placeDetailsById.get(placeId);
+        if (cachedDetails.isPresent()) {
+            return CompletableFuture.completedFuture(cachedDetails);
+        }
+        return super.getPlaceDetails(placeId, priority).thenApply(details -> {
+            details.ifPresent(value -> placeDetailsById.put(placeId, value));
+            return details;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        placeIdsByText.close();
+        placeIdsByCoordinates.close();
+        placeDetailsById.close();
+    }
+
+    private String round(final BigDecimal coordinate) {
+        return coordinate.setScale(coordinatePrecision, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * Serializes only the PlaceDetails fields requested from the Places API,
+     * as the full model holds types Gson can't reflect over.
+     */
+    public static String encodePlaceDetails(final Gson gson, final PlaceDetails details) {
+        final StoredPlaceDetails stored = new StoredPlaceDetails();
+        stored.placeId = details.placeId;
+        stored.name = details.name;
+        stored.formattedAddress = details.formattedAddress;
+        stored.rating = details.rating;
+        stored.types = details.types;
+        stored.photos = details.photos;
+        return gson.toJson(stored);
+    }
+
+    public static PlaceDetails decodePlaceDetails(final Gson gson, final String json) {
+        final StoredPlaceDetails stored = gson.fromJson(json, StoredPlaceDetails.class);
+        final PlaceDetails details = new PlaceDetails();
+        details.placeId = stored.placeId;
+        details.name = stored.name;
+        details.formattedAddress = stored.formattedAddress;
+        details.rating = stored.rating;
+        details.types = stored.types;
+        details.photos = stored.photos;
+        return details;
+    }
+
+    private static class StoredPlaceDetails {
+        private String placeId;
+        private String name;
+        private String formattedAddress;
+        private float rating;
+        private AddressType[] types;
+        private Photo[] photos;
+    }
+}
@@ -0,0 +1,372 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A string-keyed cache with a bounded in-memory tier in front of an
+ * append-only file which survives restarts.
+ *
+ * Each record is laid out as [expiresAt][keyLength][valueLength][key][value].
+ * On open the file is memory-mapped and scanned to rebuild an index of the
+ * latest unexpired record per key, and is compacted if most records are dead.
+ * Values are only read from disk, and decoded, when they miss the memory tier.
+ *
+ * While open, the bytes of records overwritten or found expired are counted
+ * as dead. Each time the file has grown by as much again as it held after
+ * the last check (and at least MIN_COMPACTION_BYTES), expired records are
+ * swept from the index and the file is compacted if most of it is dead.
+ */
+public class DiskBackedCache<V> implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Path file;
+    private final long ttlMillis;
+    private final Function<V, String> encoder;
+    private final Function<String, V> decoder;
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<String, Entry<V>> memoryTier;
+    // Held to read or append to the file, and exclusively to replace it when compacting
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    // Updated under this along with the file and index while holding the read lock, or under the write lock
+    private long writeOffset;
+    private long deadBytes;
+    private long checkedOffset;
+
+    public DiskBackedCache(final Path file,
+                           final long ttlMillis,
+                           final int memoryCapacity,
+                           final Function<V, String> encoder,
+                           final Function<String, V> decoder) throws IOException {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.memoryTier = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry<V>> eldest) {
+                return size() > memoryCapacity;
+            }
+        };
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = openChannel(file);
+        final long records = loadIndex();
+        if (records > 0 && index.size() < records / 2) {
+            compact();
+        }
+        deadBytes = writeOffset - index.values().stream().mapToLong(location -> location.recordBytes).sum();
+        checkedOffset = writeOffset;
+        logger.info("Loaded {} entries from {}", index.size(), file);
+    }
+
+    public Optional<V> get(final String key) {
+        final long now = System.currentTimeMillis();
+        synchronized (memoryTier) {
+            final Entry<V> entry = memoryTier.get(key);
+            if (entry != null) {
+                if (now < entry.expiresAt) {
+                    return Optional.of(entry.value);
+                }
+                memoryTier.remove(key);
+            }
+        }
+        fileLock.readLock().lock();
+        try {
+            final Location location = index.get(key);
+            if (location == null) {
+                return Optional.empty();
+            }
+            if (now >= location.expiresAt) {
+                removeDead(key, location);
+                return Optional.empty();
+            }
+            try {
+                final V value = decoder.apply(readString(location.valueOffset, location.valueLength));
+                // A put since the record was read indexes its own and then tiers its value, so the value
+                // read is only promoted if it's still the latest and hasn't been overtaken in memory
+                synchronized (memoryTier) {
+                    if (index.get(key) == location) {
+                        memoryTier.putIfAbsent(key, new Entry<>(value, location.expiresAt));
+                    }
+                }
+                return Optional.ofNullable(value);
+            }
+            catch (final Exception ex) {
+                logger.warn("Failed to read {} from {}: {}", key, file, ex.getMessage());
+                removeDead(key, location);
+                return Optional.empty();
+            }
+        }
+        finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    public void put(final String key, final V value) {
+        final long expiresAt = System.currentTimeMillis() + ttlMillis;
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = encoder.apply(value).getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length + valueBytes.length)
+                .putLong(expiresAt)
+                .putInt(keyBytes.length)
+                .putInt(valueBytes.length)
+                .put(keyBytes)
+                .put(valueBytes)
+                .flip();
+        final boolean check;
+        fileLock.readLock().lock();
+        try {
+            synchronized (this) {
+                final long recordOffset = writeOffset;
+                writeFully(channel, record, recordOffset);
+                writeOffset += record.limit();
+                final Location replaced = index.put(key, new Location(expiresAt,
+                        recordOffset + HEADER_BYTES + keyBytes.length, valueBytes.length, record.limit()));
+                if (replaced != null) {
+                    deadBytes += replaced.recordBytes;
+                }
+                check = writeOffset - checkedOffset >= Math.max(MIN_COMPACTION_BYTES, checkedOffset);
+            }
+        }
+        catch (final IOException ex) {
+            logger.warn("Failed to write {} to {}: {}", key, file, ex.getMessage());
+            return;
+        }
+        finally {
+            fileLock.readLock().unlock();
+            // Only once indexed, so that a get promoting the value it read from disk can tell it's stale
+            synchronized (memoryTier) {
+                memoryTier.put(key, new Entry<>(value, expiresAt));
+            }
+        }
+        if (check) {
+            compactIfMostlyDead();
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the size of the file in bytes, including dead records.
+     */
+    public synchronized long fileSize() {
+        return writeOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileLock.writeLock().lock();
+        try {
+            channel.force(false);
+            channel.close();
+        }
+        finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    private synchronized void removeDead(final String key, final Location location) {
+        if (index.remove(key, location)) {
+            deadBytes += location.recordBytes;
+        }
+    }
+
+    /**
+     * Sweeps expired records from the index, then compacts the file if most
+     * of it is dead.
+     */
+    private void compactIfMostlyDead() {
+        fileLock.writeLock().lock();
+        try {
+            // another put may have checked since
+            if (writeOffset - checkedOffset < Math.max(MIN_COMPACTION_BYTES, checkedOffset)) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            index.forEach((key, location) -> {
+                if (now >= location.expiresAt) {
+                    removeDead(key, location);
+                }
+            });
+            if (deadBytes * 2 > writeOffset) {
+                compact();
+            }
+            checkedOffset = writeOffset;
+        }
+        catch (final IOException ex) {
+            logger.warn("Failed to compact {}: {}", file, ex.getMessage());
+            checkedOffset = writeOffset;
+        }
+        finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scans every record in the file, returning the number found. A record
+     * cut short by a crash ends the scan and is truncated away.
+     */
+    private long loadIndex() throws IOException {
+        final long size = channel.size();
+        final long now = System.currentTimeMillis();
+        long records = 0;
+        long offset = 0;
+        if (size > 0) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (buffer.remaining() >= HEADER_BYTES) {
+                final long expiresAt = buffer.getLong();
+                final int keyLength = buffer.getInt();
+                final int valueLength = buffer.getInt();
+                if (keyLength < 0 || valueLength < 0 || buffer.remaining() < keyLength + valueLength) {
+                    break;
+                }
+                final byte[] keyBytes = new byte[keyLength];
+                buffer.get(keyBytes);
+                buffer.position(buffer.position() + valueLength);
+
+                final String key = new String(keyBytes, StandardCharsets.UTF_8);
+                if (now < expiresAt) {
+                    index.put(key, new Location(expiresAt, offset + HEADER_BYTES + keyLength, valueLength,
+                            HEADER_BYTES + keyLength + valueLength));
+                }
+                else {
+                    index.remove(key);
+                }
+                offset = buffer.position();
+                records++;
+            }
+        }
+        if (offset < size) {
+            logger.warn("Truncating {} bytes of incomplete records from {}", size - offset, file);
+            channel.truncate(offset);
+        }
+        writeOffset = offset;
+        return records;
+    }
+
+    /**
+     * Rewrites the file with only the live records. Callers must hold the
+     * write lock, or be opening the file.
+     */
+    private void compact() throws IOException {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        final Map<String, Location> compactedIndex = new LinkedHashMap<>();
+        long offset = 0;
+        try (final FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final Map.Entry<String, Location> entry : index.entrySet()) {
+                final Location location = entry.getValue();
+                final byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                final ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+                readFully(location.valueOffset, value);
+                final ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length + location.valueLength)
+                        .putLong(location.expiresAt)
+                        .putInt(keyBytes.length)
+                        .putInt(location.valueLength)
+                        .put(keyBytes)
+                        .put(value.flip())
+                        .flip();
+                writeFully(out, record, offset);
+                compactedIndex.put(entry.getKey(), new Location(location.expiresAt,
+                        offset + HEADER_BYTES + keyBytes.length, location.valueLength, record.limit()));
+                offset += record.limit();
+            }
+            out.force(false);
+        }
+        catch (final IOException ex) {
+            Files.deleteIfExists(compacted);
+            throw ex;
+        }
+        final long previousSize = writeOffset;
+        // The file is replaced before its channel is closed, so that a failed move leaves it in use
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = openChannel(file);
+        index.clear();
+        index.putAll(compactedIndex);
+        writeOffset = offset;
+        deadBytes = 0;
+        logger.info("Compacted {} from {} to {} bytes", file, previousSize, offset);
+    }
+
+    private String readString(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(position, buffer);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private void readFully(final long position, final ByteBuffer buffer) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file " + file);
+            }
+            readPosition += read;
+        }
+    }
+
+    private static void writeFully(final FileChannel out, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += out.write(buffer, writePosition);
+        }
+    }
+
+    private static FileChannel openChannel(final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Location {
+        private final long expiresAt;
+        private final long valueOffset;
+        private final int valueLength;
+        // Of the whole record, header and key included
+        private final int recordBytes;
+
+        Location(final long expiresAt, final long valueOffset, final int valueLength, final int recordBytes) {
+            this.expiresAt = expiresAt;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordBytes = recordBytes;
+        }
+    }
+}
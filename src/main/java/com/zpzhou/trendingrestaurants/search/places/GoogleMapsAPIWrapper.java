@@ -6,23 +6,30 @@ import com.google.maps.GeoApiContext;
 import com.google.maps.GeocodingApi;
 import com.google.maps.GeocodingApiRequest;
 import com.google.maps.ImageResult;
+import com.google.maps.PendingResult;
 import com.google.maps.PhotoRequest;
 import com.google.maps.PlaceDetailsRequest;
 import com.google.maps.PlacesApi;
-import com.google.maps.model.FindPlaceFromText;
+import com.google.maps.errors.OverDailyLimitException;
+import com.google.maps.errors.OverQueryLimitException;
+import com.google.maps.errors.UnknownErrorException;
 import com.google.maps.model.GeocodingResult;
 import com.google.maps.model.LatLng;
 import com.google.maps.model.PlaceDetails;
 import com.google.maps.model.PlacesSearchResult;
+import com.zpzhou.trendingrestaurants.upstream.AsyncLimiter;
+import com.zpzhou.trendingrestaurants.upstream.CircuitBreaker;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+import com.zpzhou.trendingrestaurants.upstream.UpstreamException;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RequiredArgsConstructor
 public class GoogleMapsAPIWrapper {
@@ -44,47 +51,63 @@ public class GoogleMapsAPIWrapper {
     };
 
     private final GeoApiContext context;
+    private final AsyncLimiter findPlaceLimiter;
+    private final AsyncLimiter placeDetailsLimiter;
+    private final AsyncLimiter geocodingLimiter;
+    private final AsyncLimiter photoLimiter;
 
-    public List<PlacesSearchResult> findPlacesByText(final String text) {
-        try {
-            final FindPlaceFromTextRequest request = PlacesApi
-                    .findPlaceFromText(context, text, InputType.TEXT_QUERY)
-                    .fields(FIND_PLACE_FIELD_MASKS);
-            final FindPlaceFromText response = request.await();
-            return Arrays.asList(response.candidates);
-        }
-        catch (final Exception ex) {
-            logger.warn("Failed to execute {} with input {}: {}",
-                    FindPlaceFromTextRequest.class.getSimpleName(), text, ex);
-            return Collections.EMPTY_LIST;
-        }
+    /**
+     * The lookups below complete exceptionally if the request fails, after
+     * logging it, so that callers can tell a failure from an empty result.
+     * They are made at @param priority, see AsyncLimiter, and hedged when slow.
+     */
+    public CompletableFuture<List<PlacesSearchResult>> findPlacesByText(final String text, final Priority priority) {
+        return findPlaceLimiter.submitHedged(priority, () -> execute(PlacesApi
+                        .findPlaceFromText(context, text, InputType.TEXT_QUERY)
+                        .fields(FIND_PLACE_FIELD_MASKS)))
+                .thenApply(response -> Arrays.asList(response.candidates))
+                .whenComplete((results, ex) -> {
+                    if (ex != null) {
+                        logger.warn("Failed to execute {} with input {}: {}",
+                                FindPlaceFromTextRequest.class.getSimpleName(), text, ex);
+                    }
+                });
     }
 
-    public Optional<PlaceDetails> getPlaceDetails(final String placeId) {
-        try {
-            final PlaceDetailsRequest request = PlacesApi
-                    .placeDetails(context, placeId)
-                    .fields(PLACE_DETAILS_FIELD_MASKS);
-            return Optional.ofNullable(request.await());
-        }
-        catch (final Exception ex) {
-            logger.warn("Failed to execute {} with input {}: {}",
-                    PlaceDetailsRequest.class.getSimpleName(), placeId, ex);
-            return Optional.empty();
-        }
+    public CompletableFuture<Optional<PlaceDetails>> getPlaceDetails(final String placeId,
+                                                                    final Priority priority) {
+        return placeDetailsLimiter.submitHedged(priority, () -> execute(PlacesApi
+                        .placeDetails(context, placeId)
+                        .fields(PLACE_DETAILS_FIELD_MASKS)))
+                .thenApply(Optional::ofNullable)
+                .whenComplete((details, ex) -> {
+                    if (ex != null) {
+                        logger.warn("Failed to execute {} with input {}: {}",
+                                PlaceDetailsRequest.class.getSimpleName(), placeId, ex);
+                    }
+                });
     }
 
-    public List<GeocodingResult> getReverseGeoCoding(final BigDecimal lat, final BigDecimal lng) {
-        try {
-            final GeocodingApiRequest request = GeocodingApi
-                    .reverseGeocode(context, new LatLng(lat.doubleValue(), lng.doubleValue()));
-            return Arrays.asList(request.await());
-        }
-        catch (final Exception ex) {
-            logger.warn("Failed to execute {} with coordinates {}, {}: {}",
-                    GeocodingApiRequest.class.getSimpleName(), lat, lng, ex);
-            return Collections.EMPTY_LIST;
-        }
+    public CompletableFuture<List<GeocodingResult>> getReverseGeoCoding(final BigDecimal lat,
+                                                                        final BigDecimal lng,
+                                                                        final Priority priority) {
+        return geocodingLimiter.submitHedged(priority, () -> execute(GeocodingApi
+                        .reverseGeocode(context, new LatLng(lat.doubleValue(), lng.doubleValue()))))
+                .thenApply(Arrays::asList)
+                .whenComplete((results, ex) -> {
+                    if (ex != null) {
+                        logger.warn("Failed to execute {} with coordinates {}, {}: {}",
+                                GeocodingApiRequest.class.getSimpleName(), lat, lng, ex);
+                    }
+                });
+    }
+
+    /**
+     * Whether reverse geocoding can be used, which it can't while its circuit
+     * is open.
+     */
+    public boolean isGeocodingAvailable() {
+        return geocodingLimiter.getCircuitState() != CircuitBreaker.State.OPEN;
     }
 
     public Optional<ImageResult> getPlacePhoto(final String photoReference,
@@ -101,11 +124,61 @@ public class GoogleMapsAPIWrapper {
                  request.maxWidth(400);
              }
 
-             return Optional.of(request.await());
+             return Optional.of(photoLimiter.call(Priority.current(), () -> {
+                 try {
+                     return request.await();
+                 }
+                 catch (final Exception ex) {
+                     throw translate(ex);
+                 }
+             }));
+        }
+        catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
         }
         catch (final Exception ex) {
             logger.warn("Failed to fetch photo with reference {}: {}", photoReference, ex.getMessage());
             return Optional.empty();
        }
     }
+
+    /**
+     * Sends @param request without blocking, completing the returned future
+     * from the SDK's callback. Cancelling the future cancels the request, as
+     * happens to the slower of a hedged pair.
+     */
+    private static <T> CompletableFuture<T> execute(final PendingResult<T> request) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        request.setCallback(new PendingResult.Callback<>() {
+            @Override
+            public void onResult(final T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable ex) {
+                future.completeExceptionally(translate(ex));
+            }
+        });
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                request.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Marks the failures due to Google's quotas or servers as overloaded.
+     * Retries are left to the limiters, which back off first, rather than the SDK.
+     */
+    private static Exception translate(final Throwable ex) {
+        if (ex instanceof OverQueryLimitException
+                || ex instanceof OverDailyLimitException
+                || ex instanceof UnknownErrorException) {
+            return new UpstreamException(ex.getMessage(), true, ex);
+        }
+        return ex instanceof Exception ? (Exception) ex : new UpstreamException(ex.getMessage(), false, ex);
+    }
 }
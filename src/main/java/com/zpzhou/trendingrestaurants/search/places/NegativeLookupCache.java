@@ -0,0 +1,199 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Remembers lookup keys known not to resolve to a food place, so they can be
+ * skipped without calling Google.
+ *
+ * Keys are held in a ring of Bloom filters, each covering an equal slice of
+ * the time to live. New keys go into the newest filter and the oldest is
+ * dropped once the newest has covered its slice, so a key is forgotten
+ * between (generations - 1) / generations of the ttl and the full ttl after
+ * it was put. A key that was never put is reported present with a probability
+ * of at most generations * falsePositiveRate once every filter holds
+ * expectedInsertions keys. The filters are saved to @param file on rotation
+ * and close, and reloaded on startup.
+ */
+public class NegativeLookupCache implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int GENERATIONS = 2;
+
+    private final Path file;
+    private final long generationMillis;
+    private final int bitCount;
+    private final int hashCount;
+    // Ring of filters, generations[newest] being the one written to
+    private final long[][] generations = new long[GENERATIONS][];
+    private final long[] startedAt = new long[GENERATIONS];
+    private int newest;
+
+    public NegativeLookupCache(final Path file,
+                               final long ttlMillis,
+                               final int expectedInsertions,
+                               final double falsePositiveRate) throws IOException {
+        this.file = file;
+        this.generationMillis = Math.max(1, ttlMillis / GENERATIONS);
+        // Optimal sizing for n insertions at rate p: m = -n ln p / (ln 2)^2 bits, k = m / n ln 2 hashes
+        final double bits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, Math.ceil(bits)));
+        this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) expectedInsertions * Math.log(2)));
+
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < GENERATIONS; i++) {
+            generations[i] = new long[(bitCount + 63) / 64];
+            startedAt[i] = now - (GENERATIONS - 1 - i) * generationMillis;
+        }
+        newest = GENERATIONS - 1;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        load();
+    }
+
+    public synchronized boolean mightContain(final String key) {
+        rotate();
+        final long hash = hash(key);
+        for (final long[] bits : generations) {
+            if (contains(bits, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void put(final String key) {
+        rotate();
+        final long hash = hash(key);
+        final long[] bits = generations[newest];
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            final int bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        save();
+    }
+
+    private boolean contains(final long[] bits, final long hash) {
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            final int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts a new generation, in place of the oldest, for every slice of the
+     * ttl elapsed since the newest one started.
+     */
+    private void rotate() {
+        final long elapsedSlices = (System.currentTimeMillis() - startedAt[newest]) / generationMillis;
+        final boolean rotated = elapsedSlices > 0;
+        final long base = startedAt[newest];
+        final int rotations = (int) Math.min(elapsedSlices, GENERATIONS);
+        for (int i = rotations - 1; i >= 0; i--) {
+            newest = (newest + 1) % GENERATIONS;
+            generations[newest] = new long[generations[newest].length];
+            startedAt[newest] = base + (elapsedSlices - i) * generationMillis;
+        }
+        if (rotated) {
+            try {
+                save();
+            }
+            catch (final IOException ex) {
+                logger.warn("Failed to save negative lookups to {}: {}", file, ex);
+            }
+        }
+    }
+
+    /**
+     * Saves the generations oldest first as [bitCount][hashCount] then
+     * [startedAt][words...] for each, replacing the file atomically.
+     */
+    private void save() throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final OutputStream outputStream = Files.newOutputStream(tmp);
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+            out.writeInt(bitCount);
+            out.writeInt(hashCount);
+            for (int i = 1; i <= GENERATIONS; i++) {
+                final int generation = (newest + i) % GENERATIONS;
+                out.writeLong(startedAt[generation]);
+                for (final long word : generations[generation]) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (final InputStream inputStream = Files.newInputStream(file);
+             final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream))) {
+            if (in.readInt() != bitCount || in.readInt() != hashCount) {
+                logger.info("Discarding negative lookups in {} saved with a different size or error rate", file);
+                return;
+            }
+            final long[][] loaded = new long[GENERATIONS][generations[0].length];
+            final long[] loadedStartedAt = new long[GENERATIONS];
+            for (int i = 0; i < GENERATIONS; i++) {
+                loadedStartedAt[i] = in.readLong();
+                for (int word = 0; word < loaded[i].length; word++) {
+                    loaded[i][word] = in.readLong();
+                }
+            }
+            for (int i = 0; i < GENERATIONS; i++) {
+                generations[i] = loaded[i];
+                startedAt[i] = loadedStartedAt[i];
+            }
+            newest = GENERATIONS - 1;
+            logger.info("Loaded negative lookups from {}", file);
+        }
+        catch (final IOException ex) {
+            logger.warn("Discarding unreadable negative lookups in {}: {}", file, ex.getMessage());
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the key's chars, finished with the MurmurHash3 mixer
+     * so both halves are usable as independent hashes.
+     */
+    private static long hash(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
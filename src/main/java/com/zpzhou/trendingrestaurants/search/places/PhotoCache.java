@@ -0,0 +1,232 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caches photo bytes by key, with a memory tier and a disk tier each bounded
+ * by the total size of the photos they hold and evicting least recently used.
+ *
+ * New photos go into both tiers. A photo found only on disk is served as a
+ * stream over its file, which is sent to the client without loading it into
+ * memory. The stream is opened before the photo can be evicted, so that
+ * deleting the file doesn't cut it short. Each photo is written to its own file named
+ * [keyHash].[etag].[extension], so the disk tier's index is rebuilt on
+ * startup by listing the directory.
+ */
+public class PhotoCache {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final Map<String, String> EXTENSIONS_BY_CONTENT_TYPE = Map.of(
+            "image/jpeg", "jpg",
+            "image/png", "png",
+            "image/gif", "gif",
+            "image/webp", "webp");
+    private static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+
+    private final Path directory;
+    private final long memoryCapacityBytes;
+    private final long diskCapacityBytes;
+    private final LinkedHashMap<String, MemoryEntry> memoryTier = new LinkedHashMap<>(16, 0.75f, true);
+    // Keyed by key hash, as that's all a file name holds
+    private final LinkedHashMap<String, DiskEntry> diskTier = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    public PhotoCache(final Path directory,
+                      final long memoryCapacityBytes,
+                      final long diskCapacityBytes) throws IOException {
+        this.directory = directory;
+        this.memoryCapacityBytes = memoryCapacityBytes;
+        this.diskCapacityBytes = diskCapacityBytes;
+        Files.createDirectories(directory);
+        loadDiskTier();
+    }
+
+    public Optional<CachedPhoto> get(final String key) {
+        final String keyHash = hash(key.getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            final MemoryEntry inMemory = memoryTier.get(key);
+            if (inMemory != null) {
+                return Optional.of(new CachedPhoto(new ByteArrayResource(inMemory.data),
+                        inMemory.contentType, inMemory.data.length, inMemory.etag));
+            }
+            final DiskEntry onDisk = diskTier.get(keyHash);
+            if (onDisk != null) {
+                // Opened while the entry can't be evicted, so its file is open before it can be deleted
+                try {
+                    return Optional.of(new CachedPhoto(new InputStreamResource(Files.newInputStream(onDisk.file)),
+                            onDisk.contentType, onDisk.length, onDisk.etag));
+                }
+                catch (final IOException ex) {
+                    logger.warn("Failed to read photo {} from {}: {}", key, onDisk.file, ex.getMessage());
+                    diskTier.remove(keyHash);
+                    diskBytes -= onDisk.length;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    public CachedPhoto put(final String key, final byte[] data, final String contentType) {
+        final String type = contentType == null ? DEFAULT_CONTENT_TYPE : contentType;
+        final String keyHash = hash(key.getBytes(StandardCharsets.UTF_8));
+        final String etag = hash(data).substring(0, 16);
+        final String quotedEtag = "\"" + etag + "\"";
+        final Path file = directory.resolve(String.format("%s.%s.%s", keyHash, etag,
+                EXTENSIONS_BY_CONTENT_TYPE.getOrDefault(type, "jpg")));
+
+        final List<Path> evictedFiles = new ArrayList<>();
+        try {
+            final Path tmp = Files.createTempFile(directory, keyHash, ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final IOException ex) {
+            logger.warn("Failed to write photo {} to {}: {}", key, directory, ex.getMessage());
+        }
+        synchronized (this) {
+            putInMemory(key, new MemoryEntry(data, type, quotedEtag));
+            if (Files.exists(file)) {
+                final DiskEntry previous = diskTier.put(keyHash, new DiskEntry(file, type, data.length, quotedEtag));
+                diskBytes += data.length;
+                if (previous != null) {
+                    diskBytes -= previous.length;
+                    if (!previous.file.equals(file)) {
+                        evictedFiles.add(previous.file);
+                    }
+                }
+                evictedFiles.addAll(evictFromDisk());
+            }
+        }
+        // Streams already opened over an evicted file keep reading it once deleted
+        for (final Path evicted : evictedFiles) {
+            try {
+                Files.deleteIfExists(evicted);
+            }
+            catch (final IOException ex) {
+                logger.warn("Failed to delete evicted photo {}: {}", evicted, ex.getMessage());
+            }
+        }
+        return new CachedPhoto(new ByteArrayResource(data), type, data.length, quotedEtag);
+    }
+
+    private void putInMemory(final String key, final MemoryEntry entry) {
+        if (entry.data.length > memoryCapacityBytes) {
+            return;
+        }
+        final MemoryEntry previous = memoryTier.put(key, entry);
+        memoryBytes += entry.data.length - (previous == null ? 0 : previous.data.length);
+        final var iterator = memoryTier.values().iterator();
+        while (memoryBytes > memoryCapacityBytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    private List<Path> evictFromDisk() {
+        final List<Path> evicted = new ArrayList<>();
+        final var iterator = diskTier.values().iterator();
+        while (diskBytes > diskCapacityBytes && iterator.hasNext()) {
+            final DiskEntry entry = iterator.next();
+            diskBytes -= entry.length;
+            evicted.add(entry.file);
+            iterator.remove();
+        }
+        return evicted;
+    }
+
+    /**
+     * Indexes the photo files in the directory, oldest first so that they're
+     * evicted first, and removes temporary files left behind by a crash.
+     */
+    private void loadDiskTier() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(file -> {
+            try {
+                return Files.getLastModifiedTime(file).toMillis();
+            }
+            catch (final IOException ex) {
+                return 0L;
+            }
+        }));
+        for (final Path file : files) {
+            final String[] parts = file.getFileName().toString().split("\\.");
+            if (parts.length != 3) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            final String contentType = EXTENSIONS_BY_CONTENT_TYPE.entrySet().stream()
+                    .filter(entry -> entry.getValue().equals(parts[2]))
+                    .map(Map.Entry::getKey)
+                    .findFirst()
+                    .orElse(DEFAULT_CONTENT_TYPE);
+            final long length = Files.size(file);
+            diskTier.put(parts[0], new DiskEntry(file, contentType, length, "\"" + parts[1] + "\""));
+            diskBytes += length;
+        }
+        evictFromDisk().forEach(file -> file.toFile().delete());
+        logger.info("Loaded {} photos ({} bytes) from {}", diskTier.size(), diskBytes, directory);
+    }
+
+    private static String hash(final byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class MemoryEntry {
+        private final byte[] data;
+        private final String contentType;
+        private final String etag;
+
+        private MemoryEntry(final byte[] data, final String contentType, final String etag) {
+            this.data = data;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+    }
+
+    private static class DiskEntry {
+        private final Path file;
+        private final String contentType;
+        private final long length;
+        private final String etag;
+
+        private DiskEntry(final Path file, final String contentType, final long length, final String etag) {
+            this.file = file;
+            this.contentType = contentType;
+            this.length = length;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import lombok.Data;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Scales photos down to fit within a maximum width and height, preserving
+ * their aspect ratio, on @param executor so that decoding and encoding
+ * images never runs on more threads than it has.
+ *
+ * PNGs stay PNGs and JPEGs stay JPEGs. Photos in any other format, such as
+ * GIFs that may be animated or WebPs that may have an alpha channel, are
+ * served as they are rather than losing either by being re-encoded.
+ */
+public class PhotoResizer {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final Set<String> RESIZABLE_CONTENT_TYPES = Set.of("image/jpeg", "image/png");
+
+    private final ExecutorService executor;
+
+    public PhotoResizer(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Resizes @param photo to fit within @param maxWidth by @param maxHeight,
+     * where 0 leaves that dimension unbounded. A photo that already fits, or
+     * is in a format that isn't resized or can't be decoded, is returned as it is.
+     */
+    public CompletableFuture<ResizedPhoto> resize(final CachedPhoto photo, final int maxWidth, final int maxHeight) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (final InputStream inputStream = photo.getResource().getInputStream()) {
+                final byte[] data = inputStream.readAllBytes();
+                if (!RESIZABLE_CONTENT_TYPES.contains(photo.getContentType())) {
+                    logger.debug("Not resizing photo of type {}", photo.getContentType());
+                    return new ResizedPhoto(data, photo.getContentType());
+                }
+                final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+                if (image == null) {
+                    logger.debug("Not resizing photo of undecodable type {}", photo.getContentType());
+                    return new ResizedPhoto(data, photo.getContentType());
+                }
+                final double scale = Math.min(
+                        maxWidth > 0 ? (double) maxWidth / image.getWidth() : 1,
+                        maxHeight > 0 ? (double) maxHeight / image.getHeight() : 1);
+                if (scale >= 1) {
+                    return new ResizedPhoto(data, photo.getContentType());
+                }
+                final int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+                final int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+                final boolean png = "image/png".equals(photo.getContentType());
+                final BufferedImage scaled = scale(image, width, height,
+                        png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                return png
+                        ? new ResizedPhoto(encodePng(scaled), "image/png")
+                        : new ResizedPhoto(encodeJpeg(scaled), "image/jpeg");
+            }
+            catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Halves the image with bilinear filtering until it's within twice the
+     * target size before the final step, as a single bilinear step skips
+     * source pixels when shrinking by more than half and looks jagged.
+     */
+    private static BufferedImage scale(final BufferedImage image, final int width, final int height, final int type) {
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            final BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            final Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            }
+            finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static byte[] encodePng(final BufferedImage image) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] encodeJpeg(final BufferedImage image) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (final ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Data
+    public static class ResizedPhoto {
+        private final byte[] data;
+        private final String contentType;
+    }
+}
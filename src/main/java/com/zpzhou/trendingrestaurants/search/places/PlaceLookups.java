@@ -0,0 +1,126 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import com.google.maps.model.AddressType;
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.upstream.CallRejectedException;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The places looked up while resolving a single request's tweets, keyed by
+ * rounded coordinates or normalized business name, so that each distinct
+ * mention is resolved against Google once however many tweets share it.
+ * Only places of a food business type are returned.
+ *
+ * Keys that resolved to nothing, or to a place of another type, are recorded
+ * in @param negatives and aren't looked up again while it remembers them.
+ * Lookups are made at the @param priority of the request.
+ *
+ * A failed lookup, whether turned away, out of retries or timed out,
+ * completes exceptionally for every tweet sharing its key and isn't
+ * recorded, as those tweets may have missed their place. So does a lookup
+ * by coordinates while the circuit to reverse geocoding is open.
+ */
+public class PlaceLookups {
+
+    private static Set<AddressType> BUSINESS_TYPES = EnumSet.of(
+            AddressType.CAFE,
+            AddressType.BAKERY,
+            AddressType.RESTAURANT,
+            AddressType.BAR,
+            AddressType.FOOD,
+            AddressType.GROCERY_OR_SUPERMARKET);
+
+    private final GoogleMapsAPIWrapper mapsAPIWrapper;
+    private final NegativeLookupCache negatives;
+    private final int coordinatePrecision;
+    private final Priority priority;
+    private final Map<String, CompletableFuture<Optional<PlaceDetails>>> byCoordinates = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Optional<PlaceDetails>>> byBusinessName = new ConcurrentHashMap<>();
+
+    public PlaceLookups(final GoogleMapsAPIWrapper mapsAPIWrapper,
+                        final NegativeLookupCache negatives,
+                        final int coordinatePrecision,
+                        final Priority priority) {
+        this.mapsAPIWrapper = mapsAPIWrapper;
+        this.negatives = negatives;
+        this.coordinatePrecision = coordinatePrecision;
+        this.priority = priority;
+    }
+
+    public CompletableFuture<Optional<PlaceDetails>> findByLatLng(final double lat, final double lng) {
+        if (!mapsAPIWrapper.isGeocodingAvailable()) {
+            return CompletableFuture.failedFuture(new CallRejectedException("Reverse geocoding is unavailable"));
+        }
+        final BigDecimal roundedLat = BigDecimal.valueOf(lat).setScale(coordinatePrecision, RoundingMode.HALF_UP);
+        final BigDecimal roundedLng = BigDecimal.valueOf(lng).setScale(coordinatePrecision, RoundingMode.HALF_UP);
+        final String key = String.format("%s,%s", roundedLat.toPlainString(), roundedLng.toPlainString());
+        return byCoordinates.computeIfAbsent(key, k -> lookup("geo:" + key, () -> mapsAPIWrapper
+                .getReverseGeoCoding(roundedLat, roundedLng, priority)
+                .thenCompose(results -> getDetailsOfFirst(results.stream()
+                        .findFirst()
+                        .map(result -> result.placeId)))));
+    }
+
+    public CompletableFuture<Optional<PlaceDetails>> findByBusinessName(final String business) {
+        final String key = business.trim().toLowerCase(Locale.ROOT);
+        return byBusinessName.computeIfAbsent(key, k -> lookup("name:" + key, () -> mapsAPIWrapper
+                .findPlacesByText(business, priority)
+                .thenCompose(results -> getDetailsOfFirst(results.stream()
+                        .findFirst()
+                        .map(result -> result.placeId)))));
+    }
+
+    /**
+     * Returns the number of distinct coordinates and business names looked up.
+     */
+    public int size() {
+        return byCoordinates.size() + byBusinessName.size();
+    }
+
+    private CompletableFuture<Optional<PlaceDetails>> lookup(
+            final String negativeKey, final Supplier<CompletableFuture<Optional<PlaceDetails>>> resolve) {
+        if (negatives.mightContain(negativeKey)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return resolve.get()
+                .whenComplete((details, ex) -> {
+                    if (ex == null && details.isEmpty()) {
+                        negatives.put(negativeKey);
+                    }
+                });
+    }
+
+    /**
+     * Completes empty if there is no @param placeId or it isn't a food business,
+     * and exceptionally if its details couldn't be fetched.
+     */
+    private CompletableFuture<Optional<PlaceDetails>> getDetailsOfFirst(final Optional<String> placeId) {
+        return placeId
+                .map(id -> mapsAPIWrapper.getPlaceDetails(id, priority)
+                        .thenApply(details -> {
+                            if (details.isEmpty()) {
+                                throw new CompletionException(new IllegalStateException("No details for " + id));
+                            }
+                            return details.filter(PlaceLookups::isPlaceOfDesiredType);
+                        }))
+                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()));
+    }
+
+    private static boolean isPlaceOfDesiredType(final PlaceDetails details) {
+        return Arrays.asList(details.types).stream()
+                .anyMatch(BUSINESS_TYPES::contains);
+    }
+}
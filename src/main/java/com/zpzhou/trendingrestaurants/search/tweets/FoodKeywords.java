@@ -0,0 +1,96 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The food keywords searched for and matched against tweets, one per line.
+ *
+ * They are read from @param file if one is given, and can then be reloaded
+ * while running by editing it, or from the bundled static/food_keywords.txt
+ * otherwise. Each reload compiles a new KeywordMatcher and swaps it in, so
+ * requests already running keep the one they started with.
+ */
+public class FoodKeywords {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String BUNDLED_KEYWORDS = "static/food_keywords.txt";
+
+    private final Optional<Path> file;
+    private volatile KeywordMatcher matcher;
+    private volatile FileTime lastModified;
+
+    public FoodKeywords(final Optional<Path> file) throws IOException {
+        this.file = file;
+        reload();
+    }
+
+    public KeywordMatcher getMatcher() {
+        return matcher;
+    }
+
+    public boolean isReloadable() {
+        return file.isPresent();
+    }
+
+    /**
+     * Reloads the keywords if their file has changed since they were last
+     * loaded, keeping the current ones if it can't be read.
+     */
+    public void reloadIfModified() {
+        if (file.isEmpty()) {
+            return;
+        }
+        try {
+            if (!Files.getLastModifiedTime(file.get()).equals(lastModified)) {
+                reload();
+            }
+        }
+        catch (final IOException | RuntimeException ex) {
+            logger.warn("Failed to reload food keywords from {}: {}", file.get(), ex);
+        }
+    }
+
+    private synchronized void reload() throws IOException {
+        final Set<String> keywords;
+        if (file.isPresent()) {
+            final FileTime modified = Files.getLastModifiedTime(file.get());
+            try (final InputStream inputStream = Files.newInputStream(file.get())) {
+                keywords = read(inputStream);
+            }
+            lastModified = modified;
+        }
+        else {
+            try (final InputStream inputStream = new ClassPathResource(BUNDLED_KEYWORDS).getInputStream()) {
+                keywords = read(inputStream);
+            }
+        }
+        if (keywords.isEmpty()) {
+            throw new IOException("No food keywords found");
+        }
+        matcher = KeywordMatcher.compile(keywords);
+        logger.info("Food keywords: {}", matcher.getKeywords());
+    }
+
+    private static Set<String> read(final InputStream inputStream) {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        return reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,204 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds every occurrence of a fixed set of keywords in a single pass over a
+ * text, case insensitively.
+ *
+ * The keywords are compiled into an Aho-Corasick automaton whose failure
+ * links are folded into a dense transition table over ASCII, so matching
+ * costs one array lookup per character however many keywords there are.
+ * Any other character returns the automaton to its initial state.
+ */
+public class KeywordMatcher {
+
+    private static final int ALPHABET_SIZE = 128;
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final Set<String> keywords;
+    private final String version;
+    private final int[][] transitions;
+    // Lengths of the keywords ending at each state, including through failure links
+    private final int[][] matchLengths;
+
+    private KeywordMatcher(final Set<String> keywords, final int[][] transitions, final int[][] matchLengths) {
+        this.keywords = keywords;
+        this.version = digest(keywords);
+        this.transitions = transitions;
+        this.matchLengths = matchLengths;
+    }
+
+    public static KeywordMatcher compile(final Collection<String> keywords) {
+        final Set<String> normalized = new TreeSet<>();
+        for (final String keyword : keywords) {
+            final String trimmed = keyword.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty() && trimmed.chars().allMatch(c -> c < ALPHABET_SIZE)) {
+                normalized.add(trimmed);
+            }
+        }
+
+        // Build the trie, with -1 marking a missing child
+        final List<int[]> children = new ArrayList<>();
+        final List<int[]> outputs = new ArrayList<>();
+        children.add(newState());
+        outputs.add(NO_MATCHES);
+        for (final String keyword : normalized) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                final int c = keyword.charAt(i);
+                if (children.get(state)[c] == -1) {
+                    children.get(state)[c] = children.size();
+                    children.add(newState());
+                    outputs.add(NO_MATCHES);
+                }
+                state = children.get(state)[c];
+            }
+            outputs.set(state, new int[] {keyword.length()});
+        }
+
+        // Breadth first, so a state's failure target is complete before the state itself
+        final int[][] transitions = children.toArray(new int[0][]);
+        final int[][] matchLengths = outputs.toArray(new int[0][]);
+        final int[] failures = new int[transitions.length];
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            if (transitions[0][c] == -1) {
+                transitions[0][c] = 0;
+            }
+            else {
+                queue.add(transitions[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            matchLengths[state] = concat(matchLengths[state], matchLengths[failures[state]]);
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                final int child = transitions[state][c];
+                if (child == -1) {
+                    transitions[state][c] = transitions[failures[state]][c];
+                }
+                else {
+                    failures[child] = transitions[failures[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+        return new KeywordMatcher(Collections.unmodifiableSet(normalized), transitions, matchLengths);
+    }
+
+    public Set<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * Identifies the set of keywords matched, the same for the same keywords across restarts.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Counts the keywords occurring in @param text as whole words.
+     */
+    public int countWords(final CharSequence text) {
+        return count(text, true);
+    }
+
+    /**
+     * Counts the keywords occurring anywhere in @param text, eg. within compound hashtags.
+     */
+    public int countOccurrences(final CharSequence text) {
+        return count(text, false);
+    }
+
+    /**
+     * Scores how much a tweet is about the keywords: one point per whole word
+     * in its @param text, and one per keyword within each of its @param hashTags.
+     * A hashtag also in the text only scores the keywords within it that aren't
+     * whole words of it, as those were already scored as words of the text,
+     * eg. #pizza scores once and #pizzanight once, but #pizza_night twice.
+     */
+    public int score(final String text, final List<String> hashTags) {
+        int score = text == null ? 0 : countWords(text);
+        if (hashTags != null) {
+            final String lowerCaseText = text == null ? "" : text.toLowerCase(Locale.ROOT);
+            for (final String hashTag : hashTags) {
+                score += countOccurrences(hashTag);
+                if (lowerCaseText.contains("#" + hashTag.toLowerCase(Locale.ROOT))) {
+                    score -= countWords(hashTag);
+                }
+            }
+        }
+        return score;
+    }
+
+    private int count(final CharSequence text, final boolean wholeWords) {
+        int count = 0;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = Character.toLowerCase(text.charAt(i));
+            state = c < ALPHABET_SIZE ? transitions[state][c] : 0;
+            for (final int length : matchLengths[state]) {
+                if (!wholeWords || isWord(text, i - length + 1, i + 1)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isWord(final CharSequence text, final int start, final int end) {
+        return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+                && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+    }
+
+    /**
+     * Hashes the sorted @param keywords, each prefixed with its length so that
+     * no two sets are encoded alike.
+     */
+    private static String digest(final Set<String> keywords) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final String keyword : keywords) {
+                digest.update((keyword.length() + ":" + keyword).getBytes(StandardCharsets.UTF_8));
+            }
+            final byte[] hash = digest.digest();
+            final StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        }
+        catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is unavailable", ex);
+        }
+    }
+
+    private static int[] newState() {
+        final int[] state = new int[ALPHABET_SIZE];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int[] concat(final int[] a, final int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        final int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,14 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import com.zpzhou.trendingrestaurants.model.Tweet;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface PageConsumer {
+
+    /**
+     * May block to apply backpressure to the search paging through results.
+     */
+    void accept(List<Tweet> page) throws InterruptedException;
+}
@@ -0,0 +1,14 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import lombok.Data;
+
+/**
+ * Limits how many tweets, and for how long, a search pages through results.
+ */
+@Data
+public class SearchBudget {
+    public static final SearchBudget UNLIMITED = new SearchBudget(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maxTweets;
+    private final long maxDurationMillis;
+}
@@ -0,0 +1,10 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import lombok.Data;
+
+@Data
+public class SearchSummary {
+    private final int tweetsFetched;
+    /** Whether every page of results was read, rather than stopping at the budget */
+    private final boolean exhausted;
+}
@@ -1,8 +1,11 @@
 package com.zpzhou.trendingrestaurants.search.tweets;
 
 import com.google.gson.Gson;
-import com.zpzhou.trendingrestaurants.model.TimeFrame;
-import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.google.gson.stream.JsonReader;
+import com.zpzhou.trendingrestaurants.metrics.PipelineMetrics;
+import com.zpzhou.trendingrestaurants.upstream.AsyncLimiter;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+import com.zpzhou.trendingrestaurants.upstream.UpstreamException;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -20,17 +23,15 @@ import org.apache.logging.log4j.Logger;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 public class TwitterSearchAPIClient {
 
     private static final Logger logger = LogManager.getLogger();
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int TOO_MANY_REQUESTS = 429;
 
     @Data
     @Builder
@@ -62,34 +63,66 @@ public class TwitterSearchAPIClient {
     private final String bearerAccessToken;
     private final String searchURL;
     private final Gson gson;
-
-    public List<Tweet> doSearch(final String query, final TimeFrame timeFrame) {
-        final RequestBodyContent initialRequestBody = getInitialRequestBodyContent(query, timeFrame);
-        final Request request = buildRequest(initialRequestBody);
-
-        final TwitterSearchQueryResponse response = sendRequest(request);
-        final List<Tweet> tweets = response.getTweets();
-
-        Optional<String> next = response.getNext();
-        while (next.isPresent()) {
+    private final AsyncLimiter searchLimiter;
+    private final PipelineMetrics metrics;
+
+    /**
+     * Follows the pages of results for @param query between @param from and
+     * @param to, handing each page to @param onPage as soon as it arrives so
+     * callers can process it while the next page is requested. Stops early
+     * once @param budget is used up, or at a truncated page, neither of which
+     * exhausts the results. Pages are returned newest first.
+     */
+    public SearchSummary search(final String query,
+                                final DateTime from,
+                                final DateTime to,
+                                final SearchBudget budget,
+                                final PageConsumer onPage) throws InterruptedException {
+
+        final long startMillis = System.currentTimeMillis();
+        final RequestBodyContent initialRequestBody = getInitialRequestBodyContent(query, from, to);
+
+        TwitterSearchQueryResponse response = sendRequest(buildRequest(initialRequestBody));
+        int fetched = response.getTweets().size();
+        onPage.accept(response.getTweets());
+
+        while (!response.isTruncated() && response.getNext().isPresent()) {
+            if (fetched >= budget.getMaxTweets()
+                    || System.currentTimeMillis() - startMillis >= budget.getMaxDurationMillis()) {
+                logger.info("Search budget exhausted after {} tweets in {}ms",
+                        fetched, System.currentTimeMillis() - startMillis);
+                return new SearchSummary(fetched, false);
+            }
             final RequestBodyContent requestBody = new PaginatedRequestBodyContent(
-                    initialRequestBody, next.get());
-            final Request nextRequest = buildRequest(requestBody);
-            final TwitterSearchQueryResponse nextResponse = sendRequest(nextRequest);
-            tweets.addAll(nextResponse.getTweets());
-            next = nextResponse.getNext();
+                    initialRequestBody, response.getNext().get());
+            response = sendRequest(buildRequest(requestBody));
+            fetched += response.getTweets().size();
+            onPage.accept(response.getTweets());
         }
-        return tweets;
+        if (response.isTruncated()) {
+            // The tweets read are the newest of the page, but whatever followed them may be missing
+            logger.warn("Search stopped at a truncated page after {} tweets", fetched);
+            return new SearchSummary(fetched, false);
+        }
+        return new SearchSummary(fetched, true);
+    }
+
+    /**
+     * Clock drift occurs between our application server and Twitter's servers.
+     * If we're ahead of Twitter, they will complain about our specified
+     * toDate being ahead of their current time.
+     */
+    public static DateTime getLatestSearchableTime() {
+        return DateTime.now(DateTimeZone.UTC).minusSeconds(30);
     }
 
-    private RequestBodyContent getInitialRequestBodyContent(final String query, final TimeFrame timeFrame) {
+    private RequestBodyContent getInitialRequestBodyContent(final String query,
+                                                            final DateTime from,
+                                                            final DateTime to) {
         final RequestBodyContent requestBodyContent = RequestBodyContent.builder()
                 .query(query)
-                .fromDate(getFormattedValue(timeFrame.getUTCDateTime()))
-                // Clock drift occurs between our application server and Twitter's servers.
-                // If we're ahead of Twitter, they will complain about our specified
-                // toDate being ahead of their current time.
-                .toDate(getFormattedValue(DateTime.now(DateTimeZone.UTC).minusSeconds(30)))
+                .fromDate(getFormattedValue(from))
+                .toDate(getFormattedValue(to))
                 .build();
         return requestBodyContent;
     }
@@ -107,18 +140,60 @@ public class TwitterSearchAPIClient {
                 .build();
     }
 
-    private TwitterSearchQueryResponse sendRequest(final Request request) {
-        try (final Response response = httpClient.newCall(request).execute()) {
-            final Reader json = new BufferedReader(response.body().charStream());
-            return gson.fromJson(json, TwitterSearchQueryResponse.class);
+    /**
+     * Sends @param request through the search limiter, at the priority of the
+     * calling thread. Rejections and server errors fail the search with an
+     * UpstreamException rather than being read as an empty page.
+     */
+    private TwitterSearchQueryResponse sendRequest(final Request request) throws InterruptedException {
+        try {
+            return searchLimiter.call(Priority.current(), () -> {
+                try (final Response response = httpClient.newCall(request).execute()) {
+                    observeRateLimit(response);
+                    if (!response.isSuccessful()) {
+                        throw new UpstreamException(String.format("Search request failed with status %d",
+                                response.code()), response.code() == TOO_MANY_REQUESTS || response.code() >= 500);
+                    }
+                    // The body is parsed as it streams in, see TwitterSearchResponseAdapter. Reading from
+                    // a JsonReader leaves a truncated body to the adapter, which marks the page truncated.
+                    final JsonReader json = new JsonReader(response.body().charStream());
+                    return metrics.getSearchParse().recordCallable(
+                            () -> gson.fromJson(json, TwitterSearchQueryResponse.class));
+                }
+            });
         }
-        catch (final IOException ex) {
+        catch (final InterruptedException | UpstreamException ex) {
+            logger.warn("Failed to send search request {}", ex.getMessage());
+            throw ex;
+        }
+        catch (final Exception ex) {
             logger.warn("Failed to send search request {}", ex);
-            throw new RuntimeException(ex.getCause());
+            throw new UpstreamException(ex.getMessage(), UpstreamException.isOverload(ex), ex);
+        }
+    }
+
+    /**
+     * Passes on the requests Twitter reports are left in the current rate
+     * limit window, and when it resets, to the search limiter.
+     */
+    private void observeRateLimit(final Response response) {
+        final String remaining = response.header("x-rate-limit-remaining");
+        final String reset = response.header("x-rate-limit-reset");
+        try {
+            if (remaining != null && reset != null) {
+                searchLimiter.limitTo(Integer.parseInt(remaining), TimeUnit.SECONDS.toMillis(Long.parseLong(reset)));
+            }
+            else if (response.code() == TOO_MANY_REQUESTS && response.header("retry-after") != null) {
+                searchLimiter.pauseUntil(System.currentTimeMillis()
+                        + TimeUnit.SECONDS.toMillis(Long.parseLong(response.header("retry-after"))));
+            }
+        }
+        catch (final NumberFormatException ex) {
+            logger.warn("Ignoring malformed rate limit headers: {}", ex.getMessage());
         }
     }
 
     private String getFormattedValue(final DateTime dateTime) {
-        return dateTime.toString("yyyyMMddHHmm");
+        return dateTime.withZone(DateTimeZone.UTC).toString("yyyyMMddHHmm");
     }
 }
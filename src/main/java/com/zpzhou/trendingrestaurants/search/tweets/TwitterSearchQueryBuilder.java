@@ -1,6 +1,7 @@
 package com.zpzhou.trendingrestaurants.search.tweets;
 
 import java.util.Collection;
+import java.util.stream.Collectors;
 
 public class TwitterSearchQueryBuilder {
 
@@ -34,4 +35,15 @@ public class TwitterSearchQueryBuilder {
         query.append(String.format("place:\"%s\" ", place));
         return this;
     }
+
+    public TwitterSearchQueryBuilder withAnyPlace(final Collection<String> places) {
+        if (places.size() == 1) {
+            return withPlace(places.iterator().next());
+        }
+        final String clauses = places.stream()
+                .map(place -> String.format("place:\"%s\"", place))
+                .collect(Collectors.joining(" OR "));
+        query.append(String.format("(%s) ", clauses));
+        return this;
+    }
 }
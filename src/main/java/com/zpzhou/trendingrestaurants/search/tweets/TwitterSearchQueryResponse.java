@@ -6,8 +6,14 @@ import lombok.Data;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * A page of search results. A truncated page is one cut off before its end,
+ * holding only the tweets read up to there, so whether there were more
+ * pages is unknown.
+ */
 @Data
 public class TwitterSearchQueryResponse {
     private final List<Tweet> tweets;
     private final Optional<String> next;
+    private final boolean truncated;
 }
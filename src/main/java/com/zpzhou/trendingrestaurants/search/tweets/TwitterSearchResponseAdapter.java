@@ -0,0 +1,351 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.zpzhou.trendingrestaurants.model.LatLng;
+import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.zpzhou.trendingrestaurants.model.TwitterPlace;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads a page of search results token by token, building Tweets directly
+ * and skipping every field we don't use, rather than materializing the
+ * whole page as a JsonObject tree first.
+ *
+ * A tweet missing a required field, or holding one of the wrong type, is
+ * skipped on its own. A page that isn't well-formed JSON, such as a body cut
+ * off mid-stream, keeps the tweets read before the error but is marked
+ * truncated, as the rest of the page and whether more pages follow are
+ * unknown. Responses are written back in the same shape, with only the
+ * fields read.
+ */
+public class TwitterSearchResponseAdapter extends TypeAdapter<TwitterSearchQueryResponse> {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    @Override
+    public TwitterSearchQueryResponse read(final JsonReader in) throws IOException {
+        final List<Tweet> tweets = new ArrayList<>();
+        Optional<String> next = Optional.empty();
+        try {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "results":
+                        readTweets(in, tweets);
+                        break;
+                    case "next":
+                        next = Optional.ofNullable(readString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        catch (final IOException | IllegalStateException ex) {
+            logger.warn("Failed to parse twitter API response at {} after {} tweets: {}",
+                    in.getPath(), tweets.size(), ex.getMessage());
+            return new TwitterSearchQueryResponse(tweets, Optional.empty(), true);
+        }
+        return new TwitterSearchQueryResponse(tweets, next, false);
+    }
+
+    @Override
+    public void write(final JsonWriter out, final TwitterSearchQueryResponse response) throws IOException {
+        out.beginObject();
+        out.name("results").beginArray();
+        for (final Tweet tweet : response.getTweets()) {
+            writeTweet(out, tweet);
+        }
+        out.endArray();
+        if (response.getNext().isPresent()) {
+            out.name("next").value(response.getNext().get());
+        }
+        out.endObject();
+    }
+
+    private void writeTweet(final JsonWriter out, final Tweet tweet) throws IOException {
+        out.beginObject();
+        out.name("text").value(tweet.getText());
+        out.name("retweet_count").value(tweet.getRetweetCount());
+        out.name("favorite_count").value(tweet.getFavoriteCount());
+        out.name("created_at").value(tweet.getCreatedAt());
+        out.name("user").beginObject()
+                .name("screen_name").value(tweet.getTwitterHandle())
+                .endObject();
+        out.name("entities").beginObject()
+                .name("hashtags").beginArray();
+        for (final String hashTag : tweet.getHashTags()) {
+            out.beginObject()
+                    .name("text").value(hashTag)
+                    .endObject();
+        }
+        out.endArray().endObject();
+        if (tweet.getLatLng().isPresent()) {
+            out.name("geo").beginObject()
+                    .name("coordinates").beginArray()
+                    .value(tweet.getLatLng().get().getLat())
+                    .value(tweet.getLatLng().get().getLng())
+                    .endArray()
+                    .endObject();
+        }
+        if (tweet.getPlace().isPresent()) {
+            final TwitterPlace place = tweet.getPlace().get();
+            out.name("place").beginObject()
+                    .name("id").value(place.getId())
+                    .name("name").value(place.getName())
+                    .name("full_name").value(place.getFullName())
+                    .endObject();
+        }
+        out.endObject();
+    }
+
+    private void readTweets(final JsonReader in, final List<Tweet> tweets) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            logger.warn("Expected an array of results at {}", in.getPath());
+            in.skipValue();
+            return;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            final String path = in.getPath();
+            final Optional<Tweet> tweet = readTweet(in);
+            if (tweet.isPresent()) {
+                tweets.add(tweet.get());
+            }
+            else {
+                logger.warn("Skipping malformed tweet at {}", path);
+            }
+        }
+        in.endArray();
+    }
+
+    /**
+     * Consumes a single result, returning empty if it lacks any field a Tweet requires.
+     */
+    private Optional<Tweet> readTweet(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return Optional.empty();
+        }
+        String text = null;
+        Integer retweetCount = null;
+        Integer favoriteCount = null;
+        String createdAt = null;
+        String twitterHandle = null;
+        List<String> hashTags = Collections.emptyList();
+        Optional<LatLng> latLng = Optional.empty();
+        Optional<TwitterPlace> place = Optional.empty();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "text":
+                    text = readString(in);
+                    break;
+                case "retweet_count":
+                    retweetCount = readInt(in);
+                    break;
+                case "favorite_count":
+                    favoriteCount = readInt(in);
+                    break;
+                case "created_at":
+                    createdAt = readString(in);
+                    break;
+                case "user":
+                    twitterHandle = readScreenName(in);
+                    break;
+                case "entities":
+                    hashTags = readHashTags(in);
+                    break;
+                case "geo":
+                    latLng = readGeo(in);
+                    break;
+                case "place":
+                    place = readPlace(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (text == null || retweetCount == null || favoriteCount == null
+                || createdAt == null || twitterHandle == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Tweet.builder()
+                .text(text)
+                .retweetCount(retweetCount)
+                .favoriteCount(favoriteCount)
+                .createdAt(createdAt)
+                .twitterHandle(twitterHandle)
+                .hashTags(hashTags)
+                .latLng(latLng)
+                .place(place)
+                .build());
+    }
+
+    private String readScreenName(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        String screenName = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("screen_name")) {
+                screenName = readString(in);
+            }
+            else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return screenName;
+    }
+
+    private List<String> readHashTags(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return Collections.emptyList();
+        }
+        final List<String> hashTags = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("hashtags") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    final String hashTag = readHashTagText(in);
+                    if (hashTag != null) {
+                        hashTags.add(hashTag);
+                    }
+                }
+                in.endArray();
+            }
+            else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return hashTags;
+    }
+
+    private String readHashTagText(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        String text = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("text")) {
+                text = readString(in);
+            }
+            else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return text;
+    }
+
+    private Optional<TwitterPlace> readPlace(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return Optional.empty();
+        }
+        String id = null;
+        String name = null;
+        String fullName = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = readString(in);
+                    break;
+                case "name":
+                    name = readString(in);
+                    break;
+                case "full_name":
+                    fullName = readString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return id == null ? Optional.empty() : Optional.of(new TwitterPlace(id, name, fullName));
+    }
+
+    /**
+     * Reads the deprecated geo field, whose coordinates are ordered [lat, lng].
+     */
+    private Optional<LatLng> readGeo(final JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return Optional.empty();
+        }
+        final List<BigDecimal> coordinates = new ArrayList<>(2);
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("coordinates") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    final BigDecimal coordinate = readBigDecimal(in);
+                    if (coordinate != null) {
+                        coordinates.add(coordinate);
+                    }
+                }
+                in.endArray();
+            }
+            else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return coordinates.size() == 2
+                ? Optional.of(new LatLng(coordinates.get(0), coordinates.get(1)))
+                : Optional.empty();
+    }
+
+    private static String readString(final JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return in.nextString();
+        }
+        in.skipValue();
+        return null;
+    }
+
+    private static Integer readInt(final JsonReader in) throws IOException {
+        final String value = readString(in);
+        try {
+            return value == null ? null : Integer.valueOf(value);
+        }
+        catch (final NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static BigDecimal readBigDecimal(final JsonReader in) throws IOException {
+        final String value = readString(in);
+        try {
+            return value == null ? null : new BigDecimal(value);
+        }
+        catch (final NumberFormatException ex) {
+            return null;
+        }
+    }
+}
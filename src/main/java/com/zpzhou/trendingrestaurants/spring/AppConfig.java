@@ -6,18 +6,44 @@ import com.google.maps.GeoApiContext;
 import com.zpzhou.trendingrestaurants.controllers.PhotoController;
 import com.zpzhou.trendingrestaurants.controllers.PingController;
 import com.zpzhou.trendingrestaurants.controllers.TrendsController;
-import com.zpzhou.trendingrestaurants.controllers.cache.TumblingCache;
+import com.zpzhou.trendingrestaurants.controllers.cache.ExpiringCache;
+import com.zpzhou.trendingrestaurants.controllers.cache.SingleFlight;
+import com.zpzhou.trendingrestaurants.controllers.cache.TrendsIngester;
+import com.zpzhou.trendingrestaurants.controllers.cache.TrendsPrewarmer;
 import com.zpzhou.trendingrestaurants.handlers.PhotoHandler;
+import com.zpzhou.trendingrestaurants.handlers.PlaceTimelines;
 import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
+import com.zpzhou.trendingrestaurants.metrics.CacheMetrics;
+import com.zpzhou.trendingrestaurants.metrics.PipelineMetrics;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
 import com.zpzhou.trendingrestaurants.model.TrendsList;
+import com.zpzhou.trendingrestaurants.search.places.BusinessNameRecognizer;
+import com.zpzhou.trendingrestaurants.search.places.CachingGoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.DiskBackedCache;
 import com.zpzhou.trendingrestaurants.search.places.GoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.NegativeLookupCache;
+import com.zpzhou.trendingrestaurants.search.places.PhotoCache;
+import com.zpzhou.trendingrestaurants.search.places.PhotoResizer;
+import com.zpzhou.trendingrestaurants.search.tweets.FoodKeywords;
+import com.zpzhou.trendingrestaurants.search.tweets.SearchBudget;
 import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchAPIClient;
 import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchQueryResponse;
-import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchResponseDeserializer;
+import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchResponseAdapter;
+import com.zpzhou.trendingrestaurants.store.TweetStore;
+import com.zpzhou.trendingrestaurants.upstream.AdaptiveLimit;
+import com.zpzhou.trendingrestaurants.upstream.AsyncLimiter;
+import com.zpzhou.trendingrestaurants.upstream.CircuitBreaker;
+import com.zpzhou.trendingrestaurants.upstream.Hedging;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+import com.zpzhou.trendingrestaurants.upstream.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import okhttp3.OkHttpClient;
 import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.tokenize.SimpleTokenizer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,13 +54,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -42,6 +72,10 @@ public class AppConfig {
 
     private static final Logger logger = LogManager.getLogger();
 
+    // Exported at /actuator/prometheus
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Value("${twitter.search.url}")
     public String twitterSearchURL;
 
@@ -54,55 +88,382 @@ public class AppConfig {
     @Value("#{new Integer(${thread.pool.size})}")
     private int threadPoolSize;
 
+    @Value("${executor.mode}")
+    private String executorMode;
+
+    @Value("#{new Integer(${pipeline.request.timeout.seconds})}")
+    private int requestTimeoutSeconds;
+
     @Value("#{new Integer(${tumbling.window.minutes})}")
     private int tumblingWindowMinutes;
 
     @Value("#{new Integer(${tumbling.window.capacity})}")
     private int tumblingWindowCapacity;
 
+    @Value("#{new Integer(${cache.partial.minutes})}")
+    private int cachePartialMinutes;
+
+    @Value("#{new Integer(${cache.stale.minutes})}")
+    private int cacheStaleMinutes;
+
+    @Value("#{new Integer(${cache.refresh.thread.pool.size})}")
+    private int cacheRefreshThreadPoolSize;
+
+    @Value("#{new Integer(${ner.batch.size})}")
+    private int nerBatchSize;
+
+    @Value("#{new Integer(${pipeline.max.tweets.in.flight})}")
+    private int maxTweetsInFlight;
+
+    @Value("#{new Integer(${twitter.search.max.tweets})}")
+    private int twitterSearchMaxTweets;
+
+    @Value("#{new Integer(${twitter.search.max.seconds})}")
+    private int twitterSearchMaxSeconds;
+
+    @Value("#{new Integer(${twitter.search.max.concurrent})}")
+    private int twitterSearchMaxConcurrent;
+
+    @Value("#{new Double(${twitter.search.rate.per.second})}")
+    private double twitterSearchRatePerSecond;
+
+    @Value("#{new Integer(${twitter.search.latency.threshold.millis})}")
+    private int twitterSearchLatencyThresholdMillis;
+
+    @Value("#{new Integer(${twitter.search.max.queued})}")
+    private int twitterSearchMaxQueued;
+
+    @Value("#{new Integer(${timelines.max.places})}")
+    private int timelinesMaxPlaces;
+
+    @Value("#{new Integer(${trends.max.results})}")
+    private int trendsMaxResults;
+
+    @Value("#{new Integer(${trends.stream.snapshot.interval.millis})}")
+    private int trendsStreamSnapshotIntervalMillis;
+
+    @Value("#{new Integer(${trends.batch.max.queries})}")
+    private int trendsBatchMaxQueries;
+
+    @Value("#{new Integer(${trends.batch.max.places.per.search})}")
+    private int trendsBatchMaxPlacesPerSearch;
+
+    @Value("#{new Integer(${trends.batch.max.concurrent.searches})}")
+    private int trendsBatchMaxConcurrentSearches;
+
+    @Value("#{new Integer(${trends.batch.max.queued.searches})}")
+    private int trendsBatchMaxQueuedSearches;
+
+    @Value("#{new Integer(${places.max.concurrent.find.place})}")
+    private int placesMaxConcurrentFindPlace;
+
+    @Value("#{new Integer(${places.max.concurrent.place.details})}")
+    private int placesMaxConcurrentPlaceDetails;
+
+    @Value("#{new Integer(${places.max.concurrent.geocoding})}")
+    private int placesMaxConcurrentGeocoding;
+
+    @Value("#{new Integer(${places.max.concurrent.photo})}")
+    private int placesMaxConcurrentPhoto;
+
+    @Value("#{new Double(${places.rate.per.second.find.place})}")
+    private double placesRatePerSecondFindPlace;
+
+    @Value("#{new Double(${places.rate.per.second.place.details})}")
+    private double placesRatePerSecondPlaceDetails;
+
+    @Value("#{new Double(${places.rate.per.second.geocoding})}")
+    private double placesRatePerSecondGeocoding;
+
+    @Value("#{new Double(${places.rate.per.second.photo})}")
+    private double placesRatePerSecondPhoto;
+
+    @Value("#{new Integer(${places.latency.threshold.millis})}")
+    private int placesLatencyThresholdMillis;
+
+    @Value("#{new Double(${places.hedge.percentile})}")
+    private double placesHedgePercentile;
+
+    @Value("#{new Double(${places.hedge.max.ratio})}")
+    private double placesHedgeMaxRatio;
+
+    @Value("#{new Integer(${places.max.queued})}")
+    private int placesMaxQueued;
+
+    @Value("#{new Integer(${places.max.queued.photo})}")
+    private int placesMaxQueuedPhoto;
+
+    @Value("#{new Integer(${upstream.min.concurrent})}")
+    private int upstreamMinConcurrent;
+
+    @Value("#{new Double(${upstream.background.share})}")
+    private double upstreamBackgroundShare;
+
+    @Value("#{new Integer(${upstream.max.retries})}")
+    private int upstreamMaxRetries;
+
+    @Value("#{new Integer(${upstream.circuit.window.size})}")
+    private int upstreamCircuitWindowSize;
+
+    @Value("#{new Double(${upstream.circuit.failure.rate})}")
+    private double upstreamCircuitFailureRate;
+
+    @Value("#{new Double(${upstream.circuit.slow.call.rate})}")
+    private double upstreamCircuitSlowCallRate;
+
+    @Value("#{new Integer(${upstream.circuit.open.seconds})}")
+    private int upstreamCircuitOpenSeconds;
+
+    @Value("#{new Integer(${upstream.circuit.half.open.calls})}")
+    private int upstreamCircuitHalfOpenCalls;
+
+    @Value("#{new Integer(${upstream.callback.thread.pool.size})}")
+    private int upstreamCallbackThreadPoolSize;
+
+    @Value("${keywords.file}")
+    private String keywordsFile;
+
+    @Value("#{new Integer(${keywords.reload.seconds})}")
+    private int keywordsReloadSeconds;
+
+    @Value("#{new Integer(${keywords.min.score})}")
+    private int keywordsMinScore;
+
+    @Value("${places.cache.directory}")
+    private String placesCacheDirectory;
+
+    @Value("#{new Integer(${places.cache.memory.capacity})}")
+    private int placesCacheMemoryCapacity;
+
+    @Value("#{new Integer(${places.cache.text.ttl.hours})}")
+    private int placesCacheTextTtlHours;
+
+    @Value("#{new Integer(${places.cache.coordinates.ttl.hours})}")
+    private int placesCacheCoordinatesTtlHours;
+
+    @Value("#{new Integer(${places.cache.details.ttl.hours})}")
+    private int placesCacheDetailsTtlHours;
+
+    @Value("#{new Integer(${places.cache.coordinates.precision})}")
+    private int placesCacheCoordinatesPrecision;
+
+    @Value("#{new Integer(${places.negative.cache.ttl.hours})}")
+    private int placesNegativeCacheTtlHours;
+
+    @Value("#{new Integer(${places.negative.cache.expected.entries})}")
+    private int placesNegativeCacheExpectedEntries;
+
+    @Value("#{new Double(${places.negative.cache.false.positive.rate})}")
+    private double placesNegativeCacheFalsePositiveRate;
+
+    @Value("${photo.cache.directory}")
+    private String photoCacheDirectory;
+
+    @Value("#{new Integer(${photo.cache.memory.megabytes})}")
+    private int photoCacheMemoryMegabytes;
+
+    @Value("#{new Integer(${photo.cache.disk.megabytes})}")
+    private int photoCacheDiskMegabytes;
+
+    @Value("${photo.sizes}")
+    private String photoSizes;
+
+    @Value("#{new Integer(${photo.resize.thread.pool.size})}")
+    private int photoResizeThreadPoolSize;
+
+    @Value("#{new Integer(${photo.max.age.hours})}")
+    private int photoMaxAgeHours;
+
+    @Value("${timelines.store.directory}")
+    private String timelinesStoreDirectory;
+
+    @Value("${ingest.places}")
+    private String ingestPlaces;
+
+    @Value("#{new Integer(${ingest.interval.seconds})}")
+    private int ingestIntervalSeconds;
+
+    @Value("#{new Integer(${prewarm.hot.set.size})}")
+    private int prewarmHotSetSize;
+
+    @Value("#{new Integer(${prewarm.max.concurrent.refreshes})}")
+    private int prewarmMaxConcurrentRefreshes;
+
+    @Value("#{new Integer(${prewarm.interval.seconds})}")
+    private int prewarmIntervalSeconds;
+
     @Bean
     @Scope(value = "singleton")
     public TwitterSearchAPIClient twitterSearchAPIClient () {
         logger.info("twitter search URL: {}", twitterSearchURL);
         final OkHttpClient httpClient = new OkHttpClient();
         final Gson gson = new GsonBuilder()
-                .registerTypeAdapter(TwitterSearchQueryResponse.class, new TwitterSearchResponseDeserializer())
+                .registerTypeAdapter(TwitterSearchQueryResponse.class, new TwitterSearchResponseAdapter())
                 .create();
-        return new TwitterSearchAPIClient(httpClient, twitterBearerAccessToken, twitterSearchURL, gson);
+        return new TwitterSearchAPIClient(httpClient, twitterBearerAccessToken, twitterSearchURL, gson,
+                upstreamLimiter("search", twitterSearchMaxConcurrent, twitterSearchMaxQueued,
+                        twitterSearchRatePerSecond, twitterSearchLatencyThresholdMillis, Optional.empty()),
+                pipelineMetrics());
     }
 
-    @Bean
+    @Bean(destroyMethod = "close")
     @Scope(value = "singleton")
-    public GoogleMapsAPIWrapper googleMapsAPIWrapper() {
+    public GoogleMapsAPIWrapper googleMapsAPIWrapper() throws IOException {
         final GeoApiContext context = new GeoApiContext.Builder()
                 .apiKey(googleMapsApiKey)
-                .maxRetries(3)
+                // Retried by the limiters instead, see GoogleMapsAPIWrapper.translate
+                .disableRetries()
                 .readTimeout(2000, TimeUnit.MILLISECONDS)
                 .build();
-        return new GoogleMapsAPIWrapper(context);
+        final Gson gson = new Gson();
+        final Path directory = Paths.get(placesCacheDirectory);
+        return new CachingGoogleMapsAPIWrapper(
+                context,
+                upstreamLimiter("find-place", placesMaxConcurrentFindPlace, placesMaxQueued,
+                        placesRatePerSecondFindPlace, placesLatencyThresholdMillis, Optional.of(placesHedging())),
+                upstreamLimiter("place-details", placesMaxConcurrentPlaceDetails, placesMaxQueued,
+                        placesRatePerSecondPlaceDetails, placesLatencyThresholdMillis, Optional.of(placesHedging())),
+                upstreamLimiter("geocoding", placesMaxConcurrentGeocoding, placesMaxQueued,
+                        placesRatePerSecondGeocoding, placesLatencyThresholdMillis, Optional.of(placesHedging())),
+                upstreamLimiter("photo", placesMaxConcurrentPhoto, placesMaxQueuedPhoto,
+                        placesRatePerSecondPhoto, placesLatencyThresholdMillis, Optional.empty()),
+                new DiskBackedCache<>(directory.resolve("place-ids-by-text.log"),
+                        TimeUnit.HOURS.toMillis(placesCacheTextTtlHours), placesCacheMemoryCapacity,
+                        placeId -> placeId, placeId -> placeId),
+                new DiskBackedCache<>(directory.resolve("place-ids-by-coordinates.log"),
+                        TimeUnit.HOURS.toMillis(placesCacheCoordinatesTtlHours), placesCacheMemoryCapacity,
+                        placeId -> placeId, placeId -> placeId),
+                new DiskBackedCache<>(directory.resolve("place-details-by-id.log"),
+                        TimeUnit.HOURS.toMillis(placesCacheDetailsTtlHours), placesCacheMemoryCapacity,
+                        details -> CachingGoogleMapsAPIWrapper.encodePlaceDetails(gson, details),
+                        json -> CachingGoogleMapsAPIWrapper.decodePlaceDetails(gson, json)),
+                placesCacheCoordinatesPrecision);
+    }
+
+    /**
+     * Paces an upstream endpoint to @param ratePerSecond, allowing up to a
+     * second's worth of calls at once. Calls slower than
+     * @param latencyThresholdMillis count as slow towards opening its circuit.
+     */
+    private AsyncLimiter upstreamLimiter(final String name,
+                                         final int maxConcurrent,
+                                         final int maxQueued,
+                                         final double ratePerSecond,
+                                         final long latencyThresholdMillis,
+                                         final Optional<Hedging> hedging) {
+        return new AsyncLimiter(name,
+                new AdaptiveLimit(upstreamMinConcurrent, maxConcurrent, latencyThresholdMillis),
+                new TokenBucket(ratePerSecond, ratePerSecond),
+                new CircuitBreaker(name, upstreamCircuitWindowSize, upstreamCircuitFailureRate,
+                        latencyThresholdMillis, upstreamCircuitSlowCallRate,
+                        TimeUnit.SECONDS.toMillis(upstreamCircuitOpenSeconds), upstreamCircuitHalfOpenCalls),
+                maxQueued,
+                upstreamBackgroundShare,
+                upstreamMaxRetries,
+                hedging,
+                scheduledExecutorService(),
+                upstreamCallbackExecutorService(),
+                meterRegistry);
+    }
+
+    private Hedging placesHedging() {
+        return new Hedging(placesHedgePercentile, placesHedgeMaxRatio);
+    }
+
+    @Bean(destroyMethod = "close")
+    @Scope(value = "singleton")
+    public NegativeLookupCache negativeLookupCache() throws IOException {
+        return new NegativeLookupCache(
+                Paths.get(placesCacheDirectory).resolve("negative-lookups.bloom"),
+                TimeUnit.HOURS.toMillis(placesNegativeCacheTtlHours),
+                placesNegativeCacheExpectedEntries,
+                placesNegativeCacheFalsePositiveRate);
     }
 
     @Bean
     @Scope(value = "singleton")
     public TrendsHandler trendsHandler() throws IOException {
-        try (final InputStream inputStream = new ClassPathResource("static/food_keywords.txt")
-                .getInputStream())
-        {
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        return new TrendsHandler(twitterSearchAPIClient(), googleMapsAPIWrapper(), negativeLookupCache(),
+                executorService(), businessNameRecognizer(), foodKeywords(), nerBatchSize, maxTweetsInFlight,
+                new SearchBudget(twitterSearchMaxTweets, TimeUnit.SECONDS.toMillis(twitterSearchMaxSeconds)),
+                new PlaceTimelines(timelinesMaxPlaces, Optional.of(tweetStore())), trendsMaxResults,
+                TimeUnit.SECONDS.toMillis(requestTimeoutSeconds), placesCacheCoordinatesPrecision,
+                keywordsMinScore, trendsStreamSnapshotIntervalMillis, pipelineMetrics());
+    }
 
-            final Set<String> keywords = reader.lines()
-                    .collect(Collectors.toSet());
-            logger.info("Food keywords: {}", keywords);
+    @Bean
+    @Scope(value = "singleton")
+    public PipelineMetrics pipelineMetrics() {
+        return new PipelineMetrics(meterRegistry);
+    }
 
-            return new TrendsHandler(twitterSearchAPIClient(), googleMapsAPIWrapper(),
-                    executorService(), nameFinderModel(), keywords);
+    @Bean(destroyMethod = "close")
+    @Scope(value = "singleton")
+    public TweetStore tweetStore() throws IOException {
+        final Gson gson = new Gson();
+        final Path directory = Paths.get(timelinesStoreDirectory);
+        // Kept for twice the longest TimeFrame, see TweetStore.putDetails
+        final long detailsTtlMillis = 2 * TimeUnit.DAYS.toMillis(Arrays.stream(TimeFrame.values())
+                .mapToInt(TimeFrame::getDurationDays)
+                .max()
+                .getAsInt());
+        return new TweetStore(directory, detailsTtlMillis,
+                new DiskBackedCache<>(directory.resolve("place-details.log"),
+                        detailsTtlMillis, placesCacheMemoryCapacity,
+                        details -> CachingGoogleMapsAPIWrapper.encodePlaceDetails(gson, details),
+                        json -> CachingGoogleMapsAPIWrapper.decodePlaceDetails(gson, json)));
+    }
+
+    @Bean
+    @Scope(value = "singleton")
+    public TrendsIngester trendsIngester() throws IOException {
+        return new TrendsIngester(
+                scheduledExecutorService(),
+                ingestExecutorService(),
+                trendsHandler(),
+                trendsCache(),
+                TrendsIngester.parsePlaces(ingestPlaces),
+                TimeUnit.SECONDS.toMillis(ingestIntervalSeconds));
+    }
+
+    @Bean
+    @Scope(value = "singleton")
+    public FoodKeywords foodKeywords() throws IOException {
+        final FoodKeywords foodKeywords = new FoodKeywords(keywordsFile.isBlank()
+                ? Optional.empty()
+                : Optional.of(Paths.get(keywordsFile)));
+        if (foodKeywords.isReloadable()) {
+            scheduledExecutorService().scheduleWithFixedDelay(foodKeywords::reloadIfModified,
+                    keywordsReloadSeconds, keywordsReloadSeconds, TimeUnit.SECONDS);
         }
+        return foodKeywords;
+    }
+
+    @Bean
+    @Scope(value = "singleton")
+    public PhotoHandler photoHandler() throws IOException {
+        final int[] sizes = Arrays.stream(photoSizes.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        return new PhotoHandler(googleMapsAPIWrapper(), photoCache(),
+                new PhotoResizer(photoResizeExecutorService()), new SingleFlight<>(), sizes);
     }
 
     @Bean
     @Scope(value = "singleton")
-    public PhotoHandler photoHandler() {
-        return new PhotoHandler(googleMapsAPIWrapper());
+    public PhotoCache photoCache() throws IOException {
+        return new PhotoCache(
+                Paths.get(photoCacheDirectory),
+                photoCacheMemoryMegabytes * 1024L * 1024L,
+                photoCacheDiskMegabytes * 1024L * 1024L);
+    }
+
+    @Bean
+    @Scope(value = "singleton")
+    public BusinessNameRecognizer businessNameRecognizer() throws IOException {
+        return new BusinessNameRecognizer(SimpleTokenizer.INSTANCE, nameFinderModel(), threadPoolSize);
     }
 
     public TokenNameFinderModel nameFinderModel() throws IOException {
@@ -125,13 +486,14 @@ public class AppConfig {
     @Bean
     @Scope(value = "singleton")
     public TrendsController trendsController() throws IOException {
-        return new TrendsController(trendsHandler(), tumblingCache());
+        return new TrendsController(trendsHandler(), trendsCache(), trendsSingleFlight(), trendsPrewarmer(),
+                batchExecutorService(), trendsBatchMaxQueries, trendsBatchMaxPlacesPerSearch);
     }
 
     @Bean
     @Scope(value = "singleton")
-    public PhotoController photoController() {
-        return new PhotoController(photoHandler());
+    public PhotoController photoController() throws IOException {
+        return new PhotoController(photoHandler(), TimeUnit.HOURS.toSeconds(photoMaxAgeHours));
     }
 
     @Bean
@@ -142,24 +504,107 @@ public class AppConfig {
 
     @Bean
     @Scope(value = "singleton")
-    public TumblingCache<String, TrendsList> tumblingCache() {
-        return new TumblingCache<>(
+    public ExpiringCache<String, TrendsList> trendsCache() {
+        final ExpiringCache<String, TrendsList> cache = new ExpiringCache<>(
+                scheduledExecutorService(),
+                cacheRefreshExecutorService(),
+                tumblingWindowCapacity,
+                TimeUnit.MINUTES.toMillis(tumblingWindowMinutes),
+                // Trends that processed no tweets, eg. having waited out the deadline for another
+                // search, would only hide the trends from the next request
+                trends -> trends.isComplete() ? TimeUnit.MINUTES.toMillis(tumblingWindowMinutes)
+                        : trends.getTweetsProcessed() > 0 ? TimeUnit.MINUTES.toMillis(cachePartialMinutes)
+                        : 0,
+                TimeUnit.MINUTES.toMillis(cacheStaleMinutes));
+        new CacheMetrics("trends", cache).bindTo(meterRegistry);
+        return cache;
+    }
+
+    @Bean
+    @Scope(value = "singleton")
+    public SingleFlight<String, TrendsList> trendsSingleFlight() {
+        return new SingleFlight<>();
+    }
+
+    @Bean
+    @Scope(value = "singleton")
+    public TrendsPrewarmer trendsPrewarmer() throws IOException {
+        return new TrendsPrewarmer(
                 scheduledExecutorService(),
-                new ReentrantReadWriteLock(),
-                new HashMap<>(),
-                tumblingWindowMinutes,
-                tumblingWindowCapacity);
+                cacheRefreshExecutorService(),
+                trendsHandler(),
+                trendsCache(),
+                trendsSingleFlight(),
+                prewarmHotSetSize,
+                prewarmMaxConcurrentRefreshes,
+                TimeUnit.SECONDS.toMillis(prewarmIntervalSeconds));
     }
 
     @Bean(destroyMethod = "shutdown")
     @Scope(value = "singleton")
     public ExecutorService executorService() {
-        return Executors.newFixedThreadPool(threadPoolSize);
+        if ("virtual".equalsIgnoreCase(executorMode)) {
+            // Looked up reflectively so the application still builds and runs on JVMs without virtual threads
+            try {
+                return ExecutorServiceMetrics.monitor(meterRegistry, (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null), "recognition");
+            }
+            catch (final ReflectiveOperationException ex) {
+                logger.warn("Virtual threads are unavailable on Java {}, using a pool of {} threads",
+                        System.getProperty("java.version"), threadPoolSize);
+            }
+        }
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newFixedThreadPool(threadPoolSize), "recognition");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Scope(value = "singleton")
+    public ExecutorService cacheRefreshExecutorService() {
+        // Refreshes give way to client requests for upstream calls
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newFixedThreadPool(cacheRefreshThreadPoolSize, Priority.BACKGROUND.threadFactory()),
+                "cache-refresh");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Scope(value = "singleton")
+    public ExecutorService ingestExecutorService() {
+        // Runs never overlap, and a long run mustn't hold up stale cache refreshes
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newSingleThreadExecutor(Priority.BACKGROUND.threadFactory()),
+                "ingest");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Scope(value = "singleton")
+    public ExecutorService batchExecutorService() {
+        // Searches beyond the bounded queue are rejected rather than waiting past their deadlines
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                new ThreadPoolExecutor(trendsBatchMaxConcurrentSearches, trendsBatchMaxConcurrentSearches,
+                        0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(trendsBatchMaxQueuedSearches)),
+                "batch");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Scope(value = "singleton")
+    public ExecutorService upstreamCallbackExecutorService() {
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newFixedThreadPool(upstreamCallbackThreadPoolSize), "upstream-callback");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Scope(value = "singleton")
+    public ExecutorService photoResizeExecutorService() {
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newFixedThreadPool(photoResizeThreadPoolSize), "photo-resize");
     }
 
     @Bean(destroyMethod = "shutdown")
     @Scope(value = "singleton")
     public ScheduledExecutorService scheduledExecutorService() {
-        return Executors.newSingleThreadScheduledExecutor();
+        return ExecutorServiceMetrics.monitor(meterRegistry,
+                Executors.newSingleThreadScheduledExecutor(), "scheduler");
     }
 }
@@ -0,0 +1,270 @@
+package com.zpzhou.trendingrestaurants.store;
+
+import com.google.maps.model.PlaceDetails;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The tweets resolved for a single place, partitioned into a segment file
+ * per UTC day they were created in. Segments are only ever appended to, and
+ * dropped whole once they fall out of the retention period.
+ *
+ * Each record is laid out as [createdAt][retweets][favorites][placeIdLength][placeId].
+ * A manifest holds the interval [coveredFrom, watermark) the tweets cover and
+ * the length of each segment as of the last append, and is replaced
+ * atomically after the segments are written, so bytes beyond those lengths
+ * (left by a crash mid-append) are ignored and later overwritten. Segments
+ * are memory-mapped to be replayed.
+ */
+public class PlaceSegments {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int HEADER_BYTES = Long.BYTES + 3 * Integer.BYTES;
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final TweetStore store;
+    // Committed length of each segment, keyed by the start of its day
+    private final NavigableMap<Long, Long> lengths = new TreeMap<>();
+    private long coveredFrom = Long.MAX_VALUE;
+    private long watermark = Long.MIN_VALUE;
+    private boolean loaded;
+
+    PlaceSegments(final Path directory, final TweetStore store) {
+        this.directory = directory;
+        this.store = store;
+    }
+
+    public synchronized boolean isEmpty() {
+        load();
+        return watermark == Long.MIN_VALUE;
+    }
+
+    public synchronized long getCoveredFrom() {
+        load();
+        return coveredFrom;
+    }
+
+    public synchronized long getWatermark() {
+        load();
+        return watermark;
+    }
+
+    /**
+     * Hands every tweet in [coveredFrom, watermark) to @param consumer, oldest
+     * day first. Tweets mentioning a place whose details are no longer kept
+     * are skipped.
+     */
+    public synchronized void replay(final Consumer<StoredTweet> consumer) throws IOException {
+        load();
+        final Map<String, Optional<PlaceDetails>> detailsById = new HashMap<>();
+        for (final Map.Entry<Long, Long> segment : lengths.entrySet()) {
+            if (segment.getValue() == 0) {
+                continue;
+            }
+            try (final FileChannel channel = FileChannel.open(segmentFile(segment.getKey()), StandardOpenOption.READ)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        Math.min(segment.getValue(), channel.size()));
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    final long createdAt = buffer.getLong();
+                    final int retweetCount = buffer.getInt();
+                    final int favoriteCount = buffer.getInt();
+                    final int placeIdLength = buffer.getInt();
+                    if (placeIdLength < 0 || buffer.remaining() < placeIdLength) {
+                        throw new IOException("Corrupt record in " + segmentFile(segment.getKey()));
+                    }
+                    final byte[] placeId = new byte[placeIdLength];
+                    buffer.get(placeId);
+                    if (createdAt < coveredFrom || createdAt >= watermark) {
+                        continue;
+                    }
+                    detailsById.computeIfAbsent(new String(placeId, StandardCharsets.UTF_8), store::getDetails)
+                            .ifPresent(details -> consumer.accept(
+                                    new StoredTweet(createdAt, retweetCount, favoriteCount, details)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends @param tweets to the segments of the days they were created in,
+     * then records that the segments now cover [@param from, @param to).
+     */
+    public synchronized void append(final List<StoredTweet> tweets, final long from, final long to)
+            throws IOException {
+        load();
+        Files.createDirectories(directory);
+        final NavigableMap<Long, List<StoredTweet>> tweetsByDay = new TreeMap<>();
+        for (final StoredTweet tweet : tweets) {
+            tweetsByDay.computeIfAbsent(dayStart(tweet.getCreatedAtMillis()), day -> new ArrayList<>()).add(tweet);
+        }
+        final Map<Long, Long> appendedLengths = new HashMap<>();
+        for (final Map.Entry<Long, List<StoredTweet>> day : tweetsByDay.entrySet()) {
+            final ByteBuffer records = encode(day.getValue());
+            final long committed = lengths.getOrDefault(day.getKey(), 0L);
+            try (final FileChannel channel = FileChannel.open(segmentFile(day.getKey()),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Drops any records a crash left past the last committed length
+                channel.truncate(committed);
+                long position = committed;
+                while (records.hasRemaining()) {
+                    position += channel.write(records, position);
+                }
+                channel.force(false);
+                appendedLengths.put(day.getKey(), position);
+            }
+            day.getValue().forEach(tweet -> store.putDetails(tweet.getDetails()));
+        }
+        lengths.putAll(appendedLengths);
+        coveredFrom = Math.min(coveredFrom, from);
+        watermark = Math.max(watermark, to);
+        writeManifest();
+    }
+
+    /**
+     * Drops the segments of the days ending at or before @param cutoff.
+     */
+    public synchronized void evictBefore(final long cutoff) throws IOException {
+        load();
+        final Map<Long, Long> expired = lengths.headMap(dayStart(cutoff), false);
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (final Long day : new ArrayList<>(expired.keySet())) {
+            Files.deleteIfExists(segmentFile(day));
+        }
+        expired.clear();
+        coveredFrom = Math.max(coveredFrom, cutoff);
+        writeManifest();
+    }
+
+    /**
+     * Deletes every segment, leaving nothing covered.
+     */
+    public synchronized void reset() throws IOException {
+        loaded = true;
+        lengths.clear();
+        coveredFrom = Long.MAX_VALUE;
+        watermark = Long.MIN_VALUE;
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static ByteBuffer encode(final List<StoredTweet> tweets) {
+        final List<byte[]> placeIds = new ArrayList<>(tweets.size());
+        int size = 0;
+        for (final StoredTweet tweet : tweets) {
+            final byte[] placeId = tweet.getDetails().placeId.getBytes(StandardCharsets.UTF_8);
+            placeIds.add(placeId);
+            size += HEADER_BYTES + placeId.length;
+        }
+        final ByteBuffer records = ByteBuffer.allocate(size);
+        for (int i = 0; i < tweets.size(); i++) {
+            final StoredTweet tweet = tweets.get(i);
+            records.putLong(tweet.getCreatedAtMillis())
+                    .putInt(tweet.getRetweetCount())
+                    .putInt(tweet.getFavoriteCount())
+                    .putInt(placeIds.get(i).length)
+                    .put(placeIds.get(i));
+        }
+        return records.flip();
+    }
+
+    /**
+     * Reads the manifest as [coveredFrom][watermark][segmentCount] then
+     * [day][length] for each segment. An unreadable manifest discards the
+     * segments, as what they cover is unknown.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        final Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        try (final InputStream inputStream = Files.newInputStream(manifest);
+             final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream))) {
+            final long readCoveredFrom = in.readLong();
+            final long readWatermark = in.readLong();
+            final int segments = in.readInt();
+            final NavigableMap<Long, Long> readLengths = new TreeMap<>();
+            for (int i = 0; i < segments; i++) {
+                readLengths.put(in.readLong(), in.readLong());
+            }
+            coveredFrom = readCoveredFrom;
+            watermark = readWatermark;
+            lengths.putAll(readLengths);
+        }
+        catch (final IOException ex) {
+            logger.warn("Discarding tweets in {} with an unreadable manifest: {}", directory, ex.getMessage());
+            try {
+                reset();
+            }
+            catch (final IOException resetEx) {
+                logger.warn("Failed to delete tweets in {}: {}", directory, resetEx.getMessage());
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Files.createDirectories(directory);
+        final Path manifest = directory.resolve(MANIFEST);
+        final Path tmp = directory.resolve(MANIFEST + ".tmp");
+        try (final OutputStream outputStream = Files.newOutputStream(tmp);
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+            out.writeLong(coveredFrom);
+            out.writeLong(watermark);
+            out.writeInt(lengths.size());
+            for (final Map.Entry<Long, Long> segment : lengths.entrySet()) {
+                out.writeLong(segment.getKey());
+                out.writeLong(segment.getValue());
+            }
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentFile(final long day) {
+        return directory.resolve(day + SEGMENT_SUFFIX);
+    }
+
+    private static long dayStart(final long millis) {
+        return millis - Math.floorMod(millis, DAY_MILLIS);
+    }
+}
@@ -0,0 +1,15 @@
+package com.zpzhou.trendingrestaurants.store;
+
+import com.google.maps.model.PlaceDetails;
+import lombok.Data;
+
+/**
+ * A tweet resolved to the place it mentions, as kept in a TweetStore.
+ */
+@Data
+public class StoredTweet {
+    private final long createdAtMillis;
+    private final int retweetCount;
+    private final int favoriteCount;
+    private final PlaceDetails details;
+}
@@ -0,0 +1,99 @@
+package com.zpzhou.trendingrestaurants.store;
+
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.search.places.DiskBackedCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the tweets resolved for each place under @param directory, so that
+ * timelines survive restarts and outlive their place's time in memory.
+ *
+ * Each place has a directory of PlaceSegments, named after a hash of the
+ * place. The details of the places mentioned are shared between them, and
+ * kept for @param detailsTtlMillis since they were last written.
+ */
+public class TweetStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final Path directory;
+    private final long detailsTtlMillis;
+    private final DiskBackedCache<PlaceDetails> details;
+    private final ConcurrentMap<String, PlaceSegments> places = new ConcurrentHashMap<>();
+    // When each place's details were last written by this process
+    private final Map<String, Long> detailsWrittenAt = new ConcurrentHashMap<>();
+
+    public TweetStore(final Path directory,
+                      final long detailsTtlMillis,
+                      final DiskBackedCache<PlaceDetails> details) throws IOException {
+        this.directory = directory;
+        this.detailsTtlMillis = detailsTtlMillis;
+        this.details = details;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * The segments holding the tweets searched from @param place.
+     */
+    public PlaceSegments open(final String place) {
+        return places.computeIfAbsent(place, key -> new PlaceSegments(directory.resolve(hash(key)), this));
+    }
+
+    /**
+     * Forgets the segments of @param place, which are read back from disk if opened again.
+     */
+    public void evict(final String place) {
+        places.remove(place);
+    }
+
+    @Override
+    public void close() throws IOException {
+        details.close();
+    }
+
+    Optional<PlaceDetails> getDetails(final String placeId) {
+        return details.get(placeId);
+    }
+
+    /**
+     * Writes @param placeDetails unless they were written recently enough to
+     * outlive the tweets mentioning them.
+     */
+    void putDetails(final PlaceDetails placeDetails) {
+        final long now = System.currentTimeMillis();
+        final Long writtenAt = detailsWrittenAt.get(placeDetails.placeId);
+        if (writtenAt == null || now - writtenAt > detailsTtlMillis / 2) {
+            details.put(placeDetails.placeId, placeDetails);
+            detailsWrittenAt.put(placeDetails.placeId, now);
+        }
+    }
+
+    private static String hash(final String place) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(place.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        }
+        catch (final NoSuchAlgorithmException ex) {
+            logger.error("SHA-256 is unavailable", ex);
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+/**
+ * The number of calls allowed in flight to an upstream endpoint, found by
+ * additive increase, multiplicative decrease.
+ *
+ * Each call completing within @param latencyThresholdMillis raises the limit
+ * by 1 / limit, so about one per limit's worth of calls, up to
+ * @param maxLimit. A call that was rejected as overloaded, or that took
+ * longer, halves it down to @param minLimit, at most once per threshold so
+ * the many calls failing together in one overload only count once. A call
+ * that failed for any other reason, eg. a bad request, says nothing about
+ * how much more the endpoint can take, so leaves it be unless it was slow.
+ */
+public class AdaptiveLimit {
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMillis;
+    private double limit;
+    private long decreasedAt;
+
+    public AdaptiveLimit(final int minLimit, final int maxLimit, final long latencyThresholdMillis) {
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.limit = this.maxLimit;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized void onSuccess(final long latencyMillis) {
+        if (latencyMillis > latencyThresholdMillis) {
+            decrease();
+        }
+        else if (limit < maxLimit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public synchronized void onIgnore(final long latencyMillis) {
+        if (latencyMillis > latencyThresholdMillis) {
+            decrease();
+        }
+    }
+
+    public synchronized void onOverload() {
+        decrease();
+    }
+
+    private void decrease() {
+        final long now = System.currentTimeMillis();
+        if (now - decreasedAt >= latencyThresholdMillis) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            decreasedAt = now;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import com.zpzhou.trendingrestaurants.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Governs the calls made to an upstream endpoint without blocking callers
+ * of submit(). A call starts once fewer than the adaptive limit are in
+ * flight and the token bucket has a token for it; until then it is queued.
+ *
+ * Queued INTERACTIVE calls start, in order, ahead of BACKGROUND ones, which
+ * may only use @param backgroundShare of the limit so that there is always
+ * room left for clients. A call failing as overloaded (see
+ * UpstreamException) lowers the limit and is queued again, up to
+ * @param maxRetries times, rather than retried straight away into the
+ * same overload.
+ *
+ * Each endpoint is its own bulkhead: at most @param maxQueued calls wait to
+ * start, and calls beyond that, or made while @param breaker is open, fail
+ * straight away with a CallRejectedException.
+ *
+ * Calls submitted with submitHedged() are sent again if they are slow to
+ * complete, according to @param hedging, see Hedging.
+ *
+ * Calls are timed, by outcome, and counted when rejected or hedged in
+ * @param registry, tagged with the endpoint's @param name.
+ *
+ * Calls made through submit() are started, and their outcomes handled, on
+ * @param callbackExecutor, rather than on whichever thread freed up room for
+ * them or completed the previous call (often an HTTP client's).
+ */
+public class AsyncLimiter {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final String name;
+    private final AdaptiveLimit limit;
+    private final TokenBucket bucket;
+    private final CircuitBreaker breaker;
+    private final int maxQueued;
+    private final double backgroundShare;
+    private final int maxRetries;
+    private final Optional<Hedging> hedging;
+    private final ScheduledExecutorService scheduler;
+    private final Executor callbackExecutor;
+    private final Timer succeeded;
+    private final Timer failed;
+    private final Timer overloaded;
+    private final Counter circuitRejections;
+    private final Counter queueRejections;
+    private final Counter hedges;
+    private final Map<Priority, Queue<CompletableFuture<Void>>> waiting = new EnumMap<>(Priority.class);
+    private int activeCalls;
+    private boolean drainScheduled;
+
+    public AsyncLimiter(final String name,
+                        final AdaptiveLimit limit,
+                        final TokenBucket bucket,
+                        final CircuitBreaker breaker,
+                        final int maxQueued,
+                        final double backgroundShare,
+                        final int maxRetries,
+                        final Optional<Hedging> hedging,
+                        final ScheduledExecutorService scheduler,
+                        final Executor callbackExecutor,
+                        final MeterRegistry registry) {
+        this.name = name;
+        this.limit = limit;
+        this.bucket = bucket;
+        this.breaker = breaker;
+        this.maxQueued = maxQueued;
+        this.backgroundShare = backgroundShare;
+        this.maxRetries = maxRetries;
+        this.hedging = hedging;
+        this.scheduler = scheduler;
+        this.callbackExecutor = callbackExecutor;
+        for (final Priority priority : Priority.values()) {
+            waiting.put(priority, new ArrayDeque<>());
+        }
+
+        succeeded = callTimer(registry, "success");
+        failed = callTimer(registry, "failure");
+        overloaded = callTimer(registry, "overloaded");
+        circuitRejections = rejectionCounter(registry, "circuit");
+        queueRejections = rejectionCounter(registry, "queue");
+        hedges = Counter.builder("upstream.hedges")
+                .tag("endpoint", name)
+                .description("Copies of slow calls sent")
+                .register(registry);
+        Gauge.builder("upstream.calls.active", this, AsyncLimiter::getActiveCalls)
+                .tag("endpoint", name)
+                .register(registry);
+        Gauge.builder("upstream.calls.queued", this, AsyncLimiter::getQueuedCalls)
+                .tag("endpoint", name)
+                .register(registry);
+        Gauge.builder("upstream.calls.limit", this, AsyncLimiter::getLimit)
+                .tag("endpoint", name)
+                .description("Calls allowed in flight at once")
+                .register(registry);
+        Gauge.builder("upstream.circuit.state", this, limiter -> limiter.getCircuitState().ordinal())
+                .tag("endpoint", name)
+                .description("0 if closed, 1 if open, 2 if half open")
+                .register(registry);
+    }
+
+    public <T> CompletableFuture<T> submit(final Priority priority, final Supplier<CompletableFuture<T>> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        submit(priority, call, 0, result, () -> {});
+        return result;
+    }
+
+    /**
+     * Like submit(), but once @param call has been in flight for longer than
+     * most calls take, sends a second copy of it, budget allowing. Completes
+     * with whichever succeeds first, or fails once both have, and cancels the
+     * other.
+     */
+    public <T> CompletableFuture<T> submitHedged(final Priority priority,
+                                                 final Supplier<CompletableFuture<T>> call) {
+        if (hedging.isEmpty()) {
+            return submit(priority, call);
+        }
+        hedging.get().onCall();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // Copies of the call that haven't failed yet
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        final CompletableFuture<T> primary = new CompletableFuture<>();
+        race(primary, result, outstanding);
+        submit(priority, call, 0, primary, () -> hedging.get().getDelayMillis().ifPresent(delay ->
+                scheduler.schedule(() -> {
+                    if (result.isDone()
+                            || !hedging.get().tryHedge()
+                            || outstanding.getAndUpdate(copies -> copies > 0 ? copies + 1 : copies) == 0) {
+                        return;
+                    }
+                    logger.debug("Hedging {} call still in flight after {}ms", name, delay);
+                    hedges.increment();
+                    final CompletableFuture<T> hedge = new CompletableFuture<>();
+                    race(hedge, result, outstanding);
+                    submit(priority, call, 0, hedge, () -> {});
+                }, delay, TimeUnit.MILLISECONDS)));
+        return result;
+    }
+
+    /**
+     * Makes @param call on the calling thread once it is allowed to start,
+     * blocking until then.
+     */
+    public <T> T call(final Priority priority, final Callable<T> call) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            final CompletableFuture<Void> permit = acquire(priority);
+            try {
+                permit.get();
+            }
+            catch (final InterruptedException ex) {
+                // A permit granted while we were being interrupted is handed back
+                if (!permit.cancel(false)) {
+                    cancel();
+                }
+                throw ex;
+            }
+            catch (final ExecutionException ex) {
+                throw (Exception) ex.getCause();
+            }
+            final long startedAt = System.nanoTime();
+            try {
+                final T value = call.call();
+                release(null, elapsedMillis(startedAt));
+                return value;
+            }
+            catch (final Exception ex) {
+                final boolean overloaded = UpstreamException.isOverload(ex);
+                release(ex, elapsedMillis(startedAt));
+                if (!overloaded || attempt >= maxRetries) {
+                    throw ex;
+                }
+                logger.info("Retrying overloaded {} call, limit now {}: {}", name, limit.getLimit(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Applies the upstream's own account of the @param remaining calls it will
+     * accept before @param resetAtMillis, see TokenBucket.
+     */
+    public void limitTo(final int remaining, final long resetAtMillis) {
+        bucket.limitTo(remaining, resetAtMillis);
+    }
+
+    public void pauseUntil(final long resetAtMillis) {
+        bucket.pauseUntil(resetAtMillis);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    public synchronized int getActiveCalls() {
+        return activeCalls;
+    }
+
+    public synchronized int getQueuedCalls() {
+        return waiting.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    /**
+     * Makes @param call once it may start, running @param onStart as it does,
+     * and completes @param result with its outcome. The call is skipped if
+     * @param result is completed, eg. cancelled, before then, and cancelled
+     * if it is while the call is in flight.
+     */
+    private <T> void submit(final Priority priority,
+                            final Supplier<CompletableFuture<T>> call,
+                            final int attempt,
+                            final CompletableFuture<T> result,
+                            final Runnable onStart) {
+        acquire(priority).whenCompleteAsync((permit, rejected) -> {
+            if (rejected != null) {
+                result.completeExceptionally(rejected);
+                return;
+            }
+            if (result.isDone()) {
+                cancel();
+                return;
+            }
+            final long startedAt = System.nanoTime();
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            }
+            catch (final RuntimeException ex) {
+                future = CompletableFuture.failedFuture(ex);
+            }
+            onStart.run();
+            final CompletableFuture<T> started = future;
+            result.whenComplete((value, ex) -> started.cancel(true));
+            future.whenCompleteAsync((value, ex) -> {
+                if (started.isCancelled()) {
+                    // A losing copy took at least this long, and leaving it out would bias the percentiles down
+                    hedging.ifPresent(h -> h.record(elapsedMillis(startedAt)));
+                    cancel();
+                    return;
+                }
+                final boolean overloaded = ex != null && UpstreamException.isOverload(ex);
+                release(ex, elapsedMillis(startedAt));
+                if (overloaded && attempt < maxRetries) {
+                    logger.info("Retrying overloaded {} call, limit now {}: {}",
+                            name, limit.getLimit(), ex.getMessage());
+                    submit(priority, call, attempt + 1, result, () -> {});
+                }
+                else if (ex != null) {
+                    result.completeExceptionally(ex);
+                }
+                else {
+                    result.complete(value);
+                }
+            }, callbackExecutor);
+        }, callbackExecutor);
+    }
+
+    /**
+     * Returns a future completed, possibly on another thread, once a call at
+     * @param priority may start, or failed if it can't be made. The call then
+     * holds one of the active calls until it is released.
+     */
+    private CompletableFuture<Void> acquire(final Priority priority) {
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (getQueuedCalls() >= maxQueued) {
+                queueRejections.increment();
+                return CompletableFuture.failedFuture(new CallRejectedException(
+                        String.format("Too many calls to %s are queued", name)));
+            }
+            if (!breaker.tryAcquire()) {
+                circuitRejections.increment();
+                return CompletableFuture.failedFuture(new CallRejectedException(
+                        String.format("Circuit to %s is open", name)));
+            }
+            waiting.get(priority).add(permit);
+        }
+        drain();
+        return permit;
+    }
+
+    /**
+     * Completes @param result with @param attempt's value if it succeeds, or
+     * its failure if it was the last of the copies racing to complete it.
+     */
+    private static <T> void race(final CompletableFuture<T> attempt,
+                                 final CompletableFuture<T> result,
+                                 final AtomicInteger outstanding) {
+        attempt.whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.complete(value);
+            }
+            else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        });
+        // the losing copy is cancelled
+        result.whenComplete((value, ex) -> attempt.cancel(true));
+    }
+
+    /**
+     * Ends a call that failed with @param ex, or succeeded if it's null.
+     */
+    private void release(final Throwable ex, final long latencyMillis) {
+        if (ex == null) {
+            limit.onSuccess(latencyMillis);
+        }
+        else if (UpstreamException.isOverload(ex)) {
+            limit.onOverload();
+        }
+        else {
+            limit.onIgnore(latencyMillis);
+        }
+        if (ex == null) {
+            hedging.ifPresent(h -> h.record(latencyMillis));
+        }
+        (ex == null ? succeeded : UpstreamException.isOverload(ex) ? overloaded : failed)
+                .record(latencyMillis, TimeUnit.MILLISECONDS);
+        breaker.onResult(ex != null && UpstreamException.isUnavailable(ex), latencyMillis);
+        synchronized (this) {
+            activeCalls--;
+        }
+        drain();
+    }
+
+    /**
+     * Ends a call that was allowed to start but never made.
+     */
+    private void cancel() {
+        breaker.onCancelled();
+        synchronized (this) {
+            activeCalls--;
+        }
+        drain();
+    }
+
+    /**
+     * Starts as many queued calls as the limit and bucket allow, waking up
+     * again when the bucket next has a token if calls are left waiting for one.
+     */
+    private void drain() {
+        while (true) {
+            final CompletableFuture<Void> next;
+            synchronized (this) {
+                final Queue<CompletableFuture<Void>> queue = nextQueue();
+                if (queue == null) {
+                    return;
+                }
+                final long waitNanos = bucket.tryTake();
+                if (waitNanos > 0) {
+                    if (!drainScheduled) {
+                        drainScheduled = true;
+                        scheduler.schedule(() -> {
+                            synchronized (this) {
+                                drainScheduled = false;
+                            }
+                            drain();
+                        }, waitNanos, TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+                next = queue.poll();
+                activeCalls++;
+            }
+            // Granted outside the lock, as blocked callers wake up to make their call. Calls made through
+            // submit() start on the callback executor. A cancelled waiter hands its permit back
+            if (!next.complete(null)) {
+                breaker.onCancelled();
+                synchronized (this) {
+                    activeCalls--;
+                }
+            }
+        }
+    }
+
+    private Queue<CompletableFuture<Void>> nextQueue() {
+        final int currentLimit = limit.getLimit();
+        final Queue<CompletableFuture<Void>> interactive = waiting.get(Priority.INTERACTIVE);
+        if (!interactive.isEmpty()) {
+            return activeCalls < currentLimit ? interactive : null;
+        }
+        final Queue<CompletableFuture<Void>> background = waiting.get(Priority.BACKGROUND);
+        final int backgroundLimit = Math.max(1, (int) (currentLimit * backgroundShare));
+        return !background.isEmpty() && activeCalls < backgroundLimit ? background : null;
+    }
+
+    private Timer callTimer(final MeterRegistry registry, final String outcome) {
+        return PipelineMetrics.timerBuilder("upstream.calls", "Time taken by calls, by outcome")
+                .tag("endpoint", name)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private Counter rejectionCounter(final MeterRegistry registry, final String reason) {
+        return Counter.builder("upstream.rejections")
+                .tag("endpoint", name)
+                .tag("reason", reason)
+                .description("Calls failed straight away, as the circuit was open or the queue full")
+                .register(registry);
+    }
+
+    private static long elapsedMillis(final long startedAtNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+    }
+}
@@ -0,0 +1,14 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+/**
+ * A call that wasn't made because the circuit to its upstream is open, or
+ * because its bulkhead had no room left to queue it.
+ */
+public class CallRejectedException extends UpstreamException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CallRejectedException(final String message) {
+        super(message, false);
+    }
+}
@@ -0,0 +1,157 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stops calling an upstream endpoint that is failing or slow, so that its
+ * callers fail fast instead of waiting on it.
+ *
+ * The outcomes of the last @param windowSize calls are kept. Once at least
+ * half the window has been filled, the circuit opens if @param failureRate
+ * of them failed, or @param slowCallRate took longer than
+ * @param slowCallMillis. After @param openMillis it half opens, letting
+ * @param halfOpenCalls calls through to probe the upstream: it closes again
+ * if they all succeed in time, and reopens otherwise.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final double failureRate;
+    private final long slowCallMillis;
+    private final double slowCallRate;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    // Ring of the outcomes of the last windowSize calls
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    public CircuitBreaker(final String name,
+                          final int windowSize,
+                          final double failureRate,
+                          final long slowCallMillis,
+                          final double slowCallRate,
+                          final long openMillis,
+                          final int halfOpenCalls) {
+        this.name = name;
+        this.windowSize = Math.max(1, windowSize);
+        this.failureRate = failureRate;
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRate = slowCallRate;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.failed = new boolean[this.windowSize];
+        this.slow = new boolean[this.windowSize];
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            transition(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * Returns whether a call may be made now. A call allowed must then be
+     * reported through onResult() or onCancelled().
+     */
+    public synchronized boolean tryAcquire() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probesStarted < halfOpenCalls) {
+                    probesStarted++;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onResult(final boolean callFailed, final long latencyMillis) {
+        final boolean callSlow = latencyMillis > slowCallMillis;
+        if (state == State.HALF_OPEN) {
+            if (callFailed || callSlow) {
+                transition(State.OPEN);
+            }
+            else if (++probesSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a call started before the circuit opened
+            return;
+        }
+        record(callFailed, callSlow);
+        if (calls >= (windowSize + 1) / 2
+                && (failures >= failureRate * calls || slowCalls >= slowCallRate * calls)) {
+            logger.warn("Opening circuit to {} after {} failed and {} slow of the last {} calls",
+                    name, failures, slowCalls, calls);
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * Hands back a call allowed by tryAcquire() that was never made.
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN && probesStarted > probesSucceeded) {
+            probesStarted--;
+        }
+    }
+
+    private void record(final boolean callFailed, final boolean callSlow) {
+        if (calls == windowSize) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        }
+        else {
+            calls++;
+        }
+        failed[next] = callFailed;
+        slow[next] = callSlow;
+        failures += callFailed ? 1 : 0;
+        slowCalls += callSlow ? 1 : 0;
+        next = (next + 1) % windowSize;
+    }
+
+    private void transition(final State to) {
+        if (to != State.OPEN || state != State.CLOSED) {
+            logger.info("Circuit to {} is now {}", name, to);
+        }
+        state = to;
+        if (to == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        else if (to == State.HALF_OPEN) {
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+        else {
+            calls = 0;
+            failures = 0;
+            slowCalls = 0;
+            next = 0;
+        }
+    }
+}
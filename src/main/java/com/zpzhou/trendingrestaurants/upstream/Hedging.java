@@ -0,0 +1,58 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import java.util.Optional;
+
+/**
+ * When to hedge a call to an upstream endpoint: once it has been in flight
+ * longer than the @param percentile of the endpoint's recent latencies, and
+ * only as often as a budget allows, which @param maxRatio of the calls made
+ * add to, so that hedges add at most that share of calls.
+ */
+public class Hedging {
+
+    // Latencies recorded before hedging starts, and the weight of history the histogram keeps
+    private static final int MIN_SAMPLES = 50;
+    private static final int DECAY_INTERVAL = 1000;
+    // Hedges that may be sent back to back after a quiet spell
+    private static final double MAX_BUDGET = 10;
+
+    private final double percentile;
+    private final double maxRatio;
+    private final LatencyHistogram latencies = new LatencyHistogram(DECAY_INTERVAL);
+    private double budget;
+
+    public Hedging(final double percentile, final double maxRatio) {
+        this.percentile = percentile;
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Records the @param latencyMillis of a successful call, or how long a
+     * cancelled one had been in flight, as it would have taken at least that.
+     */
+    public void record(final long latencyMillis) {
+        latencies.record(latencyMillis);
+    }
+
+    /**
+     * Returns how long after it starts a call should be hedged, if enough
+     * latencies have been recorded to tell.
+     */
+    public Optional<Long> getDelayMillis() {
+        return latencies.getCount() >= MIN_SAMPLES
+                ? Optional.of(latencies.getPercentile(percentile))
+                : Optional.empty();
+    }
+
+    public synchronized void onCall() {
+        budget = Math.min(MAX_BUDGET, budget + maxRatio);
+    }
+
+    public synchronized boolean tryHedge() {
+        if (budget >= 1) {
+            budget--;
+            return true;
+        }
+        return false;
+    }
+}
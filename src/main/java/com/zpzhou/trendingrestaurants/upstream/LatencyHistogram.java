@@ -0,0 +1,91 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estimates percentiles of the recent latencies of an upstream endpoint
+ * online, in constant space.
+ *
+ * Latencies are counted in buckets whose bounds grow by a fifth from 1ms to
+ * a minute, so an estimate is at most a fifth above the true value. Every
+ * @param decayInterval latencies recorded, the counts are halved, so older
+ * latencies weigh less and the estimates follow the endpoint as it changes.
+ */
+public class LatencyHistogram {
+
+    private static final double BUCKET_GROWTH = 1.2;
+    private static final long MAX_MILLIS = 60_000;
+    // Upper bounds of the buckets, in millis
+    private static final long[] BOUNDS = bounds();
+
+    private final int decayInterval;
+    private final long[] counts = new long[BOUNDS.length];
+    private long total;
+    private int sinceDecay;
+
+    public LatencyHistogram(final int decayInterval) {
+        this.decayInterval = decayInterval;
+    }
+
+    public synchronized void record(final long latencyMillis) {
+        counts[bucketOf(latencyMillis)]++;
+        total++;
+        if (++sinceDecay >= decayInterval) {
+            total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] /= 2;
+                total += counts[i];
+            }
+            sinceDecay = 0;
+        }
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Returns the latency that @param quantile of recent calls took no longer
+     * than, rounded up to the bucket it falls in.
+     */
+    public synchronized long getPercentile(final double quantile) {
+        final double rank = quantile * total;
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank && cumulative > 0) {
+                return BOUNDS[i];
+            }
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+
+    private static int bucketOf(final long latencyMillis) {
+        int low = 0;
+        int high = BOUNDS.length - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (BOUNDS[mid] >= latencyMillis) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static long[] bounds() {
+        final List<Long> bounds = new ArrayList<>();
+        double bound = 1;
+        while (bound < MAX_MILLIS) {
+            if (bounds.isEmpty() || (long) Math.ceil(bound) > bounds.get(bounds.size() - 1)) {
+                bounds.add((long) Math.ceil(bound));
+            }
+            bound *= BUCKET_GROWTH;
+        }
+        bounds.add(MAX_MILLIS);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,34 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * How urgently an upstream call is needed. Calls made on behalf of a waiting
+ * client are INTERACTIVE and go ahead of queued BACKGROUND calls, which keep
+ * caches warm and may only use part of an endpoint's concurrency.
+ *
+ * A thread's calls are INTERACTIVE unless it was created by
+ * BACKGROUND.threadFactory().
+ */
+public enum Priority {
+    INTERACTIVE,
+    BACKGROUND;
+
+    private static final ThreadLocal<Priority> current = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    public static Priority current() {
+        return current.get();
+    }
+
+    /**
+     * Creates threads whose upstream calls are made at this priority.
+     */
+    public ThreadFactory threadFactory() {
+        final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        return runnable -> threadFactory.newThread(() -> {
+            current.set(this);
+            runnable.run();
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces calls to an upstream endpoint to its quota: tokens accrue at
+ * @param ratePerSecond up to @param burst, and each call takes one.
+ *
+ * The upstream's own account of the calls it will still allow, eg. from
+ * rate limit headers, can lower the tokens available or pause the bucket
+ * until its quota resets.
+ */
+public class TokenBucket {
+
+    // Bounds pauses, should an upstream report a reset time far in the future
+    private static final long MAX_PAUSE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+    private long pausedUntilMillis;
+
+    public TokenBucket(final double ratePerSecond, final double burst) {
+        this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if one is available, returning zero, or otherwise returns
+     * the nanoseconds until one will be.
+     */
+    public synchronized long tryTake() {
+        final long pausedMillis = pausedUntilMillis - System.currentTimeMillis();
+        if (pausedMillis > 0) {
+            return TimeUnit.MILLISECONDS.toNanos(pausedMillis);
+        }
+        refill();
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerNano));
+    }
+
+    /**
+     * Allows no more than the @param remaining calls the upstream reports it
+     * will accept before @param resetAtMillis, pausing until then if none remain.
+     */
+    public synchronized void limitTo(final int remaining, final long resetAtMillis) {
+        refill();
+        tokens = Math.min(tokens, Math.max(0, remaining));
+        if (remaining <= 0) {
+            pauseUntil(resetAtMillis);
+        }
+    }
+
+    public synchronized void pauseUntil(final long resetAtMillis) {
+        final long now = System.currentTimeMillis();
+        pausedUntilMillis = Math.max(pausedUntilMillis, Math.min(resetAtMillis, now + MAX_PAUSE_MILLIS));
+        // One call may go ahead once the quota resets, and more accrue from then
+        tokens = 1;
+        refilledAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, pausedUntilMillis - now));
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        if (now > refilledAt) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A failed upstream call. It is overloaded if the upstream turned the call
+ * away for being over its rate limit or quota, failed with a server error,
+ * or timed out, any of which more calls would only make worse.
+ */
+public class UpstreamException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean overloaded;
+
+    public UpstreamException(final String message, final boolean overloaded) {
+        super(message);
+        this.overloaded = overloaded;
+    }
+
+    public UpstreamException(final String message, final boolean overloaded, final Throwable cause) {
+        super(message, cause);
+        this.overloaded = overloaded;
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public static boolean isOverload(final Throwable ex) {
+        final Throwable cause = unwrap(ex);
+        if (cause instanceof UpstreamException) {
+            return ((UpstreamException) cause).isOverloaded();
+        }
+        return cause instanceof InterruptedIOException;
+    }
+
+    /**
+     * Whether @param ex shows the upstream to be unhealthy: overloaded, or
+     * unreachable, as opposed to rejecting the particular call.
+     */
+    public static boolean isUnavailable(final Throwable ex) {
+        return isOverload(ex) || unwrap(ex) instanceof IOException;
+    }
+
+    public static boolean isRejected(final Throwable ex) {
+        return unwrap(ex) instanceof CallRejectedException;
+    }
+
+    private static Throwable unwrap(final Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,146 @@
+package com.zpzhou.trendingrestaurants.controllers;
+
+import com.zpzhou.trendingrestaurants.controllers.cache.ExpiringCache;
+import com.zpzhou.trendingrestaurants.controllers.cache.SingleFlight;
+import com.zpzhou.trendingrestaurants.controllers.cache.TrendsPrewarmer;
+import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.TrendsList;
+import com.zpzhou.trendingrestaurants.model.TrendsQuery;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TrendsControllerTest {
+
+    private static final String PLACE = "Toronto";
+    private static final long REQUEST_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExpiringCache<String, TrendsList> cache = new ExpiringCache<>(scheduler, executor,
+            100, TimeUnit.MINUTES.toMillis(1), 0);
+    private final TrendsHandler trendsHandler = mock(TrendsHandler.class);
+    private final TrendsController controller = new TrendsController(trendsHandler, cache, new SingleFlight<>(),
+            mock(TrendsPrewarmer.class), executor, 10, 5);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void computesMissUnderHandlerDeadline() throws Exception {
+        when(trendsHandler.getRequestTimeoutMillis()).thenReturn(REQUEST_TIMEOUT_MILLIS);
+        when(trendsHandler.handleGet(eq(PLACE), eq(TimeFrame.ONE_DAY), anyLong())).thenReturn(trends(false));
+
+        assertEquals(trends(false), controller.getTrends(PLACE, TimeFrame.ONE_DAY.toString(), null, null));
+        verify(trendsHandler).handleGet(PLACE, TimeFrame.ONE_DAY, REQUEST_TIMEOUT_MILLIS);
+        assertEquals(Optional.of(trends(false)), cache.get(key()));
+    }
+
+    @Test
+    void doesNotCacheTrendsCutShortByClientDeadline() throws Exception {
+        when(trendsHandler.getRequestTimeoutMillis()).thenReturn(REQUEST_TIMEOUT_MILLIS);
+        when(trendsHandler.handleGet(eq(PLACE), eq(TimeFrame.ONE_DAY), anyLong())).thenReturn(trends(false));
+
+        assertEquals(trends(false), controller.getTrends(PLACE, TimeFrame.ONE_DAY.toString(), null, 100L));
+        verify(trendsHandler).handleGet(PLACE, TimeFrame.ONE_DAY, 100L);
+        assertTrue(cache.get(key()).isEmpty());
+    }
+
+    @Test
+    void cachesCompleteTrendsFoundWithinClientDeadline() throws Exception {
+        when(trendsHandler.getRequestTimeoutMillis()).thenReturn(REQUEST_TIMEOUT_MILLIS);
+        when(trendsHandler.handleGet(eq(PLACE), eq(TimeFrame.ONE_DAY), anyLong())).thenReturn(trends(true));
+
+        controller.getTrends(PLACE, TimeFrame.ONE_DAY.toString(), null, 100L);
+        assertEquals(Optional.of(trends(true)), cache.get(key()));
+    }
+
+    @Test
+    void rejectsInvalidTimeFrameAndDeadline() {
+        when(trendsHandler.getRequestTimeoutMillis()).thenReturn(REQUEST_TIMEOUT_MILLIS);
+
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(HttpClientErrorException.class,
+                () -> controller.getTrends(PLACE, "fortnight", null, null)).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(HttpClientErrorException.class,
+                () -> controller.getTrends(PLACE, TimeFrame.ONE_DAY.toString(), null, 0L)).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(HttpClientErrorException.class,
+                () -> controller.getTrendsBatch(List.of(new TrendsQuery(PLACE, "fortnight")), null))
+                .getStatusCode());
+    }
+
+    @Test
+    void turnsRequestsAwayWhenSearchesCannotBeQueued() {
+        when(trendsHandler.getRequestTimeoutMillis()).thenReturn(REQUEST_TIMEOUT_MILLIS);
+        final ExecutorService rejecting = Executors.newSingleThreadExecutor();
+        rejecting.shutdown();
+        final TrendsController busy = new TrendsController(trendsHandler, cache, new SingleFlight<>(),
+                mock(TrendsPrewarmer.class), rejecting, 10, 5);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, assertThrows(HttpServerErrorException.class,
+                () -> busy.getTrendsBatch(List.of(new TrendsQuery(PLACE, TimeFrame.ONE_DAY.toString())), null))
+                .getStatusCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, assertThrows(HttpServerErrorException.class,
+                () -> busy.streamTrends(PLACE, TimeFrame.ONE_DAY.toString(), null, null))
+                .getStatusCode());
+    }
+
+    @Test
+    void skipsSearchesQueuedPastTheirDeadline() throws Exception {
+        when(trendsHandler.getRequestTimeoutMillis()).thenReturn(REQUEST_TIMEOUT_MILLIS);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            }
+            catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        controller.getTrendsBatch(List.of(new TrendsQuery(PLACE, TimeFrame.ONE_DAY.toString())), 1L);
+        controller.streamTrends(PLACE, TimeFrame.ONE_DAY.toString(), null, 1L);
+        Thread.sleep(10);
+        release.countDown();
+        executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+        verify(trendsHandler, never()).handleGetAll(anyMap(), anyLong(), any());
+        verify(trendsHandler, never()).handleStream(anyString(), any(), anyLong(), any());
+        assertTrue(cache.get(key()).isEmpty());
+    }
+
+    private static TrendsList trends(final boolean complete) {
+        return new TrendsList(0, new DateTime(0), TimeFrame.ONE_DAY, List.of(), 10, 10, complete);
+    }
+
+    private static String key() {
+        return TrendsController.buildCacheKey(PLACE, TimeFrame.ONE_DAY.toString());
+    }
+}
@@ -0,0 +1,133 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringCacheTest {
+
+    private static final long TTL_MILLIS = 50;
+    private static final long STALE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long PURGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Refreshes only run when the test runs them
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final Executor refreshExecutor = refreshes::add;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void servesValueUntilItExpires() throws InterruptedException {
+        final ExpiringCache<String, String> cache = cache(100, 0);
+        cache.put("key", "value");
+
+        assertEquals(Optional.of("value"), cache.get("key"));
+        Thread.sleep(TTL_MILLIS * 2);
+        assertEquals(Optional.empty(), cache.get("key"));
+        assertEquals(Optional.empty(), cache.get("key", () -> "refreshed"));
+        assertTrue(refreshes.isEmpty());
+
+        final CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    void honoursPerEntryTimeToLive() throws InterruptedException {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>(scheduler, refreshExecutor, 100,
+                PURGE_MILLIS, value -> value.equals("short") ? TTL_MILLIS : STALE_MILLIS, 0);
+        cache.put("short-lived", "short");
+        cache.put("long-lived", "long");
+
+        Thread.sleep(TTL_MILLIS * 2);
+        assertEquals(Optional.empty(), cache.get("short-lived"));
+        assertEquals(Optional.of("long"), cache.get("long-lived"));
+        assertTrue(cache.timeToExpiry("short-lived").get() < 0);
+        assertTrue(cache.timeToExpiry("long-lived").get() > 0);
+        assertEquals(Optional.empty(), cache.timeToExpiry("missing"));
+    }
+
+    @Test
+    void doesNotCacheValuesWithoutTimeToLive() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>(scheduler, refreshExecutor, 100,
+                PURGE_MILLIS, value -> value.isEmpty() ? 0 : TTL_MILLIS, STALE_MILLIS);
+        cache.put("pizza", "");
+
+        assertEquals(Optional.empty(), cache.get("pizza", () -> "refreshed"));
+        assertEquals(Optional.empty(), cache.timeToExpiry("pizza"));
+    }
+
+    @Test
+    void servesStaleValueWhileRefreshing() throws InterruptedException {
+        final ExpiringCache<String, String> cache = cache(100, STALE_MILLIS);
+        cache.put("key", "stale");
+        Thread.sleep(TTL_MILLIS * 2);
+
+        // Without a refresher a stale value is a miss
+        assertEquals(Optional.empty(), cache.get("key"));
+        assertEquals(Optional.of("stale"), cache.get("key", () -> "fresh"));
+        assertEquals(Optional.of("stale"), cache.get("key", () -> "fresh"));
+        assertEquals(1, refreshes.size(), "a refresh already scheduled isn't scheduled again");
+
+        refreshes.remove(0).run();
+        assertEquals(Optional.of("fresh"), cache.get("key"));
+
+        final CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getStaleHits());
+        assertEquals(1, stats.getRefreshes());
+    }
+
+    @Test
+    void keepsStaleValueWhenRefreshFails() throws InterruptedException {
+        final ExpiringCache<String, String> cache = cache(100, STALE_MILLIS);
+        cache.put("key", "stale");
+        Thread.sleep(TTL_MILLIS * 2);
+
+        assertEquals(Optional.of("stale"), cache.get("key", () -> {
+            throw new IllegalStateException("upstream failed");
+        }));
+        refreshes.remove(0).run();
+        assertEquals(1, cache.getStats().getRefreshFailures());
+
+        // and a later stale hit may try again
+        assertEquals(Optional.of("stale"), cache.get("key", () -> "fresh"));
+        refreshes.remove(0).run();
+        assertEquals(Optional.of("fresh"), cache.get("key"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntryOfFullSegment() {
+        // Two entries per segment, and keys a multiple of 16 apart share one
+        final ExpiringCache<Integer, String> cache = new ExpiringCache<>(scheduler, refreshExecutor, 32,
+                STALE_MILLIS, 0);
+        cache.put(0, "zero");
+        cache.put(16, "sixteen");
+        cache.get(0);
+        cache.put(32, "thirty-two");
+
+        assertEquals(Optional.of("zero"), cache.get(0));
+        assertEquals(Optional.empty(), cache.get(16));
+        assertEquals(Optional.of("thirty-two"), cache.get(32));
+        assertEquals(1, cache.getStats().getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    private ExpiringCache<String, String> cache(final long capacity, final long staleMillis) {
+        return new ExpiringCache<>(scheduler, refreshExecutor, capacity, PURGE_MILLIS,
+                value -> TTL_MILLIS, staleMillis);
+    }
+}
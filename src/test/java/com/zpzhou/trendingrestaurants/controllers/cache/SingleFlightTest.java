@@ -0,0 +1,108 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallsShareOneComputation() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "value";
+                })));
+            }
+            awaitInFlight();
+            // Give every caller time to join the computation before it completes
+            Thread.sleep(100);
+            release.countDown();
+
+            for (final Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, singleFlight.inFlightCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failureIsSharedWithJoinedCallers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final IllegalStateException failure = new IllegalStateException("upstream failed");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+                release.await();
+                throw failure;
+            }));
+            awaitInFlight();
+            final Future<String> joined = executor.submit(() -> singleFlight.execute("key", () -> "unused"));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (final Future<String> result : List.of(first, joined)) {
+                final ExecutionException ex = assertThrows(ExecutionException.class,
+                        () -> result.get(5, TimeUnit.SECONDS));
+                assertSame(failure, rootCause(ex));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void completedKeyIsComputedAgain() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        assertEquals("1", singleFlight.execute("key", () -> String.valueOf(loads.incrementAndGet())));
+        assertEquals("2", singleFlight.execute("key", () -> String.valueOf(loads.incrementAndGet())));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void differentKeysAreNotCoalesced() throws Exception {
+        // Joining the computation of "a" from within it would never complete
+        assertEquals("b", singleFlight.execute("a", () -> singleFlight.execute("b", () -> "b")));
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        while (singleFlight.inFlightCount() == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static Throwable rootCause(final Throwable ex) {
+        Throwable cause = ex;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
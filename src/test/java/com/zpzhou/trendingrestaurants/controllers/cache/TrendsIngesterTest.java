@@ -0,0 +1,75 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.TrendsList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class TrendsIngesterTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExpiringCache<String, TrendsList> cache = new ExpiringCache<>(scheduler, executor,
+            100, TimeUnit.MINUTES.toMillis(1), 0);
+    private final TrendsHandler trendsHandler = mock(TrendsHandler.class);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void ingestsEveryPlaceDespiteFailures() throws Exception {
+        doThrow(new IllegalStateException("upstream down"))
+                .when(trendsHandler).handleGetAll(eq(places("Toronto")), anyLong(), any());
+
+        new TrendsIngester(scheduler, executor, trendsHandler, cache, List.of("Toronto", "Ottawa"),
+                TimeUnit.MINUTES.toMillis(1));
+
+        verify(trendsHandler, timeout(5000)).handleGetAll(eq(places("Ottawa")), anyLong(), any());
+    }
+
+    @Test
+    void endsRunWhenInterrupted() throws Exception {
+        doThrow(new InterruptedException())
+                .when(trendsHandler).handleGetAll(eq(places("Toronto")), anyLong(), any());
+
+        new TrendsIngester(scheduler, executor, trendsHandler, cache, List.of("Toronto", "Ottawa"),
+                TimeUnit.MINUTES.toMillis(1));
+
+        verify(trendsHandler, timeout(5000)).handleGetAll(eq(places("Toronto")), anyLong(), any());
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        verify(trendsHandler, never()).handleGetAll(eq(places("Ottawa")), anyLong(), any());
+    }
+
+    @Test
+    void parsesPlacesSeparatedBySemicolons() {
+        assertEquals(List.of("Toronto, ON", "Ottawa"), TrendsIngester.parsePlaces(" Toronto, ON ;; Ottawa;"));
+    }
+
+    private static Map<String, Set<TimeFrame>> places(final String place) {
+        return Map.of(place, EnumSet.allOf(TimeFrame.class));
+    }
+}
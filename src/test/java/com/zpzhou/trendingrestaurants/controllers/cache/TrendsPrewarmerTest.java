@@ -0,0 +1,78 @@
+package com.zpzhou.trendingrestaurants.controllers.cache;
+
+import com.zpzhou.trendingrestaurants.controllers.TrendsController;
+import com.zpzhou.trendingrestaurants.handlers.TrendsHandler;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.TrendsList;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TrendsPrewarmerTest {
+
+    private static final long INTERVAL_MILLIS = 200;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final ExecutorService refreshExecutor = Executors.newCachedThreadPool();
+    private final ExpiringCache<String, TrendsList> cache = new ExpiringCache<>(scheduler, refreshExecutor,
+            100, TimeUnit.MINUTES.toMillis(1), 0);
+    private final TrendsHandler trendsHandler = mock(TrendsHandler.class);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    @Test
+    void refreshesEveryHotKeyOneAtATime() throws Exception {
+        when(trendsHandler.handleGet(anyString(), any(TimeFrame.class))).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                // Longer than the uncached keys are staggered by, so later ones queue for the permit
+                Thread.sleep(INTERVAL_MILLIS / 2);
+                return new TrendsList(0, DateTime.now(), invocation.getArgument(1), List.of(), 0, 0, true);
+            }
+            finally {
+                running.decrementAndGet();
+            }
+        });
+        // Requested once, so only hot until the next run: keys skipped then would never be refreshed
+        final TrendsPrewarmer prewarmer = new TrendsPrewarmer(scheduler, refreshExecutor, trendsHandler, cache,
+                new SingleFlight<>(), 10, 1, INTERVAL_MILLIS);
+
+        final List<String> places = List.of("Toronto", "Ottawa", "Montreal", "Vancouver");
+        for (final String place : places) {
+            prewarmer.recordRequest(key(place), place, TimeFrame.ONE_DAY);
+        }
+
+        final long deadline = System.currentTimeMillis() + INTERVAL_MILLIS * 10;
+        while (cache.size() < places.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (final String place : places) {
+            assertTrue(cache.get(key(place)).isPresent(), place + " was pre-warmed");
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    private static String key(final String place) {
+        return TrendsController.buildCacheKey(place, TimeFrame.ONE_DAY.toString());
+    }
+}
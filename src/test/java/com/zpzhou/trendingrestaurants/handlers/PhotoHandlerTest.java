@@ -0,0 +1,123 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.ImageResult;
+import com.zpzhou.trendingrestaurants.controllers.cache.SingleFlight;
+import com.zpzhou.trendingrestaurants.search.places.CachedPhoto;
+import com.zpzhou.trendingrestaurants.search.places.GoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.PhotoCache;
+import com.zpzhou.trendingrestaurants.search.places.PhotoResizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PhotoHandlerTest {
+
+    private static final int[] SIZES = {100, 200, 400};
+
+    @TempDir
+    Path directory;
+
+    private final ExecutorService resizeExecutor = Executors.newSingleThreadExecutor();
+    private final GoogleMapsAPIWrapper mapsAPIWrapper = mock(GoogleMapsAPIWrapper.class);
+    private PhotoHandler photoHandler;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        photoHandler = new PhotoHandler(mapsAPIWrapper, new PhotoCache(directory, 1 << 20, 1 << 20),
+                new PhotoResizer(resizeExecutor), new SingleFlight<>(), SIZES);
+    }
+
+    @AfterEach
+    void tearDown() {
+        resizeExecutor.shutdownNow();
+    }
+
+    @Test
+    void servesOriginalForLargestSizeWithoutStoringItAgain() throws IOException {
+        final byte[] original = image(BufferedImage.TYPE_INT_ARGB, "png");
+        respondWith(original, "image/png");
+
+        assertArrayEquals(original, read(photoHandler.getPhoto("ref", Optional.of(400), Optional.empty()).get()));
+        assertArrayEquals(original, read(photoHandler.getPhoto("ref", Optional.of(1000), Optional.of(400)).get()));
+        assertEquals(1, countFiles());
+        verify(mapsAPIWrapper, times(1)).getPlacePhoto(anyString(), any(), any());
+    }
+
+    @Test
+    void scalesSmallerSizesFromOriginal() throws IOException {
+        respondWith(image(BufferedImage.TYPE_INT_RGB, "jpeg"), "image/jpeg");
+
+        final CachedPhoto photo = photoHandler.getPhoto("ref", Optional.of(150), Optional.empty()).get();
+        final BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(read(photo)));
+        assertEquals(200, scaled.getWidth());
+        assertEquals(2, countFiles());
+        verify(mapsAPIWrapper, times(1)).getPlacePhoto(anyString(), any(), any());
+    }
+
+    @Test
+    void passesGifsThroughUnchanged() throws IOException {
+        final byte[] original = image(BufferedImage.TYPE_BYTE_INDEXED, "gif");
+        respondWith(original, "image/gif");
+
+        final CachedPhoto photo = photoHandler.getPhoto("ref", Optional.of(100), Optional.empty()).get();
+        assertEquals("image/gif", photo.getContentType());
+        assertArrayEquals(original, read(photo));
+    }
+
+    @Test
+    void derivesEtagFromReferenceAndSize() {
+        assertEquals(photoHandler.getEtag("ref", Optional.of(150), Optional.empty()),
+                photoHandler.getEtag("ref", Optional.of(200), Optional.empty()));
+        assertNotEquals(photoHandler.getEtag("ref", Optional.of(100), Optional.empty()),
+                photoHandler.getEtag("ref", Optional.of(200), Optional.empty()));
+        assertNotEquals(photoHandler.getEtag("ref", Optional.of(100), Optional.empty()),
+                photoHandler.getEtag("other", Optional.of(100), Optional.empty()));
+    }
+
+    private void respondWith(final byte[] data, final String contentType) {
+        when(mapsAPIWrapper.getPlacePhoto(anyString(), any(), any()))
+                .thenReturn(Optional.of(new ImageResult(contentType, data)));
+    }
+
+    private long countFiles() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] image(final int type, final String format) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, type), format, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] read(final CachedPhoto photo) throws IOException {
+        try (final InputStream inputStream = photo.getResource().getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
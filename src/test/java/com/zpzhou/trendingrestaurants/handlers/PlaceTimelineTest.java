@@ -0,0 +1,138 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.model.Trend;
+import com.zpzhou.trendingrestaurants.model.TweetRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaceTimelineTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    // An hour boundary
+    private static final long T0 = 1000 * HOUR;
+
+    @Test
+    void startsEmptyAndExtendsCoverageOverSearchedIntervals() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        assertTrue(timeline.isEmpty());
+
+        timeline.extendCoverage(T0, T0 + 2 * HOUR);
+        assertFalse(timeline.isEmpty());
+        assertEquals(T0, timeline.getCoveredFrom());
+        assertEquals(T0 + 2 * HOUR, timeline.getWatermark());
+
+        // A gap searched after the watermark, then one before the start of coverage
+        timeline.extendCoverage(T0 + 2 * HOUR, T0 + 3 * HOUR);
+        timeline.extendCoverage(T0 - HOUR, T0);
+        assertEquals(T0 - HOUR, timeline.getCoveredFrom());
+        assertEquals(T0 + 3 * HOUR, timeline.getWatermark());
+    }
+
+    @Test
+    void sumsBucketsIntoRankedTrends() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        timeline.ingest(tweet(T0 + MINUTE, 5, 1), details("ramen"));
+        timeline.ingest(tweet(T0 + HOUR + MINUTE, 0, 0), details("ramen"));
+        timeline.ingest(tweet(T0 + 2 * HOUR, 9, 9), details("pizza"));
+
+        final List<Trend> trends = timeline.getTrends(T0, 10);
+        assertEquals(List.of("ramen", "pizza"), placeIds(trends));
+        assertEquals(2, trends.get(0).getTotalTweets());
+        assertEquals(5, trends.get(0).getTotalRetweets());
+        assertEquals(1, trends.get(0).getTotalFavorites());
+        assertEquals(List.of("ramen"), placeIds(timeline.getTrends(T0, 1)));
+    }
+
+    @Test
+    void roundsTheStartOfTheWindowOutToItsHour() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        timeline.ingest(tweet(T0 + 10 * MINUTE, 0, 0), details("ramen"));
+        timeline.ingest(tweet(T0 - MINUTE, 0, 0), details("pizza"));
+
+        // From half past, the whole of the hour's bucket is counted, but not the hour before
+        assertEquals(List.of("ramen"), placeIds(timeline.getTrends(T0 + 30 * MINUTE, 10)));
+        assertEquals(List.of(), placeIds(timeline.getTrends(T0 + HOUR, 10)));
+    }
+
+    @Test
+    void countsOverlayWithoutIngestingIt() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        timeline.ingest(tweet(T0, 0, 0), details("ramen"));
+        final PlaceTimeline overlay = new PlaceTimeline();
+        overlay.ingest(tweet(T0, 0, 0), details("pizza"));
+        overlay.ingest(tweet(T0 + MINUTE, 0, 0), details("pizza"));
+
+        assertEquals(List.of("pizza", "ramen"), placeIds(timeline.getTrends(T0, 10, overlay)));
+        assertEquals(List.of("ramen"), placeIds(timeline.getTrends(T0, 10)));
+    }
+
+    @Test
+    void addsTheBucketsOfAnotherTimeline() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        timeline.ingest(tweet(T0, 0, 0), details("ramen"));
+        final PlaceTimeline resolved = new PlaceTimeline();
+        resolved.ingest(tweet(T0 + HOUR, 0, 0), details("ramen"));
+        resolved.ingest(tweet(T0 + HOUR, 0, 0), details("pizza"));
+
+        timeline.addAll(resolved);
+        final List<Trend> trends = timeline.getTrends(T0, 10);
+        assertEquals(List.of("ramen", "pizza"), placeIds(trends));
+        assertEquals("Name of pizza", trends.get(1).getDetails().name);
+    }
+
+    @Test
+    void evictsBucketsBeforeCutoffAndRaisesCoverage() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        timeline.ingest(tweet(T0, 0, 0), details("pizza"));
+        timeline.ingest(tweet(T0 + HOUR + MINUTE, 0, 0), details("ramen"));
+        timeline.extendCoverage(T0, T0 + 2 * HOUR);
+
+        timeline.evictBefore(T0 + HOUR + 30 * MINUTE);
+        assertEquals(T0 + HOUR + 30 * MINUTE, timeline.getCoveredFrom());
+        assertEquals(T0 + 2 * HOUR, timeline.getWatermark());
+        // The bucket the cutoff falls in is kept whole
+        assertEquals(List.of("ramen"), placeIds(timeline.getTrends(T0, 10)));
+    }
+
+    @Test
+    void clearsTimelineWithStaleWatermark() {
+        final PlaceTimeline timeline = new PlaceTimeline();
+        timeline.ingest(tweet(T0, 0, 0), details("pizza"));
+        timeline.extendCoverage(T0, T0 + HOUR);
+
+        timeline.clear();
+        assertTrue(timeline.isEmpty());
+        assertEquals(Long.MAX_VALUE, timeline.getCoveredFrom());
+        assertEquals(List.of(), timeline.getTrends(T0, 10));
+
+        // Searched afresh from a later start
+        timeline.extendCoverage(T0 + 5 * HOUR, T0 + 6 * HOUR);
+        assertEquals(T0 + 5 * HOUR, timeline.getCoveredFrom());
+    }
+
+    static TweetRecord tweet(final long createdAtMillis, final int retweets, final int favorites) {
+        return new TweetRecord(createdAtMillis, retweets, favorites, 0, new int[0], Double.NaN, Double.NaN);
+    }
+
+    static PlaceDetails details(final String placeId) {
+        final PlaceDetails details = new PlaceDetails();
+        details.placeId = placeId;
+        details.name = "Name of " + placeId;
+        return details;
+    }
+
+    private static List<String> placeIds(final List<Trend> trends) {
+        return trends.stream()
+                .map(trend -> trend.getDetails().placeId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,122 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.gson.Gson;
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.search.places.CachingGoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.DiskBackedCache;
+import com.zpzhou.trendingrestaurants.store.StoredTweet;
+import com.zpzhou.trendingrestaurants.store.TweetStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PlaceTimelinesTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long T0 = 1000 * HOUR;
+
+    @TempDir
+    Path directory;
+
+    private TweetStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final Gson gson = new Gson();
+        store = new TweetStore(directory, TimeUnit.DAYS.toMillis(1),
+                new DiskBackedCache<>(directory.resolve("place-details.log"), TimeUnit.DAYS.toMillis(1), 10,
+                        details -> CachingGoogleMapsAPIWrapper.encodePlaceDetails(gson, details),
+                        json -> CachingGoogleMapsAPIWrapper.decodePlaceDetails(gson, json)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void evictsLeastRecentlyRequestedOnceReleased() {
+        final PlaceTimelines timelines = new PlaceTimelines(1, Optional.empty());
+        final PlaceTimeline toronto = timelines.acquire("toronto");
+        timelines.release("toronto");
+        assertSame(toronto, timelines.acquire("toronto"));
+        timelines.release("toronto");
+
+        timelines.acquire("montreal");
+        timelines.release("montreal");
+        assertNotSame(toronto, timelines.acquire("toronto"));
+    }
+
+    @Test
+    void keepsTimelinesInUse() {
+        final PlaceTimelines timelines = new PlaceTimelines(1, Optional.empty());
+        final PlaceTimeline toronto = timelines.acquire("toronto");
+        timelines.acquire("montreal");
+        timelines.release("montreal");
+
+        assertSame(toronto, timelines.acquire("toronto"));
+    }
+
+    @Test
+    void restoresStoredTweetsOnlyOnceInUse() {
+        final PlaceTimelines timelines = new PlaceTimelines(1, Optional.of(store));
+        final PlaceDetails kinton = PlaceTimelineTest.details("Kinton");
+        final PlaceTimeline toronto = timelines.acquire("toronto");
+        toronto.ingest(PlaceTimelineTest.tweet(T0, 0, 0), kinton);
+        toronto.extendCoverage(T0, T0 + HOUR);
+        toronto.commit(List.of(new StoredTweet(T0, 0, 0, kinton)));
+
+        // Requested while the first is still ingesting, so shares its timeline rather than restoring another
+        timelines.acquire("montreal");
+        timelines.release("montreal");
+        assertSame(toronto, timelines.acquire("toronto"));
+        timelines.release("toronto");
+        timelines.release("toronto");
+
+        timelines.acquire("montreal");
+        timelines.release("montreal");
+        final PlaceTimeline restored = timelines.acquire("toronto");
+        assertNotSame(toronto, restored);
+        assertEquals(T0, restored.getCoveredFrom());
+        assertEquals(1, restored.getTrends(T0, 10).get(0).getTotalTweets());
+    }
+
+    @Test
+    void concurrentRequestsShareOneTimeline() throws Exception {
+        final PlaceTimelines timelines = new PlaceTimelines(1, Optional.of(store));
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<PlaceTimeline>> acquired = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                acquired.add(executor.submit(() -> {
+                    start.await();
+                    return timelines.acquire("toronto");
+                }));
+            }
+            start.countDown();
+            final PlaceTimeline timeline = acquired.get(0).get(5, TimeUnit.SECONDS);
+            for (final Future<PlaceTimeline> future : acquired) {
+                assertSame(timeline, future.get(5, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
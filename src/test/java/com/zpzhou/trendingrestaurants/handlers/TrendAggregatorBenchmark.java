@@ -0,0 +1,114 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.model.Trend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares aggregating resolved tweets into trends with TrendAggregator
+ * against the map-of-lists approach it replaced.
+ *
+ * Run main() to report throughput along with the allocation rate
+ * (gc.alloc.rate.norm is bytes allocated per aggregation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrendAggregatorBenchmark {
+
+    private static final int LIMIT = 100;
+
+    @Param({"10000", "100000"})
+    private int tweetCount;
+
+    private String[] placeIds;
+    private int[] retweets;
+    private int[] favorites;
+    private Map<String, PlaceDetails> placesById;
+
+    @Setup
+    public void setUp() {
+        // Mentions follow a skewed distribution over a tenth as many places as tweets
+        final Random random = new Random(42);
+        final int placeCount = tweetCount / 10;
+        placeIds = new String[tweetCount];
+        retweets = new int[tweetCount];
+        favorites = new int[tweetCount];
+        placesById = new HashMap<>();
+        for (int i = 0; i < tweetCount; i++) {
+            final int place = (int) (placeCount * Math.pow(random.nextDouble(), 3));
+            placeIds[i] = "place-" + place;
+            retweets[i] = random.nextInt(50);
+            favorites[i] = random.nextInt(200);
+        }
+        for (int place = 0; place < placeCount; place++) {
+            final PlaceDetails details = new PlaceDetails();
+            details.placeId = "place-" + place;
+            placesById.put(details.placeId, details);
+        }
+    }
+
+    @Benchmark
+    public List<Trend> trendAggregator() {
+        final TrendAggregator aggregator = new TrendAggregator();
+        for (int i = 0; i < tweetCount; i++) {
+            aggregator.add(placeIds[i], 1, retweets[i], favorites[i]);
+        }
+        return aggregator.getTopTrends(LIMIT, placesById::get);
+    }
+
+    @Benchmark
+    public List<Trend> mapOfLists() {
+        final Map<String, List<Integer>> tweetsByPlaces = new HashMap<>();
+        for (int i = 0; i < tweetCount; i++) {
+            tweetsByPlaces.computeIfAbsent(placeIds[i], placeId -> new ArrayList<>()).add(i);
+        }
+        return tweetsByPlaces.keySet().stream()
+                .map(placeId -> {
+                    final List<Integer> tweets = tweetsByPlaces.get(placeId);
+                    final int totalRetweets = tweets.stream()
+                            .map(i -> retweets[i])
+                            .reduce(0, Math::addExact);
+                    final int totalFavourites = tweets.stream()
+                            .map(i -> favorites[i])
+                            .reduce(0, Math::addExact);
+                    return new Trend(placesById.get(placeId), tweets.size(), totalRetweets, totalFavourites);
+                })
+                .sorted()
+                .limit(LIMIT)
+                .collect(Collectors.toList());
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TrendAggregatorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
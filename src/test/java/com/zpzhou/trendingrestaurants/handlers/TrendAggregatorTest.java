@@ -0,0 +1,135 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.model.Trend;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrendAggregatorTest {
+
+    // One instance per placeId, as PlaceDetails doesn't define equality
+    private final Map<String, PlaceDetails> detailsById = new HashMap<>();
+    private final Function<String, PlaceDetails> details = placeId -> detailsById.computeIfAbsent(
+            placeId, PlaceTimelineTest::details);
+
+    @Test
+    void sumsCountsPerPlace() {
+        final TrendAggregator aggregator = new TrendAggregator();
+        aggregator.add("ramen", 1, 3, 5);
+        aggregator.add("ramen", 1, 0, 2);
+        aggregator.add("pizza", 1, 1, 1);
+
+        final List<Trend> trends = aggregator.getTopTrends(10, details);
+        assertEquals(2, aggregator.size());
+        assertEquals(new Trend(details.apply("ramen"), 2, 3, 7), trends.get(0));
+        assertEquals(new Trend(details.apply("pizza"), 1, 1, 1), trends.get(1));
+    }
+
+    @Test
+    void breaksTiesByFavouritesThenRetweets() {
+        final TrendAggregator aggregator = new TrendAggregator();
+        aggregator.add("most-retweeted", 1, 9, 1);
+        aggregator.add("most-favourited", 1, 0, 2);
+        aggregator.add("least", 1, 0, 1);
+        aggregator.add("most-tweeted", 2, 0, 0);
+
+        assertEquals(List.of("most-tweeted", "most-favourited", "most-retweeted", "least"),
+                placeIds(aggregator.getTopTrends(10, details)));
+    }
+
+    @Test
+    void cutsOffAtLimit() {
+        final TrendAggregator aggregator = new TrendAggregator();
+        for (int i = 0; i < 10; i++) {
+            aggregator.add("place-" + i, i, 0, 0);
+        }
+
+        assertEquals(List.of("place-9", "place-8", "place-7"), placeIds(aggregator.getTopTrends(3, details)));
+        assertEquals(List.of(), aggregator.getTopTrends(0, details));
+        assertEquals(List.of(), new TrendAggregator().getTopTrends(3, details));
+    }
+
+    @Test
+    void keepsCountsAsTableGrows() {
+        final TrendAggregator aggregator = new TrendAggregator();
+        // Well past the initial capacity, so the table is resized several times
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                aggregator.add("place-" + i, 1, i, 0);
+            }
+        }
+
+        assertEquals(1000, aggregator.size());
+        final List<Trend> trends = aggregator.getTopTrends(1000, details);
+        assertEquals(1000, trends.size());
+        assertEquals(new Trend(details.apply("place-999"), 3, 2997, 0), trends.get(0));
+        assertEquals(new Trend(details.apply("place-0"), 3, 0, 0), trends.get(999));
+    }
+
+    @Test
+    void addsAllOfAnother() {
+        final TrendAggregator aggregator = new TrendAggregator();
+        aggregator.add("ramen", 1, 1, 1);
+        final TrendAggregator other = new TrendAggregator();
+        other.add("ramen", 2, 0, 0);
+        other.add("pizza", 1, 0, 0);
+
+        aggregator.addAll(other);
+        assertEquals(List.of("ramen", "pizza"), placeIds(aggregator.getTopTrends(10, details)));
+        assertEquals(3, aggregator.getTopTrends(1, details).get(0).getTotalTweets());
+    }
+
+    @Test
+    void matchesNaiveRankingOnRandomInput() {
+        final Random random = new Random(7);
+        for (int run = 0; run < 50; run++) {
+            final TrendAggregator aggregator = new TrendAggregator();
+            final Map<String, int[]> naive = new HashMap<>();
+            final int places = 1 + random.nextInt(300);
+            for (int i = 0; i < 2000; i++) {
+                final String placeId = "place-" + random.nextInt(places);
+                // Small counts, so that ties are common
+                final int retweets = random.nextInt(3);
+                final int favorites = random.nextInt(3);
+                aggregator.add(placeId, 1, retweets, favorites);
+                final int[] counts = naive.computeIfAbsent(placeId, id -> new int[3]);
+                counts[0]++;
+                counts[1] += retweets;
+                counts[2] += favorites;
+            }
+            final List<Trend> expected = new ArrayList<>();
+            naive.forEach((placeId, counts) -> expected.add(
+                    new Trend(details.apply(placeId), counts[0], counts[1], counts[2])));
+            expected.sort(Trend::compareTo);
+
+            final int limit = 1 + random.nextInt(20);
+            final List<Trend> actual = aggregator.getTopTrends(limit, details);
+            assertEquals(Math.min(limit, expected.size()), actual.size());
+            for (int i = 0; i < actual.size(); i++) {
+                // Places tied on every count may come in either order, but must rank equal
+                assertEquals(0, expected.get(i).compareTo(actual.get(i)), "rank " + i);
+                assertTrue(naive.containsKey(actual.get(i).getDetails().placeId));
+                final int[] counts = naive.get(actual.get(i).getDetails().placeId);
+                assertEquals(counts[0], actual.get(i).getTotalTweets());
+                assertEquals(counts[1], actual.get(i).getTotalRetweets());
+                assertEquals(counts[2], actual.get(i).getTotalFavorites());
+            }
+        }
+    }
+
+    private static List<String> placeIds(final List<Trend> trends) {
+        return trends.stream()
+                .map(trend -> trend.getDetails().placeId)
+                .collect(Collectors.toList());
+    }
+}
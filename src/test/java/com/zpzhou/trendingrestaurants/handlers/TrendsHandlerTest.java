@@ -0,0 +1,341 @@
+package com.zpzhou.trendingrestaurants.handlers;
+
+import com.google.maps.model.AddressType;
+import com.google.maps.model.PlaceDetails;
+import com.google.maps.model.PlacesSearchResult;
+import com.zpzhou.trendingrestaurants.metrics.PipelineMetrics;
+import com.zpzhou.trendingrestaurants.model.TimeFrame;
+import com.zpzhou.trendingrestaurants.model.Trend;
+import com.zpzhou.trendingrestaurants.model.TrendsList;
+import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.zpzhou.trendingrestaurants.model.TwitterPlace;
+import com.zpzhou.trendingrestaurants.search.places.BusinessNameRecognizer;
+import com.zpzhou.trendingrestaurants.search.places.GoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.NegativeLookupCache;
+import com.zpzhou.trendingrestaurants.search.tweets.FoodKeywords;
+import com.zpzhou.trendingrestaurants.search.tweets.PageConsumer;
+import com.zpzhou.trendingrestaurants.search.tweets.SearchBudget;
+import com.zpzhou.trendingrestaurants.search.tweets.SearchSummary;
+import com.zpzhou.trendingrestaurants.search.tweets.TwitterSearchAPIClient;
+import com.zpzhou.trendingrestaurants.upstream.UpstreamException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TrendsHandlerTest {
+
+    private static final String PLACE = "Toronto";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormat
+            .forPattern("EEE MMM dd HH:mm:ss Z yyyy")
+            .withLocale(Locale.ENGLISH)
+            .withZoneUTC();
+
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final TwitterSearchAPIClient searchClient = mock(TwitterSearchAPIClient.class);
+    private final GoogleMapsAPIWrapper mapsAPIWrapper = mock(GoogleMapsAPIWrapper.class);
+    private final BusinessNameRecognizer recognizer = mock(BusinessNameRecognizer.class);
+    // The tweets the search finds, and the [from, to) intervals it was asked for
+    private final List<Tweet> tweets = new CopyOnWriteArrayList<>();
+    private final List<long[]> searches = new CopyOnWriteArrayList<>();
+    // Businesses whose lookups fail
+    private final Set<String> failing = new CopyOnWriteArraySet<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PlaceTimelines timelines = new PlaceTimelines(10, Optional.empty());
+    private NegativeLookupCache negatives;
+    private FoodKeywords foodKeywords;
+    private TrendsHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        negatives = new NegativeLookupCache(directory.resolve("negative-lookups.bin"), HOUR, 1000, 0.01);
+        final Path keywords = directory.resolve("keywords.txt");
+        Files.writeString(keywords, "ramen\npizza\n");
+        foodKeywords = new FoodKeywords(Optional.of(keywords));
+        handler = new TrendsHandler(searchClient, mapsAPIWrapper, negatives, executor, recognizer, foodKeywords,
+                10, 100, new SearchBudget(1000, TIMEOUT_MILLIS), timelines, 10, TIMEOUT_MILLIS, 3, 1, 0,
+                new PipelineMetrics(registry));
+
+        when(searchClient.search(anyString(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            final long from = invocation.<DateTime>getArgument(1).getMillis();
+            final long to = invocation.<DateTime>getArgument(2).getMillis();
+            searches.add(new long[] {from, to});
+            final List<Tweet> page = tweets.stream()
+                    .filter(tweet -> tweet.getCreatedAtMillis() >= from && tweet.getCreatedAtMillis() < to)
+                    .sorted(Comparator.comparingLong(Tweet::getCreatedAtMillis).reversed())
+                    .collect(Collectors.toList());
+            invocation.<PageConsumer>getArgument(4).accept(page);
+            return new SearchSummary(page.size(), true);
+        });
+        // The business named in a tweet is whatever follows "at"
+        when(recognizer.findMostProbableBusinesses(anyList())).thenAnswer(invocation -> invocation
+                .<List<String>>getArgument(0).stream()
+                .map(text -> Optional.of(text.substring(text.indexOf(" at ") + 4)))
+                .collect(Collectors.toList()));
+        when(mapsAPIWrapper.isGeocodingAvailable()).thenReturn(true);
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any())).thenAnswer(invocation -> {
+            if (failing.contains(invocation.<String>getArgument(0))) {
+                return CompletableFuture.failedFuture(new UpstreamException("out of retries", true));
+            }
+            final PlacesSearchResult result = new PlacesSearchResult();
+            result.placeId = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(List.of(result));
+        });
+        when(mapsAPIWrapper.getPlaceDetails(anyString(), any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(Optional.of(details(invocation.getArgument(0)))));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        negatives.close();
+    }
+
+    @Test
+    void searchesWholeTimeFrameForNewPlace() throws Exception {
+        tweets.add(tweet("ramen at Kinton", now() - 2 * HOUR));
+
+        final TrendsList trends = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        assertEquals(1, searches.size());
+        assertTrue(now() - searches.get(0)[0] >= TimeUnit.DAYS.toMillis(1));
+        assertEquals(List.of("Kinton"), placeIds(trends));
+        assertTrue(trends.isComplete());
+    }
+
+    @Test
+    void searchesOnlyTheGapAfterTheWatermark() throws Exception {
+        final long watermark = now() - HOUR;
+        final PlaceTimeline timeline = timelines.acquire(handler.timelineKey(PLACE, foodKeywords.getMatcher()));
+        timeline.ingest(PlaceTimelineTest.tweet(now() - 3 * HOUR, 0, 0), details("Kinton"));
+        timeline.ingest(PlaceTimelineTest.tweet(now() - 4 * HOUR, 0, 0), details("Kinton"));
+        timeline.extendCoverage(now() - TimeUnit.DAYS.toMillis(2), watermark);
+        // Covered already, so it would be counted twice if searched again
+        tweets.add(tweet("ramen at Kinton", now() - 3 * HOUR));
+        tweets.add(tweet("pizza at Libretto", now() - HOUR / 2));
+
+        final TrendsList trends = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        assertEquals(1, searches.size());
+        assertEquals(watermark, searches.get(0)[0]);
+        assertEquals(List.of("Kinton", "Libretto"), placeIds(trends));
+        assertEquals(2, trends.getTrends().get(0).getTotalTweets());
+    }
+
+    @Test
+    void searchesBeforeCoverageForLongerTimeFrame() throws Exception {
+        final long coveredFrom = now() - 12 * HOUR;
+        final long watermark = now() - HOUR;
+        final PlaceTimeline timeline = timelines.acquire(handler.timelineKey(PLACE, foodKeywords.getMatcher()));
+        timeline.extendCoverage(coveredFrom, watermark);
+        tweets.add(tweet("ramen at Kinton", now() - 20 * HOUR));
+
+        final TrendsList trends = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        assertEquals(2, searches.size());
+        assertEquals(watermark, searches.get(0)[0]);
+        assertEquals(coveredFrom, searches.get(1)[1]);
+        assertEquals(List.of("Kinton"), placeIds(trends));
+        assertTrue(timeline.getCoveredFrom() <= now() - TimeUnit.DAYS.toMillis(1));
+    }
+
+    @Test
+    void repeatRequestsDontSearchAgain() throws Exception {
+        tweets.add(tweet("ramen at Kinton", now() - 2 * HOUR));
+
+        final TrendsList first = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        final TrendsList second = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        // Any later search, should the searchable minute have moved on, only covers what's new since
+        for (final long[] search : searches.subList(1, searches.size())) {
+            assertEquals(searches.get(0)[1], search[0]);
+        }
+        assertEquals(first.getTrends(), second.getTrends());
+        assertEquals(1, second.getTrends().get(0).getTotalTweets());
+    }
+
+    @Test
+    void returnsIncompleteByDeadlineWhileAnotherSearchHoldsTheTimeline() throws Exception {
+        final PlaceTimeline timeline = timelines.acquire(handler.timelineKey(PLACE, foodKeywords.getMatcher()));
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService ingesting = Executors.newSingleThreadExecutor();
+        try {
+            ingesting.execute(() -> {
+                try {
+                    timeline.tryLock(TIMEOUT_MILLIS);
+                    held.countDown();
+                    release.await();
+                    timeline.unlock();
+                }
+                catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            held.await();
+
+            final long startedAt = System.currentTimeMillis();
+            final TrendsList trends = handler.handleGet(PLACE, TimeFrame.ONE_DAY, 200);
+            assertTrue(System.currentTimeMillis() - startedAt < TIMEOUT_MILLIS / 2);
+            assertFalse(trends.isComplete());
+            assertEquals(List.of(), trends.getTrends());
+            assertTrue(searches.isEmpty());
+            assertEquals(List.of(0L, 1L, 0L), requestCounts());
+        }
+        finally {
+            release.countDown();
+            ingesting.shutdown();
+        }
+        // Once released, the timeline can be searched as usual
+        tweets.add(tweet("ramen at Kinton", now() - 2 * HOUR));
+        assertTrue(ingesting.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(List.of("Kinton"), placeIds(handler.handleGet(PLACE, TimeFrame.ONE_DAY)));
+    }
+
+    @Test
+    void failedLookupsLeaveOnlyTheMinutesUpToThemUncovered() throws Exception {
+        tweets.add(tweet("ramen at Kinton", now() - 2 * HOUR));
+        final Tweet failed = tweet("ramen at Broken", now() - 5 * HOUR);
+        tweets.add(failed);
+        tweets.add(tweet("pizza at Libretto", now() - 8 * HOUR));
+        failing.add("Broken");
+
+        final TrendsList first = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        assertFalse(first.isComplete());
+        assertEquals(Set.of("Kinton", "Libretto"), Set.copyOf(placeIds(first)));
+        // Only the tweets newer than the failed one are ingested
+        final PlaceTimeline timeline = timelines.acquire(handler.timelineKey(PLACE, foodKeywords.getMatcher()));
+        final long coveredFrom = truncateToMinute(failed.getCreatedAtMillis()) + MINUTE;
+        assertEquals(coveredFrom, timeline.getCoveredFrom());
+        assertEquals(List.of("Kinton"), timeline.getTrends(0, 10).stream()
+                .map(trend -> trend.getDetails().placeId)
+                .collect(Collectors.toList()));
+
+        // The next request searches again from where the failure left off, without counting anything twice
+        failing.clear();
+        final TrendsList second = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        assertTrue(second.isComplete());
+        assertTrue(searches.stream().skip(1).anyMatch(search -> search[1] == coveredFrom));
+        assertEquals(Set.of("Broken", "Kinton", "Libretto"), Set.copyOf(placeIds(second)));
+        for (final Trend trend : second.getTrends()) {
+            assertEquals(1, trend.getTotalTweets());
+        }
+    }
+
+    @Test
+    void failedLookupsAfterTheWatermarkStillAdvanceIt() throws Exception {
+        final long watermark = now() - 3 * HOUR;
+        final PlaceTimeline timeline = timelines.acquire(handler.timelineKey(PLACE, foodKeywords.getMatcher()));
+        timeline.extendCoverage(now() - 12 * HOUR, watermark);
+        tweets.add(tweet("ramen at Kinton", now() - HOUR));
+        final Tweet failed = tweet("ramen at Broken", now() - 2 * HOUR);
+        tweets.add(failed);
+        tweets.add(tweet("pizza at Libretto", now() - 150 * MINUTE));
+        failing.add("Broken");
+
+        final TrendsList trends = handler.handleGet(PLACE, TimeFrame.ONE_DAY);
+        assertFalse(trends.isComplete());
+        assertEquals(Set.of("Kinton", "Libretto"), Set.copyOf(placeIds(trends)));
+        // Covered up to the minute of the failed tweet, so the search resumes from there next time
+        assertEquals(truncateToMinute(failed.getCreatedAtMillis()), timeline.getWatermark());
+        assertEquals(List.of("Libretto"), timeline.getTrends(0, 10).stream()
+                .map(trend -> trend.getDetails().placeId)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void timesEachRequestByOutcome() throws Exception {
+        tweets.add(tweet("ramen at Kinton", now() - 2 * HOUR));
+        assertTrue(handler.handleGet(PLACE, TimeFrame.ONE_DAY).isComplete());
+        assertEquals(List.of(1L, 0L, 0L), requestCounts());
+
+        // Another place's timeline, so searched from scratch
+        tweets.add(tweet("ramen at Broken", now() - 3 * HOUR));
+        failing.add("Broken");
+        assertFalse(handler.handleGet("Montreal", TimeFrame.ONE_DAY).isComplete());
+        assertEquals(List.of(1L, 1L, 0L), requestCounts());
+
+        doThrow(new UpstreamException("Search request failed with status 503", true))
+                .when(searchClient).search(anyString(), any(), any(), any(), any());
+        assertThrows(UpstreamException.class, () -> handler.handleGet(PLACE, TimeFrame.WEEK));
+        assertEquals(List.of(1L, 1L, 1L), requestCounts());
+    }
+
+    Tweet tweet(final String text, final long createdAtMillis) {
+        return Tweet.builder()
+                .text(text)
+                .hashTags(List.of())
+                .createdAt(CREATED_AT_FORMAT.print(createdAtMillis))
+                .twitterHandle("handle")
+                .latLng(Optional.empty())
+                .place(Optional.of(new TwitterPlace("3797791ff9c0e4c6", PLACE, PLACE + ", Ontario")))
+                .build();
+    }
+
+    static PlaceDetails details(final String placeId) {
+        final PlaceDetails details = PlaceTimelineTest.details(placeId);
+        details.types = new AddressType[] {AddressType.RESTAURANT};
+        return details;
+    }
+
+    static List<String> placeIds(final TrendsList trends) {
+        final List<String> placeIds = new ArrayList<>();
+        for (final Trend trend : trends.getTrends()) {
+            placeIds.add(trend.getDetails().placeId);
+        }
+        return placeIds;
+    }
+
+    /**
+     * The number of complete, partial and failed requests timed.
+     */
+    private List<Long> requestCounts() {
+        return Stream.of("complete", "partial", "failed")
+                .map(outcome -> registry.get("trends.request").tag("outcome", outcome).timer().count())
+                .collect(Collectors.toList());
+    }
+
+    private static long truncateToMinute(final long millis) {
+        return millis - Math.floorMod(millis, MINUTE);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
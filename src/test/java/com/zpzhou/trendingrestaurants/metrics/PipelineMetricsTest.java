@@ -0,0 +1,47 @@
+package com.zpzhou.trendingrestaurants.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+
+    @Test
+    void registersOneRequestTimerPerOutcome() {
+        final Set<String> outcomes = registry.get("trends.request").timers().stream()
+                .map(Meter::getId)
+                .map(id -> id.getTag("outcome"))
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("complete", "partial", "failed"), outcomes);
+    }
+
+    @Test
+    void timesRequestsByOutcome() {
+        metrics.getRequest(PipelineMetrics.Outcome.COMPLETE).record(10, TimeUnit.MILLISECONDS);
+        metrics.getRequest(PipelineMetrics.Outcome.PARTIAL).record(20, TimeUnit.MILLISECONDS);
+        metrics.getRequest(PipelineMetrics.Outcome.PARTIAL).record(30, TimeUnit.MILLISECONDS);
+        metrics.getRequest(PipelineMetrics.Outcome.FAILED).record(40, TimeUnit.MILLISECONDS);
+        metrics.getRequest(PipelineMetrics.Outcome.FAILED).record(50, TimeUnit.MILLISECONDS);
+        metrics.getRequest(PipelineMetrics.Outcome.FAILED).record(60, TimeUnit.MILLISECONDS);
+
+        assertRequests("complete", 1, 10);
+        assertRequests("partial", 2, 50);
+        assertRequests("failed", 3, 150);
+    }
+
+    private void assertRequests(final String outcome, final long count, final double totalMillis) {
+        final Timer timer = registry.get("trends.request").tag("outcome", outcome).timer();
+        assertEquals(count, timer.count());
+        assertEquals(totalMillis, timer.totalTime(TimeUnit.MILLISECONDS));
+    }
+}
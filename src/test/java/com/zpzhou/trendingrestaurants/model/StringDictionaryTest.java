@@ -0,0 +1,42 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StringDictionaryTest {
+
+    @Test
+    void internsEachDistinctValueOnce() {
+        final StringDictionary dictionary = new StringDictionary();
+        final int pizza = dictionary.encode("pizza");
+        final int ramen = dictionary.encode("ramen");
+
+        assertEquals(pizza, dictionary.encode(new String("pizza")));
+        assertNotEquals(pizza, ramen);
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    void assignsDenseIdsThatDecodeBack() {
+        final StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, dictionary.encode("value-" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value-" + i, dictionary.decode(i));
+        }
+    }
+
+    @Test
+    void internsNull() {
+        // eg. a tweet without a handle
+        final StringDictionary dictionary = new StringDictionary();
+        final int id = dictionary.encode(null);
+
+        assertEquals(id, dictionary.encode(null));
+        assertNull(dictionary.decode(id));
+    }
+}
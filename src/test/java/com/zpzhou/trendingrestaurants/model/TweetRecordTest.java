@@ -0,0 +1,102 @@
+package com.zpzhou.trendingrestaurants.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TweetRecordTest {
+
+    private static final String CREATED_AT = "Wed Oct 10 20:19:24 +0000 2018";
+
+    private final StringDictionary dictionary = new StringDictionary();
+
+    @Test
+    void keepsWhatThePipelineNeeds() {
+        final Tweet tweet = tweet(List.of("pizza", "toronto"),
+                Optional.of(new LatLng(new BigDecimal("43.6532"), new BigDecimal("-79.3832"))),
+                Optional.of(new TwitterPlace("3797791ff9c0e4c6", "Toronto", "Toronto, Ontario")));
+
+        final TweetRecord record = TweetRecord.of(tweet, dictionary);
+        assertEquals(tweet.getCreatedAtMillis(), record.getCreatedAtMillis());
+        assertEquals(1539202764000L, record.getCreatedAtMillis());
+        assertEquals(3, record.getRetweetCount());
+        assertEquals(5, record.getFavoriteCount());
+        assertEquals("foodie", dictionary.decode(record.getHandleId()));
+        assertEquals(tweet.getHashTags(), decode(record.getHashTagIds()));
+        assertTrue(record.hasLatLng());
+        assertEquals(43.6532, record.getLat());
+        assertEquals(-79.3832, record.getLng());
+    }
+
+    @Test
+    void recordsTweetWithoutCoordinates() {
+        final TweetRecord record = TweetRecord.of(tweet(List.of("ramen"), Optional.empty(),
+                Optional.of(new TwitterPlace("3797791ff9c0e4c6", "Toronto", "Toronto, Ontario"))), dictionary);
+
+        assertFalse(record.hasLatLng());
+        assertTrue(Double.isNaN(record.getLat()));
+        assertTrue(Double.isNaN(record.getLng()));
+    }
+
+    @Test
+    void recordsTweetWithoutPlaceOrHashtags() {
+        final TweetRecord record = TweetRecord.of(tweet(null, Optional.empty(), Optional.empty()), dictionary);
+
+        assertEquals(0, record.getHashTagIds().length);
+        assertEquals("foodie", dictionary.decode(record.getHandleId()));
+        assertFalse(record.hasLatLng());
+    }
+
+    @Test
+    void sharesIdsBetweenTweetsOfARequest() {
+        final TweetRecord first = TweetRecord.of(tweet(List.of("pizza", "ramen"), Optional.empty(),
+                Optional.empty()), dictionary);
+        final TweetRecord second = TweetRecord.of(tweet(List.of("ramen"), Optional.empty(),
+                Optional.empty()), dictionary);
+
+        assertEquals(first.getHandleId(), second.getHandleId());
+        assertEquals(first.getHashTagIds()[1], second.getHashTagIds()[0]);
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    void rejectsTweetWithoutCreationTime() {
+        final Tweet tweet = Tweet.builder()
+                .twitterHandle("foodie")
+                .latLng(Optional.empty())
+                .place(Optional.empty())
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> TweetRecord.of(tweet, dictionary));
+    }
+
+    private static Tweet tweet(final List<String> hashTags,
+                               final Optional<LatLng> latLng,
+                               final Optional<TwitterPlace> place) {
+        return Tweet.builder()
+                .text("Best #pizza in #toronto")
+                .hashTags(hashTags)
+                .retweetCount(3)
+                .favoriteCount(5)
+                .createdAt(CREATED_AT)
+                .twitterHandle("foodie")
+                .latLng(latLng)
+                .place(place)
+                .build();
+    }
+
+    private List<String> decode(final int[] ids) {
+        return Arrays.stream(ids)
+                .mapToObj(dictionary::decode)
+                .collect(Collectors.toList());
+    }
+}
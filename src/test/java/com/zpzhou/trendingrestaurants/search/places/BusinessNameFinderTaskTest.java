@@ -0,0 +1,94 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import com.google.maps.model.AddressType;
+import com.google.maps.model.PlaceDetails;
+import com.google.maps.model.PlacesSearchResult;
+import com.zpzhou.trendingrestaurants.model.TweetRecord;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+import com.zpzhou.trendingrestaurants.upstream.UpstreamException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BusinessNameFinderTaskTest {
+
+    private static final TweetRecord GEOTAGGED = new TweetRecord(0, 0, 0, 0, new int[0], 43.6532, -79.3832);
+
+    @TempDir
+    Path directory;
+
+    private final GoogleMapsAPIWrapper mapsAPIWrapper = mock(GoogleMapsAPIWrapper.class);
+    private NegativeLookupCache negatives;
+    private PlaceLookups lookups;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        negatives = new NegativeLookupCache(directory.resolve("negative-lookups.bin"), 60_000, 1000, 0.01);
+        lookups = new PlaceLookups(mapsAPIWrapper, negatives, 3, Priority.INTERACTIVE);
+        when(mapsAPIWrapper.isGeocodingAvailable()).thenReturn(false);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        negatives.close();
+    }
+
+    @Test
+    void fallsBackToBusinessNameWhileGeocodingIsUnavailable() {
+        final PlacesSearchResult result = new PlacesSearchResult();
+        result.placeId = "kinton";
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(List.of(result)));
+        when(mapsAPIWrapper.getPlaceDetails(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(details("kinton"))));
+
+        final Optional<PlaceDetails> details = new BusinessNameFinderTask(
+                lookups, GEOTAGGED, Optional.of("Kinton Ramen")).call().join();
+        assertEquals("kinton", details.get().placeId);
+    }
+
+    @Test
+    void failsIfNothingWasFoundAfterALookupFailed() {
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        assertThrows(CompletionException.class, () -> new BusinessNameFinderTask(
+                lookups, GEOTAGGED, Optional.of("Kinton Ramen")).call().join());
+        assertThrows(CompletionException.class, () -> new BusinessNameFinderTask(
+                lookups, GEOTAGGED, Optional.empty()).call().join());
+    }
+
+    @Test
+    void failsIfLookupByBusinessNameFailed() {
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new UpstreamException("out of retries", true)));
+        final TweetRecord untagged = new TweetRecord(0, 0, 0, 0, new int[0], Double.NaN, Double.NaN);
+
+        assertThrows(CompletionException.class, () -> new BusinessNameFinderTask(
+                lookups, untagged, Optional.of("Kinton Ramen")).call().join());
+        // Whereas finding nothing without any failure is an answer
+        assertEquals(Optional.empty(), new BusinessNameFinderTask(lookups, untagged, Optional.empty()).call().join());
+    }
+
+    private static PlaceDetails details(final String placeId) {
+        final PlaceDetails details = new PlaceDetails();
+        details.placeId = placeId;
+        details.types = new AddressType[] {AddressType.RESTAURANT};
+        return details;
+    }
+}
@@ -0,0 +1,132 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import opennlp.tools.util.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares recognizing business names with BusinessNameRecognizer, which
+ * runs a batch of tweets through a pooled NameFinderME, against constructing
+ * a NameFinderME for every tweet as BusinessNameFinderTask used to.
+ *
+ * Batches are built by repeating the texts of the tweets recorded in
+ * fixtures/twitter-search-page.json, and recognized with the same model as
+ * the application, static/en-ner-organization.bin, which must be on the
+ * classpath. Run main() to report throughput in tweets per second along
+ * with the allocation rate (gc.alloc.rate.norm is bytes allocated per tweet).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BusinessNameRecognizerBenchmark {
+
+    // The default ner.batch.size
+    private static final int BATCH_SIZE = 50;
+
+    private List<String> texts;
+    private TokenNameFinderModel nameFinderModel;
+    private BusinessNameRecognizer recognizer;
+
+    @Setup
+    public void setUp() throws IOException {
+        final JsonArray recorded;
+        try (final InputStream inputStream = getClass().getResourceAsStream("/fixtures/twitter-search-page.json")) {
+            recorded = JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))
+                    .getAsJsonObject()
+                    .getAsJsonArray("results");
+        }
+        texts = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            texts.add(recorded.get(i % recorded.size()).getAsJsonObject().get("text").getAsString());
+        }
+        try (final InputStream inputStream = getClass().getResourceAsStream("/static/en-ner-organization.bin")) {
+            if (inputStream == null) {
+                throw new IOException("static/en-ner-organization.bin is not on the classpath");
+            }
+            nameFinderModel = new TokenNameFinderModel(inputStream);
+        }
+        recognizer = new BusinessNameRecognizer(SimpleTokenizer.INSTANCE, nameFinderModel, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Optional<String>> pooledBatch() {
+        return recognizer.findMostProbableBusinesses(texts);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Optional<String>> nameFinderPerTweet() {
+        final List<Optional<String>> businesses = new ArrayList<>(texts.size());
+        for (final String text : texts) {
+            businesses.add(findMostProbableBusiness(text));
+        }
+        return businesses;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BusinessNameRecognizerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    /**
+     * How BusinessNameFinderTask recognized a business before name finders were pooled.
+     */
+    private Optional<String> findMostProbableBusiness(final String text) {
+        final NameFinderME nameFinder = new NameFinderME(nameFinderModel);
+        final String[] tokens = SimpleTokenizer.INSTANCE.tokenize(text);
+        final Span[] spans = nameFinder.find(tokens);
+        nameFinder.clearAdaptiveData();
+
+        int maxProbableBusinessIdx = -1;
+        double maxProb = 0.0;
+        for (int i = 0; i < spans.length; i++) {
+            if (spans[i].getProb() > maxProb) {
+                maxProb = spans[i].getProb();
+                maxProbableBusinessIdx = i;
+            }
+        }
+        if (maxProbableBusinessIdx == -1) {
+            return Optional.empty();
+        }
+        final Span mostProbableSpan = spans[maxProbableBusinessIdx];
+        final String[] tokenizedBusinessName = new String[mostProbableSpan.getEnd() - mostProbableSpan.getStart()];
+        for (int i = mostProbableSpan.getStart(); i < mostProbableSpan.getEnd(); i++) {
+            tokenizedBusinessName[i - mostProbableSpan.getStart()] = tokens[i];
+        }
+        return Optional.of(String.join(" ", tokenizedBusinessName));
+    }
+}
@@ -0,0 +1,169 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskBackedCacheTest {
+
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversLatestValuesAfterReopening() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            cache.put("pizza", "place-1");
+            cache.put("sushi", "place-2");
+            cache.put("pizza", "place-3");
+        }
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            assertEquals(2, cache.size());
+            assertEquals(Optional.of("place-3"), cache.get("pizza"));
+            assertEquals(Optional.of("place-2"), cache.get("sushi"));
+            assertEquals(Optional.empty(), cache.get("tacos"));
+        }
+    }
+
+    @Test
+    void truncatesRecordCutShortByCrash() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            cache.put("pizza", "place-1");
+        }
+        final long intact = Files.size(file);
+        // The header of a record whose key and value were never written
+        Files.write(file, ByteBuffer.allocate(16).putLong(Long.MAX_VALUE).putInt(5).putInt(7).array(),
+                StandardOpenOption.APPEND);
+
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            assertEquals(intact, Files.size(file));
+            assertEquals(Optional.of("place-1"), cache.get("pizza"));
+            cache.put("sushi", "place-2");
+        }
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            assertEquals(Optional.of("place-1"), cache.get("pizza"));
+            assertEquals(Optional.of("place-2"), cache.get("sushi"));
+        }
+    }
+
+    @Test
+    void dropsExpiredRecords() throws Exception {
+        final Path file = directory.resolve("cache.log");
+        try (final DiskBackedCache<String> cache = open(file, 50)) {
+            cache.put("pizza", "place-1");
+            Thread.sleep(100);
+            assertEquals(Optional.empty(), cache.get("pizza"));
+        }
+        try (final DiskBackedCache<String> cache = open(file, 50)) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    void compactsOnOpenWhenMostRecordsAreDead() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            for (int i = 0; i < 10; i++) {
+                cache.put("pizza", "place-" + i);
+            }
+            cache.put("sushi", "place-sushi");
+        }
+        final long uncompacted = Files.size(file);
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            assertTrue(Files.size(file) < uncompacted / 4);
+            assertEquals(Files.size(file), cache.fileSize());
+            assertEquals(Optional.of("place-9"), cache.get("pizza"));
+            assertEquals(Optional.of("place-sushi"), cache.get("sushi"));
+        }
+    }
+
+    @Test
+    void compactsWhileOpenAsOverwritesAccumulate() throws IOException {
+        final Path file = directory.resolve("cache.log");
+        final String padding = "x".repeat(1000);
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            cache.put("sushi", "place-sushi");
+            // Rewrites a single live key many times over the compaction threshold
+            for (int i = 0; i < 5000; i++) {
+                cache.put("pizza", padding + i);
+                assertTrue(cache.fileSize() < 3 * DiskBackedCache.MIN_COMPACTION_BYTES);
+            }
+            assertEquals(Optional.of(padding + 4999), cache.get("pizza"));
+            assertEquals(Optional.of("place-sushi"), cache.get("sushi"));
+        }
+        assertTrue(Files.size(file) < 3 * DiskBackedCache.MIN_COMPACTION_BYTES);
+        try (final DiskBackedCache<String> cache = open(file, TTL_MILLIS)) {
+            assertEquals(Optional.of(padding + 4999), cache.get("pizza"));
+            assertEquals(Optional.of("place-sushi"), cache.get("sushi"));
+        }
+    }
+
+    @Test
+    void compactsWhileOpenAsRecordsExpire() throws Exception {
+        final Path file = directory.resolve("cache.log");
+        final String padding = "x".repeat(1000);
+        try (final DiskBackedCache<String> cache = open(file, 50)) {
+            // Distinct keys, so nothing is overwritten, that expire before being read again
+            for (int i = 0; i < 5000; i++) {
+                cache.put("place-" + i, padding);
+                if (i % 500 == 0) {
+                    Thread.sleep(60);
+                }
+            }
+            assertTrue(cache.fileSize() < 3 * DiskBackedCache.MIN_COMPACTION_BYTES);
+        }
+    }
+
+    @Test
+    void diskHitDoesNotOverwriteNewerPut() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch put = new CountDownLatch(1);
+        final Function<String, String> slowDecoder = value -> {
+            if (value.equals("place-1")) {
+                reading.countDown();
+                try {
+                    put.await();
+                }
+                catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return value;
+        };
+        try (final DiskBackedCache<String> cache = new DiskBackedCache<>(directory.resolve("cache.log"),
+                TTL_MILLIS, 1, Function.identity(), slowDecoder)) {
+            cache.put("pizza", "place-1");
+            // Pushes pizza out of the memory tier
+            cache.put("sushi", "place-sushi");
+
+            final CompletableFuture<Optional<String>> stale = CompletableFuture.supplyAsync(() -> cache.get("pizza"));
+            reading.await();
+            cache.put("pizza", "place-2");
+            put.countDown();
+
+            assertEquals(Optional.of("place-1"), stale.get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.of("place-2"), cache.get("pizza"));
+        }
+    }
+
+    private static DiskBackedCache<String> open(final Path file, final long ttlMillis) throws IOException {
+        // A memory tier of one, so that reads are served from the file
+        return new DiskBackedCache<>(file, ttlMillis, 1, Function.identity(), Function.identity());
+    }
+}
@@ -0,0 +1,97 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NegativeLookupCacheTest {
+
+    // Two generations, so keys move to the older one after half of this
+    private static final long TTL_MILLIS = 1000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void remembersKeysPut() throws IOException {
+        try (final NegativeLookupCache cache = open(1000)) {
+            cache.put("kinton ramen");
+
+            assertTrue(cache.mightContain("kinton ramen"));
+            assertFalse(cache.mightContain("pizzeria libretto"));
+        }
+    }
+
+    @Test
+    void forgetsKeysOnceTheirGenerationRotatesOut() throws Exception {
+        try (final NegativeLookupCache cache = open(1000)) {
+            cache.put("kinton ramen");
+            Thread.sleep(TTL_MILLIS / 2 + 100);
+            // Rotated into the older generation
+            assertTrue(cache.mightContain("kinton ramen"));
+            cache.put("pizzeria libretto");
+
+            Thread.sleep(TTL_MILLIS / 2);
+            assertFalse(cache.mightContain("kinton ramen"));
+            assertTrue(cache.mightContain("pizzeria libretto"));
+        }
+    }
+
+    @Test
+    void forgetsEverythingAfterTtlWithoutAccess() throws Exception {
+        try (final NegativeLookupCache cache = open(1000)) {
+            cache.put("kinton ramen");
+            // Several slices elapse before the next access, rotating out both generations at once
+            Thread.sleep(TTL_MILLIS * 2);
+            assertFalse(cache.mightContain("kinton ramen"));
+        }
+    }
+
+    @Test
+    void reloadsKeysAfterReopening() throws IOException {
+        try (final NegativeLookupCache cache = open(1000)) {
+            cache.put("kinton ramen");
+        }
+        try (final NegativeLookupCache cache = open(1000)) {
+            assertTrue(cache.mightContain("kinton ramen"));
+            assertFalse(cache.mightContain("pizzeria libretto"));
+        }
+    }
+
+    @Test
+    void discardsKeysSavedWithDifferentSize() throws IOException {
+        try (final NegativeLookupCache cache = open(1000)) {
+            cache.put("kinton ramen");
+        }
+        try (final NegativeLookupCache cache = open(2000)) {
+            assertFalse(cache.mightContain("kinton ramen"));
+        }
+    }
+
+    @Test
+    void boundsFalsePositiveRate() throws IOException {
+        try (final NegativeLookupCache cache = open(1000)) {
+            for (int i = 0; i < 1000; i++) {
+                cache.put("put-" + i);
+            }
+            int falsePositives = 0;
+            for (int i = 0; i < 10_000; i++) {
+                if (cache.mightContain("never-put-" + i)) {
+                    falsePositives++;
+                }
+            }
+            // The newest filter holds expectedInsertions keys and the other none
+            assertTrue(falsePositives < 10_000 * 0.01 * 2, falsePositives + " false positives");
+        }
+    }
+
+    private NegativeLookupCache open(final int expectedInsertions) throws IOException {
+        return new NegativeLookupCache(directory.resolve("negative-lookups.bin"), TTL_MILLIS,
+                expectedInsertions, 0.01);
+    }
+}
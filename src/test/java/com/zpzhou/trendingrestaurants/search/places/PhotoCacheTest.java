@@ -0,0 +1,75 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PhotoCacheTest {
+
+    private static final byte[] PIZZA = "pizza-photo".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RAMEN = "ramen-photo".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void servesPhotoFromDiskAfterRestart() throws IOException {
+        new PhotoCache(directory, 1024, 1024).put("pizza:400:0", PIZZA, "image/png");
+
+        final CachedPhoto photo = new PhotoCache(directory, 1024, 1024).get("pizza:400:0").get();
+        assertEquals("image/png", photo.getContentType());
+        assertEquals(PIZZA.length, photo.getContentLength());
+        assertArrayEquals(PIZZA, read(photo));
+    }
+
+    @Test
+    void photoBeingReadSurvivesEviction() throws IOException {
+        // Nothing fits in memory, and only one photo fits on disk
+        final PhotoCache cache = new PhotoCache(directory, 0, PIZZA.length);
+        cache.put("pizza:400:0", PIZZA, "image/jpeg");
+        final CachedPhoto photo = cache.get("pizza:400:0").get();
+
+        cache.put("ramen:400:0", RAMEN, "image/jpeg");
+        assertEquals(Optional.empty(), cache.get("pizza:400:0"));
+        assertEquals(1, countFiles());
+        assertArrayEquals(PIZZA, read(photo));
+        assertArrayEquals(RAMEN, read(cache.get("ramen:400:0").get()));
+    }
+
+    @Test
+    void treatsMissingFileAsMiss() throws IOException {
+        final PhotoCache cache = new PhotoCache(directory, 0, 1024);
+        cache.put("pizza:400:0", PIZZA, "image/jpeg");
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        assertEquals(Optional.empty(), cache.get("pizza:400:0"));
+        cache.put("pizza:400:0", PIZZA, "image/jpeg");
+        assertArrayEquals(PIZZA, read(cache.get("pizza:400:0").get()));
+    }
+
+    private long countFiles() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] read(final CachedPhoto photo) throws IOException {
+        try (final InputStream inputStream = photo.getResource().getInputStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.zpzhou.trendingrestaurants.search.places;
+
+import com.google.maps.model.AddressType;
+import com.google.maps.model.PlaceDetails;
+import com.google.maps.model.PlacesSearchResult;
+import com.zpzhou.trendingrestaurants.upstream.CallRejectedException;
+import com.zpzhou.trendingrestaurants.upstream.Priority;
+import com.zpzhou.trendingrestaurants.upstream.UpstreamException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PlaceLookupsTest {
+
+    @TempDir
+    Path directory;
+
+    private final GoogleMapsAPIWrapper mapsAPIWrapper = mock(GoogleMapsAPIWrapper.class);
+    private NegativeLookupCache negatives;
+    private PlaceLookups lookups;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        negatives = new NegativeLookupCache(directory.resolve("negative-lookups.bin"), 60_000, 1000, 0.01);
+        lookups = new PlaceLookups(mapsAPIWrapper, negatives, 3, Priority.INTERACTIVE);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        negatives.close();
+    }
+
+    @Test
+    void resolvesFoodBusinesses() {
+        respondWith(details(AddressType.RESTAURANT));
+
+        assertTrue(lookups.findByBusinessName("Kinton Ramen").join().isPresent());
+    }
+
+    @Test
+    void noPlaceFoundIsNotAFailure() {
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        assertEquals(Optional.empty(), lookups.findByBusinessName("Kinton Ramen").join());
+        assertEquals(Optional.empty(), lookups.findByBusinessName("Tim Hortons").join());
+        respondWith(details(AddressType.STORE));
+        assertEquals(Optional.empty(), lookups.findByBusinessName("Canadian Tire").join());
+        assertTrue(negatives.mightContain("name:kinton ramen"));
+    }
+
+    @Test
+    void rejectedLookupFails() {
+        assertFailedBy(new CallRejectedException("circuit open"));
+    }
+
+    @Test
+    void overloadedLookupFails() {
+        assertFailedBy(new UpstreamException("out of retries", true));
+    }
+
+    @Test
+    void unreachableLookupFails() {
+        assertFailedBy(new IOException("connection reset"));
+    }
+
+    @Test
+    void missingDetailsFail() {
+        respondWith(Optional.empty());
+
+        assertTrue(lookups.findByBusinessName("Kinton Ramen").isCompletedExceptionally());
+    }
+
+    @Test
+    void lookupByCoordinatesFailsWhileGeocodingIsUnavailable() {
+        when(mapsAPIWrapper.isGeocodingAvailable()).thenReturn(false);
+
+        final CompletionException ex = assertThrows(CompletionException.class,
+                () -> lookups.findByLatLng(43.6532, -79.3832).join());
+        assertTrue(ex.getCause() instanceof CallRejectedException);
+    }
+
+    private void assertFailedBy(final Throwable ex) {
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(ex));
+
+        final CompletionException failed = assertThrows(CompletionException.class,
+                () -> lookups.findByBusinessName("Kinton Ramen").join());
+        assertEquals(ex, failed.getCause());
+        // Shared by every tweet mentioning the same business
+        assertTrue(lookups.findByBusinessName("kinton ramen ").isCompletedExceptionally());
+        // A failure isn't an answer, so is looked up again next time
+        assertFalse(negatives.mightContain("name:kinton ramen"));
+    }
+
+    private void respondWith(final Optional<PlaceDetails> details) {
+        final PlacesSearchResult result = new PlacesSearchResult();
+        result.placeId = "place-id";
+        when(mapsAPIWrapper.findPlacesByText(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(List.of(result)));
+        when(mapsAPIWrapper.getPlaceDetails(anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(details));
+    }
+
+    private static Optional<PlaceDetails> details(final AddressType type) {
+        final PlaceDetails details = new PlaceDetails();
+        details.types = new AddressType[] {type};
+        return Optional.of(details);
+    }
+}
@@ -0,0 +1,55 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class KeywordMatcherTest {
+
+    private final KeywordMatcher matcher = KeywordMatcher.compile(List.of("pizza", "ramen", "Burger "));
+
+    @Test
+    void countsWholeWordsCaseInsensitively() {
+        assertEquals(2, matcher.countWords("Pizza then RAMEN"));
+        assertEquals(0, matcher.countWords("pizzeria and hamburgers"));
+        assertEquals(1, matcher.countWords("a burger, please"));
+    }
+
+    @Test
+    void countsOccurrencesWithinWords() {
+        assertEquals(2, matcher.countOccurrences("pizzaandramennight"));
+        assertEquals(1, matcher.countOccurrences("cheeseburger"));
+    }
+
+    @Test
+    void scoresHashTagInTextOnce() {
+        assertEquals(1, matcher.score("Friday #pizza", List.of("pizza")));
+        assertEquals(1, matcher.score("Friday #Pizza", List.of("Pizza")));
+        // Keywords within a compound hashtag aren't words of the text
+        assertEquals(1, matcher.score("Friday #pizzanight", List.of("pizzanight")));
+        assertEquals(2, matcher.score("pizza for #pizzanight", List.of("pizzanight")));
+    }
+
+    @Test
+    void scoresHashTagMissingFromText() {
+        // eg. the text was cut short before its hashtags
+        assertEquals(2, matcher.score("Great ramen", List.of("pizza")));
+        assertEquals(1, matcher.score(null, List.of("ramen")));
+        assertEquals(1, matcher.score("ramen", null));
+    }
+
+    @Test
+    void versionsBySetOfKeywords() {
+        assertEquals(matcher.getVersion(), KeywordMatcher.compile(Set.of("ramen", "burger", "pizza")).getVersion());
+        assertNotEquals(matcher.getVersion(), KeywordMatcher.compile(List.of("pizza", "ramen")).getVersion());
+        // Both sets have the same hashCode
+        assertNotEquals(KeywordMatcher.compile(List.of("a", "d")).getVersion(),
+                KeywordMatcher.compile(List.of("b", "c")).getVersion());
+        assertNotEquals(KeywordMatcher.compile(List.of("ab", "c")).getVersion(),
+                KeywordMatcher.compile(List.of("a", "bc")).getVersion());
+    }
+}
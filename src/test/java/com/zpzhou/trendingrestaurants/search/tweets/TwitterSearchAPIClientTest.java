@@ -0,0 +1,133 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.zpzhou.trendingrestaurants.metrics.PipelineMetrics;
+import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.zpzhou.trendingrestaurants.upstream.AdaptiveLimit;
+import com.zpzhou.trendingrestaurants.upstream.AsyncLimiter;
+import com.zpzhou.trendingrestaurants.upstream.CircuitBreaker;
+import com.zpzhou.trendingrestaurants.upstream.TokenBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TwitterSearchAPIClientTest {
+
+    private static final String QUERY = "(ramen OR pizza) (place:3797791ff9c0e4c6)";
+    private static final DateTime FROM = new DateTime(2019, 10, 10, 0, 0, DateTimeZone.UTC);
+    private static final DateTime TO = FROM.plusDays(1);
+    private static final SearchBudget BUDGET = new SearchBudget(1000, TimeUnit.MINUTES.toMillis(1));
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+    private final List<List<Tweet>> pages = new ArrayList<>();
+    private TwitterSearchStubServer server;
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        scheduler.shutdownNow();
+        callbackExecutor.shutdownNow();
+    }
+
+    @Test
+    void pagesThroughEveryResultNewestFirst() throws Exception {
+        server = new TwitterSearchStubServer(3, TwitterSearchStubServer.NOT_TRUNCATED);
+
+        final SearchSummary summary = client().search(QUERY, FROM, TO, BUDGET, pages::add);
+        assertTrue(summary.isExhausted());
+        assertEquals(3 * server.getPageSize(), summary.getTweetsFetched());
+        assertEquals(3, pages.size());
+
+        long previous = TO.getMillis();
+        for (final List<Tweet> page : pages) {
+            for (final Tweet tweet : page) {
+                assertTrue(tweet.getCreatedAtMillis() < previous);
+                previous = tweet.getCreatedAtMillis();
+            }
+        }
+        assertTrue(previous >= FROM.getMillis());
+
+        // Later pages repeat the search with the token of the page before
+        final List<JsonObject> requests = server.getRequests();
+        assertEquals(3, requests.size());
+        assertFalse(requests.get(0).has("next"));
+        for (int i = 1; i < requests.size(); i++) {
+            assertEquals(String.valueOf(i), requests.get(i).get("next").getAsString());
+            assertEquals(QUERY, requests.get(i).get("query").getAsString());
+            assertEquals("201910100000", requests.get(i).get("fromDate").getAsString());
+            assertEquals("201910110000", requests.get(i).get("toDate").getAsString());
+        }
+    }
+
+    @Test
+    void stopsOnceBudgetOfTweetsIsUsedUp() throws Exception {
+        server = new TwitterSearchStubServer(5, TwitterSearchStubServer.NOT_TRUNCATED);
+
+        final SearchSummary summary = client().search(QUERY, FROM, TO,
+                new SearchBudget(server.getPageSize() + 1, TimeUnit.MINUTES.toMillis(1)), pages::add);
+        assertFalse(summary.isExhausted());
+        assertEquals(2 * server.getPageSize(), summary.getTweetsFetched());
+        assertEquals(2, server.getRequests().size());
+    }
+
+    @Test
+    void stopsOnceBudgetOfTimeIsUsedUp() throws Exception {
+        server = new TwitterSearchStubServer(5, TwitterSearchStubServer.NOT_TRUNCATED);
+
+        final SearchSummary summary = client().search(QUERY, FROM, TO, new SearchBudget(1000, 0), pages::add);
+        assertFalse(summary.isExhausted());
+        assertEquals(server.getPageSize(), summary.getTweetsFetched());
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    void stopsAtTruncatedPageKeepingTheTweetsReadFromIt() throws Exception {
+        server = new TwitterSearchStubServer(3, 1);
+
+        final SearchSummary summary = client().search(QUERY, FROM, TO, BUDGET, pages::add);
+        assertFalse(summary.isExhausted());
+        assertEquals(2, server.getRequests().size());
+        assertEquals(server.getPageSize(), pages.get(0).size());
+        assertTrue(pages.get(1).size() < server.getPageSize());
+        assertEquals(pages.get(0).size() + pages.get(1).size(), summary.getTweetsFetched());
+    }
+
+    private TwitterSearchAPIClient client() {
+        final Gson gson = new GsonBuilder()
+                .registerTypeAdapter(TwitterSearchQueryResponse.class, new TwitterSearchResponseAdapter())
+                .create();
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AsyncLimiter limiter = new AsyncLimiter("search",
+                new AdaptiveLimit(1, 4, TimeUnit.SECONDS.toMillis(10)),
+                new TokenBucket(1_000_000, 1_000_000),
+                new CircuitBreaker("search", 20, 0.5, TimeUnit.SECONDS.toMillis(10), 1.0,
+                        TimeUnit.SECONDS.toMillis(1), 1),
+                10,
+                0.5,
+                0,
+                Optional.empty(),
+                scheduler,
+                callbackExecutor,
+                registry);
+        return new TwitterSearchAPIClient(new OkHttpClient(), "token", server.getSearchURL(), gson, limiter,
+                new PipelineMetrics(registry));
+    }
+}
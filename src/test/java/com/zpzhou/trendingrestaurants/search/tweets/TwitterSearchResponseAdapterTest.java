@@ -0,0 +1,123 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.zpzhou.trendingrestaurants.model.LatLng;
+import com.zpzhou.trendingrestaurants.model.Tweet;
+import com.zpzhou.trendingrestaurants.model.TwitterPlace;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TwitterSearchResponseAdapterTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(TwitterSearchQueryResponse.class, new TwitterSearchResponseAdapter())
+            .create();
+
+    @Test
+    void readsRecordedPage() throws IOException {
+        final String page = fixture();
+        final TwitterSearchQueryResponse response = read(page);
+
+        final int recorded = JsonParser.parseString(page).getAsJsonObject().getAsJsonArray("results").size();
+        assertEquals(recorded, response.getTweets().size());
+        assertEquals(Optional.of("eyJtYXhJZCI6MTE4MjAwMDAwMDAwMDAwMDAwMH0="), response.getNext());
+        assertFalse(response.isTruncated());
+        assertEquals("foodlover0", response.getTweets().get(0).getTwitterHandle());
+    }
+
+    @Test
+    void skipsMalformedTweetsOnly() {
+        final TwitterSearchQueryResponse response = read("{\"results\": ["
+                + "{\"text\": \"no handle\", \"retweet_count\": 1, \"favorite_count\": 2,"
+                + " \"created_at\": \"Wed Oct 10 20:19:24 +0000 2019\"},"
+                + "{\"text\": \"wrong type\", \"retweet_count\": {}, \"favorite_count\": 2,"
+                + " \"created_at\": \"Wed Oct 10 20:19:24 +0000 2019\", \"user\": {\"screen_name\": \"a\"}},"
+                + "\"not a tweet\","
+                + "{\"text\": \"fine\", \"retweet_count\": 1, \"favorite_count\": 2,"
+                + " \"created_at\": \"Wed Oct 10 20:19:24 +0000 2019\", \"user\": {\"screen_name\": \"b\"}}"
+                + "], \"next\": \"token\"}");
+
+        assertEquals(1, response.getTweets().size());
+        assertEquals("fine", response.getTweets().get(0).getText());
+        assertEquals(Optional.of("token"), response.getNext());
+        assertFalse(response.isTruncated());
+    }
+
+    @Test
+    void marksPageCutOffMidStreamTruncated() throws IOException {
+        final String page = fixture();
+        // Cut off within the last tweet, before the next token
+        final String truncated = page.substring(0, page.lastIndexOf("\"screen_name\""));
+        final TwitterSearchQueryResponse response = read(truncated);
+
+        final int recorded = JsonParser.parseString(page).getAsJsonObject().getAsJsonArray("results").size();
+        assertEquals(recorded - 1, response.getTweets().size());
+        assertEquals(Optional.empty(), response.getNext());
+        assertTrue(response.isTruncated());
+    }
+
+    @Test
+    void marksPageThatIsNotAnObjectTruncated() {
+        final TwitterSearchQueryResponse response = read("[]");
+
+        assertTrue(response.getTweets().isEmpty());
+        assertTrue(response.isTruncated());
+    }
+
+    @Test
+    void writesPageItReadsBack() throws IOException {
+        final Tweet tagged = Tweet.builder()
+                .text("Lunch at Pizzeria Libretto #pizza")
+                .retweetCount(3)
+                .favoriteCount(7)
+                .createdAt("Wed Oct 10 20:19:24 +0000 2019")
+                .twitterHandle("foodlover")
+                .hashTags(List.of("pizza"))
+                .latLng(Optional.of(new LatLng(new BigDecimal("43.6487"), new BigDecimal("-79.3854"))))
+                .place(Optional.of(new TwitterPlace("3797791ff9c0e4c6", "Toronto", "Toronto, Ontario")))
+                .build();
+        final Tweet untagged = Tweet.builder()
+                .text("Ramen")
+                .retweetCount(0)
+                .favoriteCount(0)
+                .createdAt("Wed Oct 10 20:20:24 +0000 2019")
+                .twitterHandle("ramenlover")
+                .hashTags(List.of())
+                .latLng(Optional.empty())
+                .place(Optional.empty())
+                .build();
+        final TwitterSearchQueryResponse response = new TwitterSearchQueryResponse(
+                List.of(tagged, untagged), Optional.of("token"), false);
+
+        assertEquals(response, read(gson.toJson(response)));
+        assertEquals(read(fixture()), read(gson.toJson(read(fixture()))));
+    }
+
+    /**
+     * Reads @param json from a JsonReader as TwitterSearchAPIClient does, which
+     * unlike reading a String doesn't fail a page that isn't fully consumed.
+     */
+    private TwitterSearchQueryResponse read(final String json) {
+        return gson.fromJson(new JsonReader(new StringReader(json)), TwitterSearchQueryResponse.class);
+    }
+
+    private String fixture() throws IOException {
+        try (final InputStream inputStream = getClass().getResourceAsStream("/fixtures/twitter-search-page.json")) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
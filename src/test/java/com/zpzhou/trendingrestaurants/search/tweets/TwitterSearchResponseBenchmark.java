@@ -0,0 +1,152 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.zpzhou.trendingrestaurants.model.LatLng;
+import com.zpzhou.trendingrestaurants.model.Tweet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a page of search results with TwitterSearchResponseAdapter
+ * against the JsonDeserializer it replaced, which built a JsonObject tree of
+ * the whole page first.
+ *
+ * Pages are built by repeating the tweets recorded in
+ * fixtures/twitter-search-page.json. Run main() to report throughput along
+ * with the allocation rate (gc.alloc.rate.norm is bytes allocated per page).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TwitterSearchResponseBenchmark {
+
+    @Param({"100", "500"})
+    private int tweetsPerPage;
+
+    private String page;
+    private Gson streamingGson;
+    private Gson treeGson;
+
+    @Setup
+    public void setUp() throws IOException {
+        final JsonObject fixture;
+        try (final InputStream inputStream = getClass().getResourceAsStream("/fixtures/twitter-search-page.json")) {
+            fixture = JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+        }
+        final JsonArray recorded = fixture.getAsJsonArray("results");
+        final JsonArray results = new JsonArray();
+        for (int i = 0; i < tweetsPerPage; i++) {
+            results.add(recorded.get(i % recorded.size()).deepCopy());
+        }
+        fixture.add("results", results);
+        page = fixture.toString();
+
+        streamingGson = new GsonBuilder()
+                .registerTypeAdapter(TwitterSearchQueryResponse.class, new TwitterSearchResponseAdapter())
+                .create();
+        treeGson = new GsonBuilder()
+                .registerTypeAdapter(TwitterSearchQueryResponse.class, new TreeDeserializer())
+                .create();
+    }
+
+    @Benchmark
+    public TwitterSearchQueryResponse streaming() {
+        return parse(streamingGson);
+    }
+
+    @Benchmark
+    public TwitterSearchQueryResponse tree() {
+        return parse(treeGson);
+    }
+
+    private TwitterSearchQueryResponse parse(final Gson gson) {
+        final JsonReader reader = new JsonReader(new StringReader(page));
+        return gson.fromJson(reader, TwitterSearchQueryResponse.class);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TwitterSearchResponseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    /**
+     * The tree-based deserializer TwitterSearchResponseAdapter replaced.
+     */
+    private static class TreeDeserializer implements JsonDeserializer<TwitterSearchQueryResponse> {
+
+        @Override
+        public TwitterSearchQueryResponse deserialize(final JsonElement jsonElement,
+                                                      final Type type,
+                                                      final JsonDeserializationContext context) {
+            final JsonObject jsonObject = jsonElement.getAsJsonObject();
+            final List<Tweet> tweets = new ArrayList<>();
+            for (final JsonElement el : jsonObject.getAsJsonArray("results")) {
+                final JsonObject tweetJson = el.getAsJsonObject();
+                final List<String> hashTags = new ArrayList<>();
+                for (final JsonElement hashTagJson : tweetJson.getAsJsonObject("entities").getAsJsonArray("hashtags")) {
+                    hashTags.add(hashTagJson.getAsJsonObject().get("text").getAsString());
+                }
+                final Optional<LatLng> latLng;
+                if (!tweetJson.get("geo").isJsonNull()) {
+                    final JsonArray coords = tweetJson.getAsJsonObject("geo").getAsJsonArray("coordinates");
+                    latLng = Optional.of(new LatLng(coords.get(0).getAsBigDecimal(), coords.get(1).getAsBigDecimal()));
+                }
+                else {
+                    latLng = Optional.empty();
+                }
+                tweets.add(Tweet.builder()
+                        .text(tweetJson.get("text").getAsString())
+                        .retweetCount(tweetJson.get("retweet_count").getAsInt())
+                        .favoriteCount(tweetJson.get("favorite_count").getAsInt())
+                        .twitterHandle(tweetJson.getAsJsonObject("user").get("screen_name").getAsString())
+                        .createdAt(tweetJson.get("created_at").getAsString())
+                        .hashTags(hashTags)
+                        .latLng(latLng)
+                        .place(Optional.empty())
+                        .build());
+            }
+            final Optional<String> next = jsonObject.has("next")
+                    ? Optional.of(jsonObject.get("next").getAsString()) : Optional.empty();
+            return new TwitterSearchQueryResponse(tweets, next, false);
+        }
+    }
+}
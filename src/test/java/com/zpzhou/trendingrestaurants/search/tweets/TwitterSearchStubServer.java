@@ -0,0 +1,117 @@
+package com.zpzhou.trendingrestaurants.search.tweets;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stands in for Twitter's search endpoint on an ephemeral port, answering
+ * every search with @param pages pages of the tweets recorded in
+ * fixtures/twitter-search-page.json, their creation times spread evenly
+ * over the interval searched, newest first. The page at @param truncatedPage,
+ * if any, is cut off halfway through its body.
+ */
+class TwitterSearchStubServer implements Closeable {
+
+    static final int NOT_TRUNCATED = -1;
+
+    private static final DateTimeFormatter SEARCH_DATE_FORMAT = DateTimeFormat
+            .forPattern("yyyyMMddHHmm")
+            .withZoneUTC();
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormat
+            .forPattern("EEE MMM dd HH:mm:ss Z yyyy")
+            .withLocale(Locale.ENGLISH)
+            .withZone(DateTimeZone.UTC);
+
+    private final HttpServer server;
+    private final JsonArray recorded;
+    private final int pages;
+    private final int truncatedPage;
+    private final List<JsonObject> requests = new CopyOnWriteArrayList<>();
+
+    TwitterSearchStubServer(final int pages, final int truncatedPage) throws IOException {
+        try (final InputStream inputStream = getClass().getResourceAsStream("/fixtures/twitter-search-page.json")) {
+            recorded = JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))
+                    .getAsJsonObject()
+                    .getAsJsonArray("results");
+        }
+        this.pages = pages;
+        this.truncatedPage = truncatedPage;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getSearchURL() {
+        return String.format("http://localhost:%d/search.json", server.getAddress().getPort());
+    }
+
+    int getPageSize() {
+        return recorded.size();
+    }
+
+    /**
+     * The bodies of the requests received so far, in order.
+     */
+    List<JsonObject> getRequests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final JsonObject request;
+        try (final InputStream inputStream = exchange.getRequestBody()) {
+            request = JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+        }
+        requests.add(request);
+        final long from = SEARCH_DATE_FORMAT.parseMillis(request.get("fromDate").getAsString());
+        final long to = SEARCH_DATE_FORMAT.parseMillis(request.get("toDate").getAsString());
+        final int page = request.has("next") ? Integer.parseInt(request.get("next").getAsString()) : 0;
+
+        final JsonArray results = new JsonArray();
+        final long spacing = (to - from) / (pages * recorded.size() + 1);
+        for (int i = 0; i < recorded.size(); i++) {
+            final JsonObject tweet = recorded.get(i).deepCopy().getAsJsonObject();
+            tweet.addProperty("created_at", CREATED_AT_FORMAT.print(to - (page * recorded.size() + i + 1) * spacing));
+            results.add(tweet);
+        }
+        final JsonObject body = new JsonObject();
+        body.add("results", results);
+        if (page + 1 < pages) {
+            body.addProperty("next", String.valueOf(page + 1));
+        }
+        body.add("requestParameters", request);
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        if (page == truncatedPage) {
+            bytes = Arrays.copyOf(bytes, bytes.length / 2);
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.zpzhou.trendingrestaurants.store;
+
+import com.google.gson.Gson;
+import com.google.maps.model.PlaceDetails;
+import com.zpzhou.trendingrestaurants.search.places.CachingGoogleMapsAPIWrapper;
+import com.zpzhou.trendingrestaurants.search.places.DiskBackedCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaceSegmentsTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // The start of a UTC day
+    private static final long D0 = 20000 * DAY;
+    private static final String PLACE = "toronto#version-1";
+
+    private static final Gson GSON = new Gson();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysAppendedTweetsAfterReopening() throws IOException {
+        try (final TweetStore store = openStore()) {
+            final PlaceSegments segments = store.open(PLACE);
+            assertTrue(segments.isEmpty());
+            segments.append(List.of(tweet(D0 + HOUR, "Kinton"), tweet(D0 + 2 * HOUR, "Libretto")), D0, D0 + 3 * HOUR);
+            segments.append(List.of(tweet(D0 + 3 * HOUR, "Kinton")), D0, D0 + 4 * HOUR);
+        }
+        try (final TweetStore store = openStore()) {
+            final PlaceSegments segments = store.open(PLACE);
+            assertFalse(segments.isEmpty());
+            assertEquals(D0, segments.getCoveredFrom());
+            assertEquals(D0 + 4 * HOUR, segments.getWatermark());
+            final List<StoredTweet> replayed = replay(segments);
+            assertEquals(List.of(D0 + HOUR, D0 + 2 * HOUR, D0 + 3 * HOUR), createdAt(replayed));
+            assertEquals("Libretto", replayed.get(1).getDetails().placeId);
+            assertEquals("Name of Libretto", replayed.get(1).getDetails().name);
+            assertEquals(4, replayed.get(1).getRetweetCount());
+            assertEquals(5, replayed.get(1).getFavoriteCount());
+        }
+    }
+
+    @Test
+    void replacesManifestAtomically() throws IOException {
+        try (final TweetStore store = openStore()) {
+            store.open(PLACE).append(List.of(tweet(D0 + HOUR, "Kinton")), D0, D0 + 2 * HOUR);
+            store.open(PLACE).append(List.of(tweet(D0 + 2 * HOUR, "Kinton")), D0, D0 + 3 * HOUR);
+        }
+        assertEquals(Set.of("manifest", D0 + ".seg"), files());
+    }
+
+    @Test
+    void partitionsSegmentsByDayAndEvictsWholeDays() throws IOException {
+        try (final TweetStore store = openStore()) {
+            final PlaceSegments segments = store.open(PLACE);
+            // Straddles the end of the first day
+            segments.append(List.of(tweet(D0 + DAY - HOUR, "Kinton"), tweet(D0 + DAY, "Kinton"),
+                    tweet(D0 + DAY + HOUR, "Libretto")), D0, D0 + DAY + 2 * HOUR);
+            assertEquals(Set.of("manifest", D0 + ".seg", (D0 + DAY) + ".seg"), files());
+
+            // Not yet past the end of the first day
+            segments.evictBefore(D0 + DAY - HOUR);
+            assertEquals(3, replay(segments).size());
+
+            segments.evictBefore(D0 + DAY + HOUR);
+            assertEquals(Set.of("manifest", (D0 + DAY) + ".seg"), files());
+            assertEquals(D0 + DAY + HOUR, segments.getCoveredFrom());
+            // Still in the segment, but no longer covered
+            assertEquals(List.of(D0 + DAY + HOUR), createdAt(replay(segments)));
+        }
+        try (final TweetStore store = openStore()) {
+            assertEquals(D0 + DAY + HOUR, store.open(PLACE).getCoveredFrom());
+            assertEquals(List.of(D0 + DAY + HOUR), createdAt(replay(store.open(PLACE))));
+        }
+    }
+
+    @Test
+    void ignoresAndOverwritesTailLeftByCrashMidAppend() throws IOException {
+        try (final TweetStore store = openStore()) {
+            store.open(PLACE).append(List.of(tweet(D0 + HOUR, "Kinton")), D0, D0 + 2 * HOUR);
+        }
+        // Part of a record written before the crash, without the manifest being replaced
+        final Path segment = placeDirectory().resolve(D0 + ".seg");
+        final long committed = Files.size(segment);
+        Files.write(segment, new byte[] {0, 0, 0, 1, 2, 3, 4}, StandardOpenOption.APPEND);
+
+        try (final TweetStore store = openStore()) {
+            final PlaceSegments segments = store.open(PLACE);
+            assertEquals(List.of(D0 + HOUR), createdAt(replay(segments)));
+            // A record the same size as the first, written over the torn one
+            segments.append(List.of(tweet(D0 + 2 * HOUR, "Kinton")), D0, D0 + 3 * HOUR);
+            assertEquals(2 * committed, Files.size(segment));
+        }
+        try (final TweetStore store = openStore()) {
+            assertEquals(List.of(D0 + HOUR, D0 + 2 * HOUR), createdAt(replay(store.open(PLACE))));
+        }
+    }
+
+    @Test
+    void discardsSegmentsWithUnreadableManifest() throws IOException {
+        try (final TweetStore store = openStore()) {
+            store.open(PLACE).append(List.of(tweet(D0 + HOUR, "Kinton")), D0, D0 + 2 * HOUR);
+        }
+        Files.write(placeDirectory().resolve("manifest"), new byte[] {1, 2, 3});
+
+        try (final TweetStore store = openStore()) {
+            final PlaceSegments segments = store.open(PLACE);
+            assertTrue(segments.isEmpty());
+            assertEquals(List.of(), replay(segments));
+            assertEquals(Set.of(), files());
+        }
+    }
+
+    @Test
+    void resetDeletesEverySegment() throws IOException {
+        try (final TweetStore store = openStore()) {
+            final PlaceSegments segments = store.open(PLACE);
+            segments.append(List.of(tweet(D0 + HOUR, "Kinton")), D0, D0 + 2 * HOUR);
+            segments.reset();
+            assertTrue(segments.isEmpty());
+            assertEquals(Set.of(), files());
+        }
+        try (final TweetStore store = openStore()) {
+            assertTrue(store.open(PLACE).isEmpty());
+        }
+    }
+
+    private TweetStore openStore() throws IOException {
+        return new TweetStore(directory.resolve("timelines"), DAY,
+                new DiskBackedCache<>(directory.resolve("place-details.log"), DAY, 10,
+                        details -> CachingGoogleMapsAPIWrapper.encodePlaceDetails(GSON, details),
+                        json -> CachingGoogleMapsAPIWrapper.decodePlaceDetails(GSON, json)));
+    }
+
+    private Path placeDirectory() throws IOException {
+        try (final Stream<Path> places = Files.list(directory.resolve("timelines"))) {
+            return places.findFirst().get();
+        }
+    }
+
+    private Set<String> files() throws IOException {
+        try (final Stream<Path> files = Files.list(placeDirectory())) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+
+    private static List<StoredTweet> replay(final PlaceSegments segments) throws IOException {
+        final List<StoredTweet> tweets = new ArrayList<>();
+        segments.replay(tweets::add);
+        return tweets;
+    }
+
+    private static List<Long> createdAt(final List<StoredTweet> tweets) {
+        return tweets.stream().map(StoredTweet::getCreatedAtMillis).collect(Collectors.toList());
+    }
+
+    private static StoredTweet tweet(final long createdAtMillis, final String placeId) {
+        final PlaceDetails details = new PlaceDetails();
+        details.placeId = placeId;
+        details.name = "Name of " + placeId;
+        return new StoredTweet(createdAtMillis, 4, 5, details);
+    }
+}
@@ -0,0 +1,79 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveLimitTest {
+
+    private static final long THRESHOLD_MILLIS = 100;
+
+    @Test
+    void startsAtMaxLimit() {
+        assertEquals(8, new AdaptiveLimit(1, 8, THRESHOLD_MILLIS).getLimit());
+        // A min above the max is clamped to it
+        assertEquals(4, new AdaptiveLimit(10, 4, THRESHOLD_MILLIS).getLimit());
+    }
+
+    @Test
+    void halvesOnOverloadOncePerThreshold() throws Exception {
+        final AdaptiveLimit limit = new AdaptiveLimit(1, 16, THRESHOLD_MILLIS);
+        limit.onOverload();
+        limit.onOverload();
+        assertEquals(8, limit.getLimit());
+
+        Thread.sleep(THRESHOLD_MILLIS + 20);
+        limit.onOverload();
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    void halvesOnSlowCall() {
+        final AdaptiveLimit limit = new AdaptiveLimit(1, 16, THRESHOLD_MILLIS);
+        limit.onSuccess(THRESHOLD_MILLIS + 1);
+        assertEquals(8, limit.getLimit());
+    }
+
+    @Test
+    void ignoresFastFailuresButHalvesOnSlowOnes() {
+        final AdaptiveLimit limit = new AdaptiveLimit(1, 16, THRESHOLD_MILLIS);
+        limit.onOverload();
+        for (int i = 0; i < 100; i++) {
+            limit.onIgnore(1);
+        }
+        assertEquals(8, limit.getLimit());
+
+        final AdaptiveLimit slow = new AdaptiveLimit(1, 16, THRESHOLD_MILLIS);
+        slow.onIgnore(THRESHOLD_MILLIS + 1);
+        assertEquals(8, slow.getLimit());
+    }
+
+    @Test
+    void neverDropsBelowMinLimit() throws Exception {
+        final AdaptiveLimit limit = new AdaptiveLimit(3, 4, THRESHOLD_MILLIS);
+        limit.onOverload();
+        Thread.sleep(THRESHOLD_MILLIS + 20);
+        limit.onOverload();
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test
+    void growsAboutOnePerLimitOfFastCallsUpToMax() {
+        final AdaptiveLimit limit = new AdaptiveLimit(1, 8, THRESHOLD_MILLIS);
+        limit.onOverload();
+        assertEquals(4, limit.getLimit());
+
+        // Each step is a little smaller than the last as the limit grows
+        for (int i = 0; i < 4; i++) {
+            limit.onSuccess(1);
+        }
+        assertEquals(4, limit.getLimit());
+        limit.onSuccess(1);
+        assertEquals(5, limit.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(1);
+        }
+        assertEquals(8, limit.getLimit());
+    }
+}
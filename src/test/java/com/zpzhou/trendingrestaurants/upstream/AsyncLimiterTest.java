@@ -0,0 +1,153 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncLimiterTest {
+
+    private static final String CALLBACK_THREAD = "upstream-callback";
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, CALLBACK_THREAD));
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        callbackExecutor.shutdownNow();
+    }
+
+    @Test
+    void startsQueuedCallsOnCallbackExecutor() throws Exception {
+        final AsyncLimiter limiter = limiter(1, 10);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final CompletableFuture<String> blocking = limiter.submit(Priority.INTERACTIVE, () -> first);
+        final CompletableFuture<String> queued = limiter.submit(Priority.INTERACTIVE,
+                () -> CompletableFuture.completedFuture(Thread.currentThread().getName()));
+        assertEquals(1, limiter.getQueuedCalls());
+
+        // Completing the first call on this thread frees up room for the queued one
+        first.complete("first");
+        assertEquals("first", blocking.get(5, TimeUnit.SECONDS));
+        assertEquals(CALLBACK_THREAD, queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void longChainOfImmediateCallsDoesNotRecurse() throws Exception {
+        final AsyncLimiter limiter = limiter(1, 100_000);
+        final CompletableFuture<Integer> first = new CompletableFuture<>();
+        limiter.submit(Priority.INTERACTIVE, () -> first);
+        final List<CompletableFuture<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            final int value = i;
+            queued.add(limiter.submit(Priority.INTERACTIVE, () -> CompletableFuture.completedFuture(value)));
+        }
+        // Each queued call completes as soon as it starts, freeing up room for the next
+        first.complete(-1);
+        CompletableFuture.allOf(queued.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        assertEquals(49_999, queued.get(queued.size() - 1).get());
+        assertEquals(0, limiter.getActiveCalls());
+    }
+
+    @Test
+    void startsInteractiveCallsBeforeBackground() throws Exception {
+        final AsyncLimiter limiter = limiter(1, 10);
+        final List<String> started = new CopyOnWriteArrayList<>();
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        limiter.submit(Priority.INTERACTIVE, () -> first);
+        final CompletableFuture<String> background = limiter.submit(Priority.BACKGROUND, () -> {
+            started.add("background");
+            return CompletableFuture.completedFuture("background");
+        });
+        final CompletableFuture<String> interactive = limiter.submit(Priority.INTERACTIVE, () -> {
+            started.add("interactive");
+            return CompletableFuture.completedFuture("interactive");
+        });
+
+        first.complete("first");
+        CompletableFuture.allOf(background, interactive).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("interactive", "background"), started);
+    }
+
+    @Test
+    void rejectsCallsBeyondMaxQueued() throws Exception {
+        final AsyncLimiter limiter = limiter(1, 1);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        limiter.submit(Priority.INTERACTIVE, () -> first);
+        final CompletableFuture<String> queued = limiter.submit(Priority.INTERACTIVE,
+                () -> CompletableFuture.completedFuture("queued"));
+        final CompletableFuture<String> rejected = limiter.submit(Priority.INTERACTIVE,
+                () -> CompletableFuture.completedFuture("rejected"));
+
+        final ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof CallRejectedException);
+        first.complete("first");
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void retriesOverloadedCallsAndLowersLimit() throws Exception {
+        final AsyncLimiter limiter = limiter(8, 10);
+        final List<Integer> attempts = new CopyOnWriteArrayList<>();
+        final CompletableFuture<String> result = limiter.submit(Priority.INTERACTIVE, () -> {
+            attempts.add(attempts.size());
+            return attempts.size() == 1
+                    ? CompletableFuture.failedFuture(new UpstreamException("rate limited", true))
+                    : CompletableFuture.completedFuture("retried");
+        });
+
+        assertEquals("retried", result.get(5, TimeUnit.SECONDS));
+        assertEquals(2, attempts.size());
+        assertTrue(limiter.getLimit() < 8);
+    }
+
+    @Test
+    void failedCallsDontRaiseLimit() throws Exception {
+        final AsyncLimiter limiter = limiter(8, 10);
+        final CompletableFuture<String> overloaded = limiter.submit(Priority.INTERACTIVE,
+                () -> CompletableFuture.failedFuture(new UpstreamException("rate limited", true)));
+        assertThrows(ExecutionException.class, () -> overloaded.get(5, TimeUnit.SECONDS));
+        final int lowered = limiter.getLimit();
+        assertTrue(lowered < 8);
+
+        // Enough fast calls to grow the limit had they succeeded
+        for (int i = 0; i < 50; i++) {
+            final CompletableFuture<String> failed = limiter.submit(Priority.INTERACTIVE,
+                    () -> CompletableFuture.failedFuture(new UpstreamException("bad request", false)));
+            assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(lowered, limiter.getLimit());
+    }
+
+    private AsyncLimiter limiter(final int maxConcurrent, final int maxQueued) {
+        return new AsyncLimiter("test",
+                new AdaptiveLimit(1, maxConcurrent, TimeUnit.SECONDS.toMillis(10)),
+                new TokenBucket(1_000_000, 1_000_000),
+                new CircuitBreaker("test", 20, 0.5, TimeUnit.SECONDS.toMillis(10), 1.0,
+                        TimeUnit.SECONDS.toMillis(1), 1),
+                maxQueued,
+                0.5,
+                2,
+                Optional.empty(),
+                scheduler,
+                callbackExecutor,
+                new SimpleMeterRegistry());
+    }
+}
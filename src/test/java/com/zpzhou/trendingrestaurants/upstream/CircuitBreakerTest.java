@@ -0,0 +1,136 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long SLOW_CALL_MILLIS = 100;
+    private static final long OPEN_MILLIS = 100;
+
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 10, 0.5, SLOW_CALL_MILLIS, 0.8,
+            OPEN_MILLIS, 2);
+
+    @Test
+    void staysClosedUntilHalfTheWindowIsFilled() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(true, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensOnFailureRate() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onResult(false, 0);
+        }
+        breaker.onResult(true, 0);
+        breaker.onResult(true, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onResult(true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensOnSlowCallRate() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onResult(false, SLOW_CALL_MILLIS + 1);
+        }
+        breaker.onResult(false, 0);
+        breaker.onResult(false, 0);
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(false, SLOW_CALL_MILLIS + 1);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onResult(false, SLOW_CALL_MILLIS + 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void forgetsOutcomesOlderThanTheWindow() {
+        breaker.onResult(true, 0);
+        breaker.onResult(true, 0);
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(false, 0);
+        }
+        // Together with the two pushed out of the window, these would reach the failure rate
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(true, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpensAfterOpenPeriodAndClosesOnSuccessfulProbes() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        // Only as many probes as allowed are let through
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onResult(false, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(false, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void reopensOnFailedOrSlowProbe() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false, SLOW_CALL_MILLIS + 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void handsBackCancelledProbes() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onCancelled();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void startsAFreshWindowOnceClosed() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        breaker.tryAcquire();
+        breaker.tryAcquire();
+        breaker.onResult(false, 0);
+        breaker.onResult(false, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // The failures that opened it were forgotten
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(true, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 5; i++) {
+            breaker.onResult(true, 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,90 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgingTest {
+
+    private static final int CALLS = 100_000;
+
+    @Test
+    void waitsForEnoughLatenciesToTell() {
+        final Hedging hedging = new Hedging(0.95, 0.05);
+        for (int i = 0; i < 49; i++) {
+            hedging.record(20);
+        }
+        assertEquals(Optional.empty(), hedging.getDelayMillis());
+
+        hedging.record(20);
+        assertTrue(hedging.getDelayMillis().isPresent());
+    }
+
+    @Test
+    void hedgesOnlyAsOftenAsBudgetAllows() {
+        final Hedging hedging = new Hedging(0.95, 0.25);
+        for (int i = 0; i < 3; i++) {
+            hedging.onCall();
+        }
+        assertFalse(hedging.tryHedge());
+
+        hedging.onCall();
+        assertTrue(hedging.tryHedge());
+        assertFalse(hedging.tryHedge());
+    }
+
+    /**
+     * Simulates calls to an endpoint that answers in 10-25ms but takes 400ms
+     * 3% of the time, in virtual time, recording latencies as AsyncLimiter
+     * does: the winner's, and how long the losing copy had been in flight.
+     */
+    @Test
+    void hedgingCutsTailLatencyAtASmallShareOfExtraCalls() {
+        final Random random = new Random(42);
+        final Hedging hedging = new Hedging(0.95, 0.05);
+        final long[] unhedged = new long[CALLS];
+        final long[] hedged = new long[CALLS];
+        int hedges = 0;
+        for (int i = 0; i < CALLS; i++) {
+            final long primary = latency(random);
+            unhedged[i] = primary;
+            hedging.onCall();
+            final Optional<Long> delay = hedging.getDelayMillis();
+            if (delay.isPresent() && primary > delay.get() && hedging.tryHedge()) {
+                hedges++;
+                final long hedge = delay.get() + latency(random);
+                hedged[i] = Math.min(primary, hedge);
+                // Each copy is timed from its own start, the loser up to when it was cancelled
+                hedging.record(hedged[i]);
+                hedging.record(hedged[i] - delay.get());
+            }
+            else {
+                hedged[i] = primary;
+                hedging.record(primary);
+            }
+        }
+
+        final long unhedgedP99 = percentile(unhedged, 0.99);
+        final long hedgedP99 = percentile(hedged, 0.99);
+        final double extraCalls = (double) hedges / CALLS;
+        assertEquals(400, unhedgedP99);
+        assertTrue(hedgedP99 <= 60, "p99 " + hedgedP99 + "ms");
+        assertTrue(extraCalls <= 0.05, "extra calls " + extraCalls);
+    }
+
+    private static long latency(final Random random) {
+        return random.nextDouble() < 0.03 ? 400 : 10 + random.nextInt(16);
+    }
+
+    private static long percentile(final long[] latencies, final double quantile) {
+        final long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(quantile * sorted.length) - 1];
+    }
+}
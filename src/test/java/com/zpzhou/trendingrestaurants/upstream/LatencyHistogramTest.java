@@ -0,0 +1,70 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void estimatesPercentilesWithinAFifth() {
+        final LatencyHistogram histogram = new LatencyHistogram(1_000_000);
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertWithinAFifth(500, histogram.getPercentile(0.5));
+        assertWithinAFifth(950, histogram.getPercentile(0.95));
+        assertWithinAFifth(990, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    void percentileOfATailIsThatOfTheTail() {
+        final LatencyHistogram histogram = new LatencyHistogram(1_000_000);
+        for (int i = 0; i < 97; i++) {
+            histogram.record(20);
+        }
+        for (int i = 0; i < 3; i++) {
+            histogram.record(400);
+        }
+
+        assertWithinAFifth(20, histogram.getPercentile(0.95));
+        assertWithinAFifth(400, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    void clampsLatenciesOutsideTheBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram(1_000_000);
+        histogram.record(0);
+        assertEquals(1, histogram.getPercentile(1));
+
+        histogram.record(3_600_000);
+        assertEquals(60_000, histogram.getPercentile(1));
+    }
+
+    @Test
+    void decaysOlderLatencies() {
+        final LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int i = 0; i < 99; i++) {
+            histogram.record(400);
+        }
+        // Halved on the hundredth
+        histogram.record(400);
+        assertEquals(50, histogram.getCount());
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(20);
+        }
+        // Halved again, leaving 25 slow of 75, so the median follows the endpoint as it sped up
+        histogram.record(20);
+        assertEquals(75, histogram.getCount());
+        assertWithinAFifth(20, histogram.getPercentile(0.5));
+    }
+
+    private static void assertWithinAFifth(final long expected, final long estimate) {
+        assertTrue(estimate >= expected && estimate <= Math.ceil(expected * 1.2),
+                String.format("%d estimated as %d", expected, estimate));
+    }
+}
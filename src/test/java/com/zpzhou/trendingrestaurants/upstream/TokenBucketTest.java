@@ -0,0 +1,62 @@
+package com.zpzhou.trendingrestaurants.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenWaitsForRefill() {
+        final TokenBucket bucket = new TokenBucket(1, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryTake());
+        }
+        final long waitNanos = bucket.tryTake();
+        assertTrue(waitNanos > 0 && waitNanos <= TimeUnit.SECONDS.toNanos(1), waitNanos + "ns");
+    }
+
+    @Test
+    void refillsAtRate() throws Exception {
+        final TokenBucket bucket = new TokenBucket(100, 1);
+        assertEquals(0, bucket.tryTake());
+        assertTrue(bucket.tryTake() > 0);
+
+        Thread.sleep(20);
+        assertEquals(0, bucket.tryTake());
+    }
+
+    @Test
+    void limitsToRemainingCallsReported() {
+        final TokenBucket bucket = new TokenBucket(1, 10);
+        bucket.limitTo(2, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+
+        assertEquals(0, bucket.tryTake());
+        assertEquals(0, bucket.tryTake());
+        assertTrue(bucket.tryTake() > 0);
+    }
+
+    @Test
+    void pausesUntilQuotaResetsWhenNoneRemain() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1000, 10);
+        bucket.limitTo(0, System.currentTimeMillis() + 100);
+
+        final long waitNanos = bucket.tryTake();
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(50), waitNanos + "ns");
+
+        Thread.sleep(150);
+        // One call goes ahead at the reset
+        assertEquals(0, bucket.tryTake());
+    }
+
+    @Test
+    void boundsPauseForResetFarInFuture() {
+        final TokenBucket bucket = new TokenBucket(1, 1);
+        bucket.pauseUntil(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+
+        assertTrue(bucket.tryTake() <= TimeUnit.MINUTES.toNanos(15));
+    }
+}